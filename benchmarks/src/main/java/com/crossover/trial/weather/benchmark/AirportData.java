@@ -0,0 +1,48 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.utils.AirportParser;
+
+/**
+ * Seed data for the benchmarks. Airports come from the bundled airports.dat,
+ * or from the file named by the {@code weather.airports} system property when
+ * a larger data set is wanted.
+ *
+ * @author Joao Gatto
+ */
+final class AirportData {
+
+    /** system property naming an alternative airports.dat */
+    static final String AIRPORTS_PROPERTY = "weather.airports";
+
+    private AirportData() {
+    }
+
+    static List<Airport> load() {
+        String file = System.getProperty(AIRPORTS_PROPERTY);
+        try (InputStream in = file == null ? AirportData.class.getResourceAsStream("/airports.dat") : new FileInputStream(file);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<Airport> airports = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    airports.add(AirportParser.parseCsv(line));
+                } catch (IllegalArgumentException e) {
+                    // entries without an IATA code are not served
+                }
+            }
+            return airports;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read airport data", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+
+/**
+ * Write paths of the airport service. The same-airport variants send every
+ * thread to the first airport to measure contention on a single record. Each
+ * storage mode runs in its own fork, since the repository picks it once.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AirportServiceBenchmark {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    @Param({ "slots", "snapshot", "offheap" })
+    public String store;
+
+    private AirportService airportService;
+
+    private String[] codes;
+
+    private DataPoint[] dataPoints;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(DataRepositoryImpl.STORE_PROPERTY, store);
+        DataRepositoryImpl.getInstance().clear();
+        airportService = new AirportServiceImpl();
+        List<Airport> airports = AirportData.load();
+        codes = new String[airports.size()];
+        for (int i = 0; i < codes.length; i++) {
+            airportService.addAirport(airports.get(i));
+            codes[i] = airports.get(i).getIata();
+        }
+        dataPoints = new DataPoint[TYPES.length];
+        for (DataPointType type : TYPES) {
+            double mean = (type.getMin() + Math.min(type.getMax(), type.getMin() + 100)) / 2;
+            dataPoints[type.ordinal()] = new DataPoint.Builder().withFirst(mean - 1).withMedian(mean).withMean(mean)
+                    .withLast(mean + 1).withCount(10).build();
+        }
+    }
+
+    @Benchmark
+    public void updateAtmosphericInformation() throws WeatherException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        update(codes[random.nextInt(codes.length)], random.nextInt(TYPES.length));
+    }
+
+    @Benchmark
+    public void updateAtmosphericInformationSameAirport() throws WeatherException {
+        update(codes[0], ThreadLocalRandom.current().nextInt(TYPES.length));
+    }
+
+    @Benchmark
+    public void updateRequestFrequency() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        airportService.updateRequestFrequency(codes[random.nextInt(codes.length)], (double) random.nextInt(1000));
+    }
+
+    @Benchmark
+    public void updateRequestFrequencySameAirport() {
+        airportService.updateRequestFrequency(codes[0], 200.0);
+    }
+
+    private void update(final String iata, final int type) throws WeatherException {
+        airportService.updateAtmosphericInformation(iata, TYPES[type].name(), dataPoints[type]);
+    }
+}
@@ -0,0 +1,37 @@
+package com.crossover.trial.weather.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per thread count so contention shows up
+ * in the numbers, writing one JSON result file per run for regression
+ * tracking: {@code jmh-result-<threads>-threads.json} in the working
+ * directory.
+ *
+ * @author Joao Gatto
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = { 1, 4, 16 };
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param args
+     *            an optional regular expression selecting benchmarks, all of
+     *            them by default
+     */
+    public static void main(final String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder().include(include).threads(threads).resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "-threads.json").build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.binary.WeatherRecords;
+import com.crossover.trial.weather.endpoint.WeatherCollectorEndpoint;
+import com.crossover.trial.weather.endpoint.impl.WeatherCollectorEndpointImpl;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.google.gson.Gson;
+
+/**
+ * Collector updates through the endpoint, called directly without the HTTP
+ * container: one record per call against a batch of {@value #BATCH} records
+ * per call, as json or binary records. Both report updates per microsecond, so the scores compare
+ * directly; over HTTP the single record path also pays a round trip per
+ * update.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorBenchmark {
+
+    static final int BATCH = 1000;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private final WeatherCollectorEndpoint collector = new WeatherCollectorEndpointImpl();
+
+    private String[] codes;
+
+    /** a valid data point per type, as collectors send it */
+    private String[] dataPoints;
+
+    private byte[] arrayBody;
+
+    private byte[] linesBody;
+
+    private byte[] recordsBody;
+
+    @Setup
+    public void setUp() {
+        DataRepositoryImpl.getInstance().clear();
+        AirportService airportService = new AirportServiceImpl();
+        List<Airport> airports = AirportData.load();
+        codes = new String[airports.size()];
+        for (int i = 0; i < codes.length; i++) {
+            airportService.addAirport(airports.get(i));
+            codes[i] = airports.get(i).getIata();
+        }
+        Gson gson = new Gson();
+        dataPoints = new String[TYPES.length];
+        for (DataPointType type : TYPES) {
+            double mean = (type.getMin() + Math.min(type.getMax(), type.getMin() + 100)) / 2;
+            dataPoints[type.ordinal()] = gson.toJson(new DataPoint.Builder().withFirst(mean - 1).withMedian(mean)
+                    .withMean(mean).withLast(mean + 1).withCount(10).build());
+        }
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder lines = new StringBuilder();
+        ByteBuffer records = ByteBuffer.allocate(BATCH * WeatherRecords.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < BATCH; i++) {
+            int type = i % TYPES.length;
+            String record = "{\"iata\":\"" + codes[i % codes.length] + "\",\"pointType\":\"" + TYPES[type].name()
+                    + "\",\"dataPoint\":" + dataPoints[type] + "}";
+            array.append(i == 0 ? "" : ",").append(record);
+            lines.append(record).append('\n');
+            WeatherRecords.writeRecord(records, i * WeatherRecords.RECORD_SIZE, AirportCodes.idOf(codes[i % codes.length]),
+                    TYPES[type], gson.fromJson(dataPoints[type], DataPoint.class));
+        }
+        recordsBody = records.array();
+        arrayBody = array.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        linesBody = lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Response single() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int type = random.nextInt(TYPES.length);
+        return collector.updateWeather(codes[random.nextInt(codes.length)], TYPES[type].name(), dataPoints[type]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Response batchArray() {
+        return collector.updateWeather(new ByteArrayInputStream(arrayBody));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Response batchLines() {
+        return collector.updateWeather(new ByteArrayInputStream(linesBody));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Response batchRecords() {
+        return collector.updateWeatherRecords(new ByteArrayInputStream(recordsBody));
+    }
+}
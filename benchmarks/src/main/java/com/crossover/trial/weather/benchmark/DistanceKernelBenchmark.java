@@ -0,0 +1,88 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.utils.CoordinateArray;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+import com.crossover.trial.weather.utils.SearchCircle;
+
+/**
+ * Distances from one origin to every airport: the scalar haversine on
+ * {@link Coordinate} objects against the batch kernel over primitive arrays.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceKernelBenchmark {
+
+    @Param({ "10000" })
+    public int airportCount;
+
+    @Param({ "200", "5000" })
+    public double radiusKm;
+
+    private Coordinate origin;
+
+    private Coordinate[] coordinates;
+
+    private CoordinateArray array;
+
+    private double[] distances;
+
+    private int[] matches;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        coordinates = new Coordinate[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            coordinates[i] = new Coordinate(random.nextDouble() * 120 - 60, random.nextDouble() * 360 - 180);
+        }
+        origin = coordinates[0];
+        array = CoordinateArray.of(coordinates);
+        distances = new double[airportCount];
+        matches = new int[airportCount];
+    }
+
+    @Benchmark
+    public int scalarWithin() {
+        int found = 0;
+        for (Coordinate coordinate : coordinates) {
+            if (CoordinateHelper.calculateDistance(origin, coordinate) <= radiusKm) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int batchWithin() {
+        return array.indicesWithin(new SearchCircle(origin, radiusKm), matches);
+    }
+
+    @Benchmark
+    public void batchDistances(final Blackhole blackhole) {
+        array.distancesFrom(new SearchCircle(origin, radiusKm), distances);
+        blackhole.consume(distances);
+    }
+}
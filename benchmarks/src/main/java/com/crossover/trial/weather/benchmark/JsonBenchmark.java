@@ -0,0 +1,133 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.json.JsonInput;
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+
+/**
+ * (De)serialization of the payloads exchanged with collectors and query
+ * clients: the service's own codec, against Jackson, which wrote responses
+ * before, and Gson, which read request bodies. Writes go to bytes, as on the
+ * wire.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final Gson gson = new Gson();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+
+    private DataPoint dataPoint;
+
+    private AtmosphericInformation atmosphericInformation;
+
+    private String dataPointJson;
+
+    private String atmosphericInformationJson;
+
+    private byte[] dataPointBytes;
+
+    private byte[] atmosphericInformationBytes;
+
+    @Setup
+    public void setUp() {
+        dataPoint = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22).withLast(30).withCount(10).build();
+        atmosphericInformation = new AtmosphericInformation.Builder().withWind(dataPoint).withTemperature(dataPoint)
+                .withHumidity(dataPoint).withPressure(dataPoint).withCloudCover(dataPoint).withPrecipitation(dataPoint).build();
+        dataPointJson = gson.toJson(dataPoint);
+        atmosphericInformationJson = gson.toJson(atmosphericInformation);
+        dataPointBytes = dataPointJson.getBytes(StandardCharsets.UTF_8);
+        atmosphericInformationBytes = atmosphericInformationJson.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int codecWriteDataPoint() throws IOException {
+        bytes.reset();
+        JsonOutput out = new JsonOutput(bytes);
+        WeatherJson.write(out, dataPoint);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public DataPoint codecReadDataPoint() throws IOException {
+        return WeatherJson.readDataPoint(new JsonInput(dataPointBytes));
+    }
+
+    @Benchmark
+    public int codecWriteAtmosphericInformation() throws IOException {
+        bytes.reset();
+        JsonOutput out = new JsonOutput(bytes);
+        WeatherJson.write(out, atmosphericInformation);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public AtmosphericInformation codecReadAtmosphericInformation() throws IOException {
+        return WeatherJson.readAtmosphericInformation(new JsonInput(atmosphericInformationBytes));
+    }
+
+    @Benchmark
+    public int jacksonWriteDataPoint() throws IOException {
+        bytes.reset();
+        mapper.writeValue(bytes, dataPoint);
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int jacksonWriteAtmosphericInformation() throws IOException {
+        bytes.reset();
+        mapper.writeValue(bytes, atmosphericInformation);
+        return bytes.size();
+    }
+
+    @Benchmark
+    public String gsonWriteDataPoint() {
+        return gson.toJson(dataPoint);
+    }
+
+    @Benchmark
+    public DataPoint gsonReadDataPoint() {
+        return gson.fromJson(dataPointJson, DataPoint.class);
+    }
+
+    @Benchmark
+    public String gsonWriteAtmosphericInformation() {
+        return gson.toJson(atmosphericInformation);
+    }
+
+    @Benchmark
+    public AtmosphericInformation gsonReadAtmosphericInformation() {
+        return gson.fromJson(atmosphericInformationJson, AtmosphericInformation.class);
+    }
+}
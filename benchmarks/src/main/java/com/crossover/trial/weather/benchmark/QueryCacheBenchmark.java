@@ -0,0 +1,128 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.endpoint.WeatherQueryEndpoint;
+import com.crossover.trial.weather.endpoint.impl.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+
+/**
+ * Radius queries with a few airports asked for far more often than the rest,
+ * Zipf distributed, and some calls updating a random airport so answers keep
+ * being invalidated. Sampled for the latency percentiles; each cache size runs
+ * in its own fork, since the repository picks it once.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCacheBenchmark {
+
+    /** exponent of the Zipf distribution of requested airports */
+    private static final double SKEW = 1.0;
+
+    @Param({ "0", "1024" })
+    public String cache;
+
+    @Param({ "200" })
+    public String radius;
+
+    /** the fraction of calls that also update an airport */
+    @Param({ "0.01", "0.001" })
+    public double updates;
+
+    private WeatherQueryEndpoint query;
+
+    private AirportService airportService;
+
+    private String[] codes;
+
+    /** cumulative request probability by rank */
+    private double[] ranks;
+
+    private DataPoint wind;
+
+    @Setup
+    public void setUp() throws WeatherException {
+        System.setProperty(DataRepositoryImpl.CACHE_PROPERTY, cache);
+        DataRepositoryImpl.getInstance().clear();
+        query = new WeatherQueryEndpointImpl();
+        airportService = new AirportServiceImpl();
+        List<Airport> airports = AirportData.load();
+        codes = new String[airports.size()];
+        wind = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22).withLast(30).withCount(10).build();
+        for (int i = 0; i < codes.length; i++) {
+            airportService.addAirport(airports.get(i));
+            codes[i] = airports.get(i).getIata();
+            airportService.updateAtmosphericInformation(codes[i], DataPointType.WIND.name(), wind);
+        }
+        ranks = new double[codes.length];
+        double total = 0;
+        for (int i = 0; i < ranks.length; i++) {
+            total += 1 / Math.pow(i + 1, SKEW);
+            ranks[i] = total;
+        }
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] /= total;
+        }
+    }
+
+    @Benchmark
+    public long weather() throws IOException, WeatherException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < updates) {
+            airportService.updateAtmosphericInformation(codes[random.nextInt(codes.length)], DataPointType.WIND.name(),
+                    wind);
+        }
+        int rank = Arrays.binarySearch(ranks, random.nextDouble());
+        String code = codes[rank < 0 ? -rank - 1 : rank];
+        CountingOutputStream out = new CountingOutputStream();
+        ((StreamingOutput) query.weather(code, radius).getEntity()).write(out);
+        return out.count;
+    }
+
+    /** discards the response body, keeping only its length */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.repository.SpatialIndex;
+import com.crossover.trial.weather.repository.impl.GridSpatialIndex;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+
+/**
+ * Radius lookups through the spatial index against the full scan the query
+ * endpoint used to do. Airports are spread uniformly over the populated
+ * latitudes, which is the worst case for the grid.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int airportCount;
+
+    @Param({ "200", "1000" })
+    public double radiusKm;
+
+    private final List<Airport> airports = new ArrayList<>();
+
+    private final SpatialIndex index = new GridSpatialIndex();
+
+    private Coordinate[] centres;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < airportCount; i++) {
+            Airport airport = new Airport.Builder().withIata("A" + i).withLatitude(random.nextDouble() * 120 - 60)
+                    .withLongitude(random.nextDouble() * 360 - 180).build();
+            airports.add(airport);
+            index.add(airport);
+        }
+        centres = new Coordinate[1024];
+        for (int i = 0; i < centres.length; i++) {
+            centres[i] = airports.get(random.nextInt(airportCount)).getCoordinate();
+        }
+    }
+
+    private Coordinate nextCentre() {
+        return centres[ThreadLocalRandom.current().nextInt(centres.length)];
+    }
+
+    @Benchmark
+    public void indexed(final Blackhole blackhole) {
+        index.forEachWithin(nextCentre(), radiusKm, blackhole::consume);
+    }
+
+    /** the ten closest airports, the radius does not apply */
+    @Benchmark
+    public void nearest(final Blackhole blackhole) {
+        index.forEachNearest(nextCentre(), 10, (airport, distance) -> blackhole.consume(airport));
+    }
+
+    @Benchmark
+    public void scan(final Blackhole blackhole) {
+        Coordinate centre = nextCentre();
+        for (Airport airport : airports) {
+            if (CoordinateHelper.calculateDistance(centre, airport.getCoordinate()) <= radiusKm) {
+                blackhole.consume(airport);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.endpoint.WeatherQueryEndpoint;
+import com.crossover.trial.weather.endpoint.impl.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+
+/**
+ * The public query endpoint, called directly without the HTTP container.
+ *
+ * @author Joao Gatto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherQueryBenchmark {
+
+    @Param({ "0", "200", "5000" })
+    public String radius;
+
+    private final WeatherQueryEndpoint query = new WeatherQueryEndpointImpl();
+
+    private String[] codes;
+
+    @Setup
+    public void setUp() throws WeatherException {
+        DataRepositoryImpl.getInstance().clear();
+        AirportService airportService = new AirportServiceImpl();
+        List<Airport> airports = AirportData.load();
+        codes = new String[airports.size()];
+        DataPoint wind = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22).withLast(30).withCount(10).build();
+        for (int i = 0; i < codes.length; i++) {
+            airportService.addAirport(airports.get(i));
+            codes[i] = airports.get(i).getIata();
+            airportService.updateAtmosphericInformation(codes[i], DataPointType.WIND.name(), wind);
+        }
+    }
+
+    /**
+     * Wide radius responses are streamed, so the entity is written out to
+     * count the serialization for every radius; the others are written the
+     * way the json provider writes them.
+     */
+    @Benchmark
+    public long weather() throws IOException {
+        Object entity = query.weather(codes[ThreadLocalRandom.current().nextInt(codes.length)], radius).getEntity();
+        CountingOutputStream out = new CountingOutputStream();
+        if (entity instanceof StreamingOutput) {
+            ((StreamingOutput) entity).write(out);
+        } else {
+            JsonOutput json = new JsonOutput(out);
+            WeatherJson.writeValue(json, entity);
+            json.flush();
+        }
+        return out.count;
+    }
+
+    /**
+     * The same queries answered with binary records.
+     */
+    @Benchmark
+    public long weatherRecords() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        ((StreamingOutput) query.weatherRecords(codes[ThreadLocalRandom.current().nextInt(codes.length)], radius).getEntity())
+                .write(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public String ping() {
+        return query.ping();
+    }
+
+    /** discards the response body, keeping only its length */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
@@ -6,77 +6,236 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Objects;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.json.JsonInput;
 import com.crossover.trial.weather.model.Airport;
-import com.crossover.trial.weather.model.DST;
+import com.crossover.trial.weather.utils.AirportParser;
 
 /**
  * A simple airport loader which reads a file from disk and sends entries to the
- * webservice
+ * webservice. By default the file is streamed to the bulk endpoint in chunks
+ * of lines, with several chunks in flight; --each falls back to one request
+ * per airport.
+ *
+ * <pre>
+ * AirportLoader airports.dat [--each] [--batch lines] [--inflight requests] [--url collect-url]
+ * </pre>
  *
  * @author Joao Gatto
  */
 public class AirportLoader {
 
-    private static final String COMMA = ",";
+    private static final String DEFAULT_URL = "http://localhost:9090/collect";
+
+    private static final String CSV = "text/csv";
+
+    /** lines per bulk request */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** bulk requests sent before waiting for the oldest one */
+    public static final int DEFAULT_IN_FLIGHT = 4;
 
     /** end point to supply updates */
     private WebTarget collect;
 
+    private final int batchSize;
+
+    private final int inFlight;
+
     public AirportLoader() {
+        this(DEFAULT_URL, DEFAULT_BATCH_SIZE, DEFAULT_IN_FLIGHT);
+    }
+
+    public AirportLoader(final String collectUrl, final int batchSize, final int inFlight) {
         Client client = ClientBuilder.newClient();
-        collect = client.target("http://localhost:8080/collect");
+        this.collect = client.target(collectUrl);
+        this.batchSize = batchSize;
+        this.inFlight = inFlight;
     }
 
-    public void upload(final InputStream airportDataStream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream));
-        List<Airport> airports = reader.lines().skip(1).map(mapToAirport).collect(Collectors.toList());
-        airports.stream().filter(Objects::nonNull).forEach((airport) -> {
-            Response post = collect.path("/airport/" + airport.getIata() + "/" + airport.getCoordinate().getLatitude() + "/" + airport.getCoordinate()
-                    .getLongitude()).request().post(Entity.text(""));
-            processResultStatus(airport.getIata(), post);
-        });
+    /**
+     * Stream the airports to the bulk endpoint.
+     *
+     * @return the number of airports the service accepted
+     */
+    public int upload(final InputStream airportDataStream) throws IOException {
+        Deque<Future<Response>> pending = new ArrayDeque<>();
+        int added = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream, StandardCharsets.UTF_8))) {
+            StringBuilder chunk = new StringBuilder();
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.append(line).append('\n');
+                if (++lines == batchSize) {
+                    if (pending.size() == inFlight) {
+                        added += awaitBulk(pending.removeFirst());
+                    }
+                    pending.addLast(postBulk(chunk.toString()));
+                    chunk.setLength(0);
+                    lines = 0;
+                }
+            }
+            if (lines > 0) {
+                pending.addLast(postBulk(chunk.toString()));
+            }
+        } finally {
+            while (!pending.isEmpty()) {
+                added += awaitBulk(pending.removeFirst());
+            }
+        }
+        return added;
     }
 
-    private static Function<String, Airport> mapToAirport = (line) -> {
-        String[] p = line.split(COMMA);
-        return new Airport.Builder().withCity(p[1]).withCountry(p[2]).withIata(p[3]).withIcao(p[4]).withLatitude(Double.valueOf(p[5])).withLongitude(
-                Double.valueOf(p[6])).withAltitude(Double.valueOf(p[7])).withTimezone(Integer.valueOf(p[8])).withDst(DST.valueOf(p[9])).build();
-    };
+    /**
+     * Send one request per airport.
+     *
+     * @return the number of airports the service accepted
+     */
+    public int uploadEach(final InputStream airportDataStream) throws IOException {
+        int added = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Airport airport;
+                try {
+                    airport = AirportParser.parseCsv(line);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Warning: skipping line '" + line + "': " + e.getMessage());
+                    continue;
+                }
+                Response post = collect.path("/airport/" + airport.getIata() + "/" + airport.getCoordinate().getLatitude() + "/" + airport.getCoordinate()
+                        .getLongitude()).request().post(Entity.text(""));
+                if (processResultStatus(airport.getIata(), post)) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
 
-    private void processResultStatus(final String iataCode, final Response post) {
+    private Future<Response> postBulk(final String chunk) {
+        return collect.path("/airports").request(MediaType.APPLICATION_JSON).async().post(Entity.entity(chunk, CSV));
+    }
+
+    private int awaitBulk(final Future<Response> future) throws IOException {
+        Response response;
+        try {
+            response = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading airports", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot upload airports", e.getCause());
+        }
+        if (response.getStatus() != 200) {
+            System.out.println("ERROR when adding airports: " + response.getStatus() + " " + response.getStatusInfo());
+            return 0;
+        }
+        int added = 0;
+        int rejected = 0;
+        List<Integer> rejectedLines = new ArrayList<>();
+        try (InputStream body = response.readEntity(InputStream.class)) {
+            JsonInput result = new JsonInput(body);
+            result.beginObject();
+            while (result.hasNext()) {
+                switch (result.nextName()) {
+                case "added":
+                    added = result.nextInt();
+                    break;
+                case "rejected":
+                    rejected = result.nextInt();
+                    break;
+                case "rejectedLines":
+                    result.beginArray();
+                    while (result.hasNext()) {
+                        rejectedLines.add(result.nextInt());
+                    }
+                    result.endArray();
+                    break;
+                default:
+                    result.skipValue();
+                }
+            }
+            result.endObject();
+        }
+        if (rejected > 0) {
+            System.out.println("Warning: " + rejected + " airport lines rejected, lines " + rejectedLines + " of the chunk");
+        }
+        return added;
+    }
+
+    private boolean processResultStatus(final String iataCode, final Response post) {
         switch (post.getStatus()) {
         case 200:
-            break;
+            return true;
 
         case 403:
             System.out.println("Warning: airport entry '" + iataCode + "' already exists");
-            break;
+            return false;
 
         default:
             System.out.println("ERROR when adding airport '" + iataCode + "': " + post.getStatus() + " " + post.getStatusInfo());
+            return false;
         }
     }
 
     public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: AirportLoader airports.dat [--each] [--batch lines] [--inflight requests] [--url collect-url]");
+            System.exit(1);
+        }
         File airportDataFile = new File(args[0]);
         if (!airportDataFile.exists() || airportDataFile.length() == 0) {
             System.err.println(airportDataFile + " is not a valid input");
             System.exit(1);
         }
+        boolean each = false;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int inFlight = DEFAULT_IN_FLIGHT;
+        String url = DEFAULT_URL;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+            case "--each":
+                each = true;
+                break;
+            case "--batch":
+                batchSize = Integer.parseInt(args[++i]);
+                break;
+            case "--inflight":
+                inFlight = Integer.parseInt(args[++i]);
+                break;
+            case "--url":
+                url = args[++i];
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                System.exit(1);
+            }
+        }
 
-        AirportLoader al = new AirportLoader();
-        al.upload(new FileInputStream(airportDataFile));
+        AirportLoader al = new AirportLoader(url, batchSize, Math.max(1, inFlight));
+        long start = System.nanoTime();
+        int added;
+        try (InputStream in = new FileInputStream(airportDataFile)) {
+            added = each ? al.uploadEach(in) : al.upload(in);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Loaded %d airports in %.2f s, %.0f airports/s", added, seconds, added / seconds));
         System.exit(0);
     }
 }
@@ -6,6 +6,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.json.WeatherJsonProvider;
 import com.crossover.trial.weather.model.DataPoint;
 
 /**
@@ -26,7 +27,7 @@ public class WeatherClient {
     private WebTarget collect;
 
     public WeatherClient() {
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(WeatherJsonProvider.class);
         query = client.target(BASE_URI + "/query");
         collect = client.target(BASE_URI + "/collect");
     }
@@ -2,8 +2,11 @@ package com.crossover.trial.weather;
 
 import static java.lang.String.format;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,8 +18,15 @@ import org.glassfish.grizzly.http.server.Request;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import com.crossover.trial.weather.binary.WeatherRecordsProvider;
 import com.crossover.trial.weather.endpoint.impl.WeatherCollectorEndpointImpl;
 import com.crossover.trial.weather.endpoint.impl.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.json.WeatherJsonProvider;
+import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.repository.impl.NeighbourRefresher;
+import com.crossover.trial.weather.repository.impl.Snapshotter;
+import com.crossover.trial.weather.repository.impl.WriteAheadLog;
 
 /**
  * This main method will be use by the automated functional grader. You
@@ -29,6 +39,37 @@ public class WeatherServer {
 
     private static final String BASE_URL = "http://localhost:9090/";
 
+    /**
+     * System property naming the file the data is saved to and restored from,
+     * nothing is saved without it.
+     */
+    public static final String SNAPSHOT_PROPERTY = "weather.snapshot";
+
+    /** System property with the seconds between snapshots, 60 by default. */
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "weather.snapshot.interval";
+
+    /**
+     * System property naming the directory changes are logged to between
+     * snapshots, nothing is logged without it. Needs
+     * {@link #SNAPSHOT_PROPERTY}: only a snapshot lets old segments go.
+     */
+    public static final String LOG_PROPERTY = "weather.log";
+
+    /**
+     * System property with the longest time in milliseconds logged changes
+     * may wait to be synced to disk, or "batch" (the default) to sync every
+     * batch of changes.
+     */
+    public static final String LOG_SYNC_PROPERTY = "weather.log.sync";
+
+    /**
+     * System property with the seconds between picks of the airports given
+     * neighbour lists, 10 by default.
+     */
+    public static final String NEIGHBOUR_INTERVAL_PROPERTY = "weather.neighbours.interval";
+
+    private static final Logger LOGGER = Logger.getLogger(WeatherServer.class.getName());
+
     public static void main(final String[] args) {
         try {
             System.out.println("Starting Weather App local testing server: " + BASE_URL);
@@ -36,10 +77,23 @@ public class WeatherServer {
             final ResourceConfig resourceConfig = new ResourceConfig();
             resourceConfig.register(WeatherCollectorEndpointImpl.class);
             resourceConfig.register(WeatherQueryEndpointImpl.class);
+            resourceConfig.register(WeatherJsonProvider.class);
+            resourceConfig.register(WeatherRecordsProvider.class);
+
+            final WriteAheadLog log = createWriteAheadLog();
+            final Snapshotter snapshotter = createSnapshotter(log);
+            restore(snapshotter, log);
+            final NeighbourRefresher neighbours = new NeighbourRefresher(DataRepositoryImpl.getInstance(),
+                    TimeUnit.SECONDS.toMillis(Long.getLong(NEIGHBOUR_INTERVAL_PROPERTY, 10)));
+            neighbours.start();
 
             HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URL), resourceConfig, false);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 server.shutdownNow();
+                neighbours.close();
+                // the last snapshot needs the log open to compact it
+                close(snapshotter);
+                close(log);
             }));
 
             HttpServerProbe probe = new HttpServerProbe.Adapter() {
@@ -58,7 +112,64 @@ public class WeatherServer {
             Thread.currentThread().join();
             server.shutdown();
         } catch (IOException | InterruptedException ex) {
-            Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, null, ex);
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static WriteAheadLog createWriteAheadLog() {
+        String directory = System.getProperty(LOG_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        String snapshot = System.getProperty(SNAPSHOT_PROPERTY);
+        if (snapshot == null || snapshot.isEmpty()) {
+            // nothing would ever compact the log
+            throw new IllegalArgumentException(LOG_PROPERTY + " is set without " + SNAPSHOT_PROPERTY);
+        }
+        String sync = System.getProperty(LOG_SYNC_PROPERTY, "batch");
+        long syncMillis = "batch".equals(sync) ? WriteAheadLog.SYNC_EVERY_BATCH : Long.parseLong(sync);
+        return new WriteAheadLog(Paths.get(directory), syncMillis);
+    }
+
+    private static Snapshotter createSnapshotter(final WriteAheadLog log) {
+        String file = System.getProperty(SNAPSHOT_PROPERTY);
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        long interval = TimeUnit.SECONDS.toMillis(Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 60));
+        return new Snapshotter(DataRepositoryImpl.getInstance(), Paths.get(file), interval, log);
+    }
+
+    /**
+     * Load the snapshot, replay the log over it and start both.
+     */
+    private static void restore(final Snapshotter snapshotter, final WriteAheadLog log) throws IOException {
+        DataRepository repository = DataRepositoryImpl.getInstance();
+        if (snapshotter != null) {
+            // a bad snapshot is moved aside, one that cannot be stops the start
+            snapshotter.restore();
+        }
+        if (log != null) {
+            long start = System.nanoTime();
+            int replayed = log.replay(repository);
+            LOGGER.info(format("Replayed %d logged changes in %d ms", replayed,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            log.start();
+            repository.setChangeLog(log);
+        }
+        if (snapshotter != null) {
+            snapshotter.start();
+        }
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot close " + closeable, e);
         }
     }
 }
@@ -0,0 +1,18 @@
+package com.crossover.trial.weather.binary;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the input is not a whole number of binary records, or not the
+ * one data point expected.
+ *
+ * @author Joao Gatto
+ */
+public class MalformedRecordException extends IOException {
+
+    private static final long serialVersionUID = -2215830918207447412L;
+
+    public MalformedRecordException(final String message) {
+        super(message);
+    }
+}
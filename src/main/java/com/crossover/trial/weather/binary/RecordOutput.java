@@ -0,0 +1,96 @@
+package com.crossover.trial.weather.binary;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Writes {@link WeatherRecords} records straight to a stream through a buffer
+ * that starts at one airport's worth of records and grows to
+ * {@link #BUFFER_SIZE}.
+ *
+ * <p>
+ * Not thread safe. Closing the stream is left to its owner.
+ *
+ * @author Joao Gatto
+ */
+public final class RecordOutput implements Flushable {
+
+    /** bytes buffered before a write to the stream, a whole number of records */
+    public static final int BUFFER_SIZE = WeatherRecords.RECORD_SIZE * 204;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private final OutputStream out;
+
+    private ByteBuffer buffer = buffer(WeatherRecords.RECORD_SIZE * TYPES.length);
+
+    private int position;
+
+    public RecordOutput(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a record per reading of an airport.
+     *
+     * @param airport
+     *            the airport id
+     * @return the number of records written
+     */
+    public int write(final int airport, final AtmosphericInformation ai) throws IOException {
+        int written = 0;
+        for (DataPointType type : TYPES) {
+            DataPoint dataPoint = ai.get(type);
+            if (dataPoint != null) {
+                write(airport, type, dataPoint);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    public void write(final int airport, final DataPointType type, final DataPoint dataPoint) throws IOException {
+        if (position == buffer.capacity()) {
+            makeRoom();
+        }
+        WeatherRecords.writeRecord(buffer, position, airport, type, dataPoint);
+        position += WeatherRecords.RECORD_SIZE;
+    }
+
+    /**
+     * Hand the buffered records to the stream and flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void makeRoom() throws IOException {
+        if (buffer.capacity() < BUFFER_SIZE) {
+            ByteBuffer larger = buffer(Math.min(2 * buffer.capacity(), BUFFER_SIZE));
+            larger.put(buffer.array(), 0, position);
+            buffer = larger;
+        } else {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer.array(), 0, position);
+            position = 0;
+        }
+    }
+
+    private static ByteBuffer buffer(final int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,164 @@
+package com.crossover.trial.weather.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.WeatherUpdate;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * The binary form of readings, for collectors and clients that exchange them
+ * at a high rate. A record holds one reading in a fixed {@value #RECORD_SIZE}
+ * bytes, little endian:
+ *
+ * <pre>
+ *  0  u16  airport id, see {@link AirportCodes}
+ *  2  u8   {@link DataPointType} ordinal
+ *  3  u8   reserved, 0
+ *  4  i32  count
+ *  8  f64  mean
+ * 16  f64  first
+ * 24  f64  median
+ * 32  f64  last
+ * </pre>
+ *
+ * A data point on its own, posted to the path naming its airport and type, is
+ * the last {@value #DATA_POINT_SIZE} bytes of a record. Records carry readings
+ * only, so update times and airports without readings have no binary form.
+ *
+ * @author Joao Gatto
+ */
+public final class WeatherRecords {
+
+    public static final String MEDIA_TYPE = "application/x-weather-records";
+
+    public static final MediaType MEDIA_TYPE_TYPE = MediaType.valueOf(MEDIA_TYPE);
+
+    public static final int RECORD_SIZE = 40;
+
+    public static final int DATA_POINT_SIZE = 36;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** record layout, all offsets in bytes */
+    private static final int AIRPORT = 0;
+    private static final int TYPE = 2;
+    private static final int RESERVED = 3;
+    private static final int DATA_POINT = 4;
+
+    /** data point layout, offsets from its start */
+    private static final int COUNT = 0;
+    private static final int MEAN = 4;
+    private static final int FIRST = 12;
+    private static final int MEDIAN = 20;
+    private static final int LAST = 28;
+
+    /** records read from a stream at a time */
+    private static final int RECORDS_PER_READ = 256;
+
+    private WeatherRecords() {
+    }
+
+    /**
+     * @param buffer
+     *            a little endian buffer
+     * @return the data point at the offset
+     */
+    public static DataPoint readDataPoint(final ByteBuffer buffer, final int offset) {
+        return new DataPoint.Builder().withCount(buffer.getInt(offset + COUNT)).withMean(buffer.getDouble(offset + MEAN))
+                .withFirst(buffer.getDouble(offset + FIRST)).withMedian(buffer.getDouble(offset + MEDIAN))
+                .withLast(buffer.getDouble(offset + LAST)).build();
+    }
+
+    public static void writeDataPoint(final ByteBuffer buffer, final int offset, final DataPoint dataPoint) {
+        buffer.putInt(offset + COUNT, dataPoint.getCount());
+        buffer.putDouble(offset + MEAN, dataPoint.getMean());
+        buffer.putDouble(offset + FIRST, dataPoint.getFirst());
+        buffer.putDouble(offset + MEDIAN, dataPoint.getMedian());
+        buffer.putDouble(offset + LAST, dataPoint.getLast());
+    }
+
+    /**
+     * @param buffer
+     *            a little endian buffer
+     * @return the update in the record at the offset, or null if the record
+     *         names no airport code or point type
+     */
+    public static WeatherUpdate readUpdate(final ByteBuffer buffer, final int offset) {
+        int airport = buffer.getShort(offset + AIRPORT) & 0xffff;
+        int type = buffer.get(offset + TYPE) & 0xff;
+        if (airport >= AirportCodes.CAPACITY || type >= TYPES.length) {
+            return null;
+        }
+        return new WeatherUpdate(AirportCodes.codeOf(airport), TYPES[type].name(), readDataPoint(buffer, offset + DATA_POINT));
+    }
+
+    public static void writeRecord(final ByteBuffer buffer, final int offset, final int airport, final DataPointType type,
+            final DataPoint dataPoint) {
+        buffer.putShort(offset + AIRPORT, (short) airport);
+        buffer.put(offset + TYPE, (byte) type.ordinal());
+        buffer.put(offset + RESERVED, (byte) 0);
+        writeDataPoint(buffer, offset + DATA_POINT, dataPoint);
+    }
+
+    /**
+     * Read records up to the end of the stream.
+     *
+     * @return the updates, with null for the records naming no airport code or
+     *         point type
+     * @throws MalformedRecordException
+     *             if the stream ends inside a record
+     */
+    public static List<WeatherUpdate> readUpdates(final InputStream in) throws IOException {
+        List<WeatherUpdate> updates = new ArrayList<>();
+        byte[] bytes = new byte[RECORD_SIZE * RECORDS_PER_READ];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int filled = 0;
+        int read;
+        while ((read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+            filled += read;
+            int whole = filled - filled % RECORD_SIZE;
+            for (int offset = 0; offset < whole; offset += RECORD_SIZE) {
+                updates.add(readUpdate(buffer, offset));
+            }
+            // keep a record cut by the read for the next one
+            System.arraycopy(bytes, whole, bytes, 0, filled - whole);
+            filled -= whole;
+        }
+        if (filled > 0) {
+            throw new MalformedRecordException("Record cut short after " + updates.size() + " records");
+        }
+        return updates;
+    }
+
+    /**
+     * Read a data point on its own, the whole of the stream.
+     *
+     * @return the data point, or null for an empty stream
+     * @throws MalformedRecordException
+     *             if the stream holds anything but one data point
+     */
+    public static DataPoint readDataPoint(final InputStream in) throws IOException {
+        byte[] bytes = new byte[DATA_POINT_SIZE + 1];
+        int filled = 0;
+        int read;
+        while (filled < bytes.length && (read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+            filled += read;
+        }
+        if (filled == 0) {
+            return null;
+        }
+        if (filled != DATA_POINT_SIZE) {
+            throw new MalformedRecordException("Expected " + DATA_POINT_SIZE + " bytes for a data point");
+        }
+        return readDataPoint(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 0);
+    }
+}
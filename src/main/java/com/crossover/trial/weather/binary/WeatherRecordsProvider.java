@@ -0,0 +1,47 @@
+package com.crossover.trial.weather.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+
+import com.crossover.trial.weather.model.DataPoint;
+
+/**
+ * Reads a data point posted in its binary form, see {@link WeatherRecords}.
+ *
+ * @author Joao Gatto
+ */
+@Provider
+@Consumes(WeatherRecords.MEDIA_TYPE)
+public class WeatherRecordsProvider implements MessageBodyReader<DataPoint> {
+
+    @Override
+    public boolean isReadable(final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType) {
+        return type == DataPoint.class && WeatherRecords.MEDIA_TYPE_TYPE.isCompatible(mediaType);
+    }
+
+    /**
+     * @return the data point, or null for an empty body
+     * @throws BadRequestException
+     *             if the body is not one binary data point
+     */
+    @Override
+    public DataPoint readFrom(final Class<DataPoint> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders, final InputStream entityStream)
+            throws IOException {
+        try {
+            return WeatherRecords.readDataPoint(entityStream);
+        } catch (MalformedRecordException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+}
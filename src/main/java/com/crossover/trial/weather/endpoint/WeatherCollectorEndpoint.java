@@ -1,14 +1,22 @@
 package com.crossover.trial.weather.endpoint;
 
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.binary.WeatherRecords;
+import com.crossover.trial.weather.model.DataPoint;
+
 /**
  * The interface shared to airport weather collection systems.
  *
@@ -39,10 +47,62 @@ public interface WeatherCollectorEndpoint {
      *
      * @return HTTP Response code
      */
+    Response updateWeather(String iataCode, String pointType, String datapointJson);
+
+    /**
+     * Update the airports atmospheric information for a particular pointType.
+     * The data point is parsed straight from the request body, a json dict
+     * containing mean, first, median, last and count keys, or its binary form
+     * when posted as {@value WeatherRecords#MEDIA_TYPE}.
+     *
+     * @param iataCode
+     *            the 3 letter airport code
+     * @param pointType
+     *            the point type, {@link DataPointType} for a complete list
+     * @param dataPoint
+     *            the data point, null when the body is empty
+     *
+     * @return HTTP Response code
+     */
     @POST
     @Path("/weather/{iata}/{pointType}")
     Response updateWeather(@PathParam("iata") String iataCode, @PathParam("pointType") String pointType,
-            String datapointJson);
+            DataPoint dataPoint);
+
+    /**
+     * Update the atmospheric information of many airports in one request. The
+     * body is either a json array or a stream of json objects one per line,
+     * each with "iata", "pointType" and "dataPoint" keys. Records are checked
+     * one by one and a rejected record does not fail the others, but a body
+     * that is not valid json is refused as a whole.
+     *
+     * @param body
+     *            the json formatted records
+     * @return HTTP Response code and a json summary with the "applied" and
+     *         "rejected" counts and a "status" list holding, per record, the
+     *         response code the single record update would have returned
+     */
+    @POST
+    @Path("/weather")
+    @Consumes({ MediaType.APPLICATION_JSON, "application/x-ndjson" })
+    @Produces(MediaType.APPLICATION_JSON)
+    Response updateWeather(InputStream body);
+
+    /**
+     * The binary form of {@link #updateWeather(InputStream)}: the body is a
+     * run of fixed size records, see {@link WeatherRecords}. A body that ends
+     * inside a record is refused as a whole.
+     *
+     * @param body
+     *            the binary records
+     * @return HTTP Response code and the same json summary as
+     *         {@link #updateWeather(InputStream)}
+     */
+    @POST
+    @Path("/weather")
+    @Consumes(WeatherRecords.MEDIA_TYPE)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response updateWeatherRecords(InputStream body);
 
     /**
      * Return a list of known airports as a json formatted list
@@ -71,18 +131,39 @@ public interface WeatherCollectorEndpoint {
      * Add a new airport to the known airport list.
      *
      * @param iata
-     *            the 3 letter airport code of the new airport
+     *            the 3 letter airport code of the new airport, upper case
      * @param latString
      *            the airport's latitude in degrees as a string [-90, 90]
      * @param longString
      *            the airport's longitude in degrees as a string [-180, 180]
-     * @return HTTP Response code for the add operation
+     * @return HTTP Response code for the add operation, 400 if the code is not
+     *         three upper case letters or a coordinate is not a number
      */
     @POST
     @Path("/airport/{iata}/{lat}/{long}")
     Response addAirport(@PathParam("iata") String iata, @PathParam("lat") String latString,
             @PathParam("long") String longString);
 
+    /**
+     * Add or replace many airports from one streamed body, either airports.dat
+     * CSV lines or JSON objects one per line. Lines are parsed as they arrive
+     * and stored in batches; a bad line is skipped and reported without
+     * failing the rest.
+     *
+     * @param contentType
+     *            "text/csv" or "text/plain" for CSV, "application/x-ndjson"
+     *            for JSON lines
+     * @param body
+     *            the airports, one per line
+     * @return HTTP Response code and a json summary with the "added" and
+     *         "rejected" counts and the first "rejectedLines" numbers
+     */
+    @POST
+    @Path("/airports")
+    @Consumes({ "text/csv", MediaType.TEXT_PLAIN, "application/x-ndjson" })
+    @Produces(MediaType.APPLICATION_JSON)
+    Response addAirports(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body);
+
     /**
      * Remove an airport from the known airport list
      *
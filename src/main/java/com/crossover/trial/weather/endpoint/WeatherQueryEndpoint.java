@@ -4,9 +4,12 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.binary.WeatherRecords;
+
 /**
  * The query only API for the Weather Server App. This API is made available to
  * the public internet.
@@ -39,8 +42,255 @@ public interface WeatherQueryEndpoint {
      * @return an HTTP Response and a list of {@link AtmosphericInformation}
      *         from the requested airport and airports in the given radius
      */
+    default Response weather(final String iata, final String radiusString) {
+        return weather(iata, radiusString, null, null, null, null);
+    }
+
+    /**
+     * {@link #weather(String, String)} keeping only the airports whose readings
+     * meet some conditions, checked while the radius is scanned so the others
+     * are never encoded.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param radiusString
+     *            the radius, in km, from which to collect weather data
+     * @param filter
+     *            comma separated ranges of the mean of a point type as
+     *            type:min:max, both inclusive and either one, not both, left
+     *            empty for no bound, e.g. "wind:10:,humidity::80"; airports
+     *            without a reading of a listed type are left out. None when
+     *            missing
+     * @param maxAge
+     *            the most milliseconds since the airport's last update, any
+     *            age when missing
+     * @param types
+     *            comma separated point types to write, e.g. "wind,humidity",
+     *            all when missing
+     * @param fields
+     *            comma separated statistics of each point to write, out of
+     *            mean, first, median, last and count, all when missing
+     *
+     * @return an HTTP Response and a list of {@link AtmosphericInformation}
+     *         from the matching airports, or a 400 for a bad filter, age or
+     *         projection
+     */
     @GET
     @Path("/weather/{iata}/{radius}")
     @Produces(MediaType.APPLICATION_JSON)
-    Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+    Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+            @QueryParam("filter") String filter, @QueryParam("maxAge") String maxAge,
+            @QueryParam("types") String types, @QueryParam("fields") String fields);
+
+    /**
+     * The binary form of {@link #weather(String, String)}, for clients that
+     * accept {@value WeatherRecords#MEDIA_TYPE}: a record per reading of each
+     * matching airport, see {@link WeatherRecords}. Json stays the answer to
+     * clients that accept both.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param radiusString
+     *            the radius, in km, from which to collect weather data
+     *
+     * @return an HTTP Response and the binary records
+     */
+    default Response weatherRecords(final String iata, final String radiusString) {
+        return weatherRecords(iata, radiusString, null, null);
+    }
+
+    /**
+     * The binary form of {@link #weather(String, String, String, String, String, String)},
+     * without a projection: records always carry every statistic.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param radiusString
+     *            the radius, in km, from which to collect weather data
+     * @param filter
+     *            ranges of the mean by point type, as for json
+     * @param maxAge
+     *            the most milliseconds since the airport's last update
+     *
+     * @return an HTTP Response and the binary records, or a 400 for a bad
+     *         filter or age
+     */
+    @GET
+    @Path("/weather/{iata}/{radius}")
+    @Produces(WeatherRecords.MEDIA_TYPE + ";qs=0.5")
+    Response weatherRecords(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+            @QueryParam("filter") String filter, @QueryParam("maxAge") String maxAge);
+
+    /**
+     * Retrieve the airports closest to the given airport, nearest first and
+     * the airport itself included, as a list of {"iata", "distance" in km,
+     * "atmosphericInformation"}.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param k
+     *            the number of airports to return
+     *
+     * @return an HTTP Response and at most k airports, none for an unknown
+     *         code, or a 400 when k is not a positive whole number
+     */
+    @GET
+    @Path("/nearest/{iata}/{k}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response nearest(@PathParam("iata") String iata, @PathParam("k") String k);
+
+    /**
+     * Retrieve the airports closest to a point, as
+     * {@link #nearest(String, String)} does.
+     *
+     * @param latitude
+     *            the latitude in degrees
+     * @param longitude
+     *            the longitude in degrees
+     * @param k
+     *            the number of airports to return
+     *
+     * @return an HTTP Response and at most k airports, or a 400 for a bad
+     *         coordinate or k
+     */
+    @GET
+    @Path("/nearest/{latitude}/{longitude}/{k}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response nearestTo(@PathParam("latitude") String latitude, @PathParam("longitude") String longitude,
+            @PathParam("k") String k);
+
+    /**
+     * Retrieve the atmospheric information of the airports within a radius of
+     * any point, registered airport or not, as a list of {"iata", "latitude",
+     * "longitude", "atmosphericInformation"}.
+     *
+     * @param latitude
+     *            the latitude of the centre in degrees
+     * @param longitude
+     *            the longitude of the centre in degrees
+     * @param radiusString
+     *            the radius in km
+     *
+     * @return an HTTP Response and the matching airports in no particular
+     *         order, or a 400 for a bad coordinate or radius
+     */
+    @GET
+    @Path("/area/{latitude}/{longitude}/{radius}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response area(@PathParam("latitude") String latitude, @PathParam("longitude") String longitude,
+            @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve the atmospheric information of the airports inside a
+     * latitude/longitude box, such as a map viewport, in the form of
+     * {@link #area(String, String, String)}. A west edge greater than the east
+     * edge crosses the antimeridian.
+     *
+     * @param south
+     *            the southern edge in degrees
+     * @param west
+     *            the western edge in degrees
+     * @param north
+     *            the northern edge in degrees
+     * @param east
+     *            the eastern edge in degrees
+     *
+     * @return an HTTP Response and the matching airports in no particular
+     *         order, or a 400 for a bad edge
+     */
+    @GET
+    @Path("/box/{south}/{west}/{north}/{east}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response box(@PathParam("south") String south, @PathParam("west") String west, @PathParam("north") String north,
+            @PathParam("east") String east);
+
+    /**
+     * Retrieve the past readings of one type at an airport, as a list of data
+     * points with a "time" field. Only the latest readings are kept, up to a
+     * fixed number per airport and type.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param pointType
+     *            the type of reading, e.g. wind or humidity
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch, the oldest kept reading when missing
+     * @param to
+     *            the end of the range, exclusive, now when missing
+     *
+     * @return an HTTP Response and the readings in the order they were
+     *         collected, or a 400 for an unknown type or a bad range
+     */
+    default Response history(final String iata, final String pointType, final String from, final String to) {
+        return history(iata, pointType, from, to, null);
+    }
+
+    /**
+     * {@link #history(String, String, String, String)} with only some of the
+     * statistics of each reading.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param pointType
+     *            the type of reading, e.g. wind or humidity
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch, the oldest kept reading when missing
+     * @param to
+     *            the end of the range, exclusive, now when missing
+     * @param fields
+     *            comma separated statistics to write next to the time, out of
+     *            mean, first, median, last and count, all when missing
+     *
+     * @return an HTTP Response and the readings in the order they were
+     *         collected, or a 400 for an unknown type or field or a bad range
+     */
+    @GET
+    @Path("/history/{iata}/{pointType}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response history(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+            @QueryParam("from") String from, @QueryParam("to") String to, @QueryParam("fields") String fields);
+
+    /**
+     * Retrieve aggregates of the readings of one type at an airport, per
+     * minute, hour or day: {"resolution": ..., "buckets": [{"time", "min",
+     * "max", "mean", "count"}, ...]}. The resolution is the finest that holds
+     * the whole range in at most the given number of buckets.
+     *
+     * @param iata
+     *            the three letter airport code
+     * @param pointType
+     *            the type of reading, e.g. wind or humidity
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch, a day before the end when missing
+     * @param to
+     *            the end of the range, exclusive, now when missing
+     * @param points
+     *            the most buckets to answer with, 200 when missing
+     *
+     * @return an HTTP Response and the buckets that received readings, or a
+     *         400 for an unknown type, a bad range or a bad budget
+     */
+    @GET
+    @Path("/rollup/{iata}/{pointType}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response rollup(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+            @QueryParam("from") String from, @QueryParam("to") String to, @QueryParam("points") String points);
+
+    /**
+     * Retrieve the counters of the radius query cache and the neighbour lists
+     * in use: {"cache": {"size", "hits", "misses", "evictions",
+     * "invalidations"}, "neighbours": {"bytes", "lists": {iata: length}}}.
+     * Evictions make room for newer answers, invalidations follow reading
+     * updates; lists belong to the most requested airports and answer any
+     * radius around them.
+     *
+     * @return an HTTP Response and the counters since the server started
+     */
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response stats();
 }
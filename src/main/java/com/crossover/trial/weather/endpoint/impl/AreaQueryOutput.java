@@ -0,0 +1,61 @@
+package com.crossover.trial.weather.endpoint.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+
+/**
+ * Writes the json list of the airports an area scan finds, as it finds them:
+ * {"iata", "latitude", "longitude", "atmosphericInformation"} per airport, so
+ * a client that only knows the area can place the results on a map.
+ *
+ * @author Joao Gatto
+ */
+final class AreaQueryOutput implements StreamingOutput {
+
+    private final Consumer<BiConsumer<Airport, AtmosphericInformation>> scan;
+
+    /**
+     * @param scan
+     *            runs the area query, passing each airport found to the given
+     *            action
+     */
+    AreaQueryOutput(final Consumer<BiConsumer<Airport, AtmosphericInformation>> scan) {
+        this.scan = scan;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        JsonOutput json = new JsonOutput(output);
+        json.beginArray();
+        try {
+            scan.accept((airport, ai) -> {
+                try {
+                    json.beginObject();
+                    json.name("iata").value(airport.getIata());
+                    json.name("latitude").value(airport.getCoordinate().getLatitude());
+                    json.name("longitude").value(airport.getCoordinate().getLongitude());
+                    json.name("atmosphericInformation");
+                    WeatherJson.write(json, ai);
+                    json.endObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // the client went away, stop scanning
+            throw e.getCause();
+        }
+        json.endArray();
+        json.flush();
+    }
+}
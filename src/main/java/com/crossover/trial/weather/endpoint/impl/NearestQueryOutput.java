@@ -0,0 +1,58 @@
+package com.crossover.trial.weather.endpoint.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.service.AirportService;
+
+/**
+ * Writes the json list of the airports closest to a point, nearest first:
+ * {"iata", "distance" in km, "atmosphericInformation"} per airport, as the
+ * spatial index hands them out.
+ *
+ * @author Joao Gatto
+ */
+final class NearestQueryOutput implements StreamingOutput {
+
+    private final AirportService airportService;
+
+    private final Coordinate centre;
+
+    private final int k;
+
+    NearestQueryOutput(final AirportService airportService, final Coordinate centre, final int k) {
+        this.airportService = airportService;
+        this.centre = centre;
+        this.k = k;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        JsonOutput json = new JsonOutput(output);
+        json.beginArray();
+        try {
+            airportService.forEachNearestAirport(centre, k, (airport, distance) -> {
+                try {
+                    json.beginObject();
+                    json.name("iata").value(airport.getIata());
+                    json.name("distance").value(distance);
+                    json.name("atmosphericInformation");
+                    WeatherJson.write(json, airportService.getAtmosphericInformationByIataCode(airport.getIata()));
+                    json.endObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        json.endArray();
+        json.flush();
+    }
+}
@@ -0,0 +1,149 @@
+package com.crossover.trial.weather.endpoint.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.Projection;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.WeatherFilter;
+import com.crossover.trial.weather.repository.QueryCache;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Writes the json list of atmospheric information around a point while the
+ * radius scan runs, so neither the result list nor the whole response body is
+ * held in memory. The first record is flushed on its own to get the response
+ * started; after that output goes out whenever the buffer fills.
+ * <p>
+ * Answers up to {@value #MAX_CACHED_SIZE} bytes are copied as they are written
+ * and handed to the {@link QueryCache} at the end, with the airports they list.
+ *
+ * @author Joao Gatto
+ */
+final class RadiusQueryOutput implements StreamingOutput {
+
+    /** the largest answer kept in the cache, in bytes */
+    static final int MAX_CACHED_SIZE = 32 * 1024;
+
+    private final AirportService airportService;
+
+    private final int airport;
+
+    private final Airport centre;
+
+    private final double radiusKm;
+
+    private final WeatherFilter filter;
+
+    private final Projection projection;
+
+    /**
+     * @param centre
+     *            the airport queried, as returned by the service, so its
+     *            neighbour list is used when it has one
+     * @param filter
+     *            what the airports listed must meet
+     * @param projection
+     *            the parts of each record to write; only unfiltered answers
+     *            in full are cached
+     */
+    RadiusQueryOutput(final AirportService airportService, final int airport, final Airport centre,
+            final double radiusKm, final WeatherFilter filter, final Projection projection) {
+        this.airportService = airportService;
+        this.airport = airport;
+        this.centre = centre;
+        this.radiusKm = radiusKm;
+        this.filter = filter;
+        this.projection = projection;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        QueryCache cache = airportService.getQueryCache();
+        // before the scan, so updates during it keep the answer out
+        long stamp = cache.stamp();
+        CopyingOutputStream copy = new CopyingOutputStream(output);
+        JsonOutput json = new JsonOutput(copy);
+        json.beginArray();
+        int[][] members = { new int[16] };
+        int[] count = { 0 };
+        try {
+            airportService.forEachAtmosphericInformationWithin(centre, radiusKm, filter, (found, ai) -> {
+                try {
+                    WeatherJson.write(json, ai, projection);
+                    if (count[0] == 0) {
+                        json.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (count[0] == members[0].length) {
+                    members[0] = Arrays.copyOf(members[0], 2 * count[0]);
+                }
+                members[0][count[0]++] = AirportCodes.idOf(found.getIata());
+            });
+        } catch (UncheckedIOException e) {
+            // the client went away, stop scanning
+            throw e.getCause();
+        }
+        json.endArray();
+        json.flush();
+        byte[] body = copy.copied();
+        if (body != null && filter.isEmpty() && projection.isAll()) {
+            cache.put(airport, radiusKm, stamp, members[0], count[0], body);
+        }
+    }
+
+    /** passes writes through, keeping a copy until it grows too large */
+    private static final class CopyingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private byte[] copy = new byte[JsonOutput.BUFFER_SIZE];
+
+        private int size;
+
+        CopyingOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            if (copy == null) {
+                return;
+            }
+            if (size + len > MAX_CACHED_SIZE) {
+                copy = null;
+                return;
+            }
+            if (size + len > copy.length) {
+                copy = Arrays.copyOf(copy, Math.min(MAX_CACHED_SIZE, Math.max(2 * copy.length, size + len)));
+            }
+            System.arraycopy(b, off, copy, size, len);
+            size += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /** the bytes written, null when there were too many */
+        byte[] copied() {
+            return copy == null ? null : Arrays.copyOf(copy, size);
+        }
+    }
+}
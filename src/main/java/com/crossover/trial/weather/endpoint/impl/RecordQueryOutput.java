@@ -0,0 +1,74 @@
+package com.crossover.trial.weather.endpoint.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.crossover.trial.weather.binary.RecordOutput;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.WeatherFilter;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Writes the binary records of the readings at and around an airport, see
+ * {@link com.crossover.trial.weather.binary.WeatherRecords}. Like
+ * {@link RadiusQueryOutput}, a radius scan is written out as it runs and the
+ * first airport is flushed on its own.
+ *
+ * @author Joao Gatto
+ */
+final class RecordQueryOutput implements StreamingOutput {
+
+    private final AirportService airportService;
+
+    private final Airport airport;
+
+    private final double radiusKm;
+
+    private final WeatherFilter filter;
+
+    /**
+     * @param airport
+     *            the airport queried, null for an unknown one, which has no
+     *            records
+     * @param filter
+     *            what the airports written must meet
+     */
+    RecordQueryOutput(final AirportService airportService, final Airport airport, final double radiusKm,
+            final WeatherFilter filter) {
+        this.airportService = airportService;
+        this.airport = airport;
+        this.radiusKm = radiusKm;
+        this.filter = filter;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        RecordOutput records = new RecordOutput(output);
+        if (airport != null && radiusKm == 0 && filter.isEmpty()) {
+            records.write(AirportCodes.idOf(airport.getIata()), airportService.getAtmosphericInformationByIataCode(airport.getIata()));
+        } else if (airport != null) {
+            try {
+                boolean[] first = { true };
+                airportService.forEachAtmosphericInformationWithin(airport, radiusKm, filter, (found, ai) -> {
+                    try {
+                        records.write(AirportCodes.idOf(found.getIata()), ai);
+                        if (first[0]) {
+                            records.flush();
+                            first[0] = false;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // the client went away, stop scanning
+                throw e.getCause();
+            }
+        }
+        records.flush();
+    }
+}
@@ -1,22 +1,35 @@
 package com.crossover.trial.weather.endpoint.impl;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
-import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.binary.WeatherRecords;
 import com.crossover.trial.weather.endpoint.WeatherCollectorEndpoint;
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.json.JsonInput;
+import com.crossover.trial.weather.json.WeatherJson;
 import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.WeatherUpdate;
 import com.crossover.trial.weather.service.AirportService;
 import com.crossover.trial.weather.service.impl.AirportServiceImpl;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.crossover.trial.weather.utils.AirportParser;
 
 /**
  * A REST implementation of the WeatherCollector API. Accessible only to airport
@@ -30,8 +43,11 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
 
     public static final Logger LOGGER = Logger.getLogger(WeatherCollectorEndpointImpl.class.getName());
 
-    /** shared gson json to object factory */
-    public static final Gson gson = new Gson();
+    /** airports stored per service call in a bulk upload */
+    private static final int BULK_BATCH_SIZE = 1000;
+
+    /** rejected line numbers listed in a bulk upload result */
+    private static final int MAX_REPORTED_LINES = 100;
 
     private AirportService airportService = new AirportServiceImpl();
 
@@ -41,21 +57,31 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
     }
 
     @Override
-    public Response updateWeather(@PathParam("iata") final String iataCode, @PathParam("pointType") final String pointType,
+    public Response updateWeather(final String iataCode, final String pointType,
             final String datapointJson) {
-        DataPoint dp;
-        try {
-            dp = gson.fromJson(datapointJson, DataPoint.class);
-        } catch (JsonSyntaxException e) {
-            LOGGER.log(Level.SEVERE, "Cannot read datapoint", e);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+        DataPoint dp = null;
+        if (datapointJson != null) {
+            try {
+                dp = WeatherJson.readDataPoint(new JsonInput(datapointJson.getBytes(StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Cannot read datapoint", e);
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
         }
+        return updateWeather(iataCode, pointType, dp);
+    }
+
+    @Override
+    public Response updateWeather(final String iataCode, final String pointType, final DataPoint dp) {
         if (iataCode == null || pointType == null || dp == null || airportService.getAirport(iataCode) == null) {
             LOGGER.log(Level.SEVERE, "Bad parameters: iataCode = " + iataCode + ", pointType = " + pointType + ", dp = " + dp);
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
         try {
             airportService.updateAtmosphericInformation(iataCode, pointType, dp);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Rejected datapoint: " + e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (WeatherException e) {
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -63,6 +89,56 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
         return Response.status(Response.Status.OK).build();
     }
 
+    @Override
+    public Response updateWeather(final InputStream body) {
+        List<WeatherUpdate> updates = new ArrayList<>();
+        try {
+            JsonInput in = new JsonInput(body);
+            if (in.peek() == JsonInput.Token.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    updates.add(WeatherJson.readWeatherUpdate(in));
+                }
+                in.endArray();
+            } else {
+                // json lines, one value after another
+                while (in.peek() != JsonInput.Token.END_DOCUMENT) {
+                    updates.add(WeatherJson.readWeatherUpdate(in));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot read weather updates after " + updates.size() + " records", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return apply(updates);
+    }
+
+    @Override
+    public Response updateWeatherRecords(final InputStream body) {
+        List<WeatherUpdate> updates;
+        try {
+            updates = WeatherRecords.readUpdates(body);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot read weather records", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return apply(updates);
+    }
+
+    /** applies a batch and sums up the outcome per record */
+    private Response apply(final List<WeatherUpdate> updates) {
+        BitSet rejected = airportService.updateAtmosphericInformation(updates);
+        int[] status = new int[updates.size()];
+        for (int i = 0; i < status.length; i++) {
+            status[i] = rejected.get(i) ? Response.Status.BAD_REQUEST.getStatusCode() : Response.Status.OK.getStatusCode();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("applied", updates.size() - rejected.cardinality());
+        result.put("rejected", rejected.cardinality());
+        result.put("status", status);
+        return Response.status(Response.Status.OK).entity(result).build();
+    }
+
     @Override
     public Response getAirports() {
         Set<String> result = new HashSet<>();
@@ -71,15 +147,15 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
     }
 
     @Override
-    public Response getAirport(@PathParam("iata") final String iata) {
+    public Response getAirport(final String iata) {
         Airport ad = airportService.getAirport(iata);
         return Response.status(Response.Status.OK).entity(ad).build();
     }
 
     @Override
-    public Response addAirport(@PathParam("iata") final String iata, @PathParam("lat") final String latString,
-            @PathParam("long") final String longString) {
-        if (iata == null || iata.length() != 3 || latString == null || longString == null) {
+    public Response addAirport(final String iata, final String latString,
+            final String longString) {
+        if (AirportCodes.idOf(iata) == AirportCodes.INVALID || latString == null || longString == null) {
             LOGGER.log(Level.SEVERE, "Bad parameters: iata = " + iata + ", latString = " + latString + ", longString = " + longString);
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
@@ -95,7 +171,49 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
     }
 
     @Override
-    public Response deleteAirport(@PathParam("iata") final String iata) {
+    public Response addAirports(final String contentType, final InputStream body) {
+        boolean json = contentType != null && contentType.contains("json");
+        int added = 0;
+        int rejected = 0;
+        List<Integer> rejectedLines = new ArrayList<>();
+        List<Airport> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    batch.add(json ? AirportParser.parseJson(line) : AirportParser.parseCsv(line));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.FINE, "Rejected airport line " + lineNumber + ": " + e.getMessage());
+                    rejected++;
+                    if (rejectedLines.size() < MAX_REPORTED_LINES) {
+                        rejectedLines.add(lineNumber);
+                    }
+                }
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    added += airportService.addAirports(batch);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot read airports after " + (added + batch.size()) + " entries", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        added += airportService.addAirports(batch);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("added", added);
+        result.put("rejected", rejected);
+        result.put("rejectedLines", rejectedLines);
+        return Response.status(Response.Status.OK).entity(result).build();
+    }
+
+    @Override
+    public Response deleteAirport(final String iata) {
         airportService.deleteAirport(iata);
         return Response.status(Response.Status.OK).build();
     }
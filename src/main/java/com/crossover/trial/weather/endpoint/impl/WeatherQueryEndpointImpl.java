@@ -1,22 +1,36 @@
 package com.crossover.trial.weather.endpoint.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.crossover.trial.weather.endpoint.WeatherQueryEndpoint;
+import com.crossover.trial.weather.json.JsonOutput;
+import com.crossover.trial.weather.json.Projection;
+import com.crossover.trial.weather.json.WeatherJson;
 import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.model.WeatherFilter;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.repository.QueryCache;
 import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.HealthService;
 import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+import com.crossover.trial.weather.service.impl.HealthServiceImpl;
+import com.crossover.trial.weather.utils.AirportCodes;
 import com.crossover.trial.weather.utils.CoordinateHelper;
-import com.google.gson.Gson;
 
 /**
  * The Weather App REST endpoint allows clients to query, update and check
@@ -33,11 +47,15 @@ public class WeatherQueryEndpointImpl implements WeatherQueryEndpoint {
     /** earth radius in KM */
     public static final double R = 6372.8;
 
-    /** shared gson json to object factory */
-    public static final Gson gson = new Gson();
+    /** rollup range when the query gives no start */
+    private static final long DEFAULT_ROLLUP_RANGE = TimeUnit.DAYS.toMillis(1);
+
+    private static final int DEFAULT_ROLLUP_POINTS = 200;
 
     private AirportService airportService = new AirportServiceImpl();
 
+    private HealthService healthService = new HealthServiceImpl();
+
     /**
      * Retrieve service health including total size of valid data points and
      * request frequency information.
@@ -46,36 +64,7 @@ public class WeatherQueryEndpointImpl implements WeatherQueryEndpoint {
      */
     @Override
     public String ping() {
-        Map<String, Object> retval = new HashMap<>();
-        int datasize = 0;
-        for (AtmosphericInformation ai : airportService.getAllAtmosphericInformation()) {
-            // we only count recent readings
-            if (ai.getCloudCover() != null || ai.getHumidity() != null || ai.getPressure() != null || ai.getPrecipitation() != null || ai
-                    .getTemperature() != null || ai.getWind() != null) {
-                // updated in the last day
-                if (ai.getLastUpdateTime() > System.currentTimeMillis() - 86400000) {
-                    datasize++;
-                }
-            }
-        }
-        retval.put("datasize", datasize);
-
-        Map<String, Double> freq = new HashMap<>();
-        // fraction of queries
-        for (Airport data : airportService.getAllAirports()) {
-            double frac = (double) airportService.getRequestCount(data.getIata()).get() / airportService.getRequestCounts().size();
-            freq.put(data.getIata(), frac);
-        }
-        retval.put("iata_freq", freq);
-
-        int m = airportService.getRadiusCounts().keySet().stream().max(Double::compare).orElse(1000.0).intValue() + 1;
-        int[] hist = new int[m];
-        for (Map.Entry<Double, AtomicInteger> e : airportService.getRadiusCounts().entrySet()) {
-            int i = e.getKey().intValue() % 10;
-            hist[i] += e.getValue().get();
-        }
-        retval.put("radius_freq", hist);
-        return gson.toJson(retval);
+        return healthService.ping();
     }
 
     /**
@@ -87,31 +76,283 @@ public class WeatherQueryEndpointImpl implements WeatherQueryEndpoint {
      *            the iataCode
      * @param radiusString
      *            the radius in km
+     * @param filterString
+     *            ranges of the mean by point type, none when missing
+     * @param maxAge
+     *            the most milliseconds since an airport's last update
+     * @param types
+     *            the point types to write, all when missing
+     * @param fields
+     *            the statistics to write, all when missing
      *
-     * @return a list of atmospheric information
+     * @return a list of atmospheric information, streamed when the radius is
+     *         not 0 or there is a filter or projection, and empty for an
+     *         unknown airport
      */
     @Override
-    public Response weather(final String iata, final String radiusString) {
-        double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
-        if (radius < 0) {
-            radius = 0;
+    public Response weather(final String iata, final String radiusString, final String filterString,
+            final String maxAge, final String types, final String fields) {
+        double radius;
+        WeatherFilter filter;
+        Projection projection;
+        try {
+            radius = radius(radiusString);
+            filter = filter(filterString, maxAge);
+            projection = Projection.of(types, fields);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad weather query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
         }
         airportService.updateRequestFrequency(iata, radius);
-        List<AtmosphericInformation> result = new ArrayList<>();
-        if (radius == 0) {
+        // an unknown airport matches nothing, whichever way it is answered
+        Airport airport = airportService.getAirport(iata);
+        if (airport == null) {
+            return Response.status(Response.Status.OK).entity(new ArrayList<AtmosphericInformation>()).build();
+        }
+        if (radius == 0 && filter.isEmpty() && projection.isAll()) {
+            List<AtmosphericInformation> result = new ArrayList<>();
             result.add(airportService.getAtmosphericInformationByIataCode(iata));
-        } else {
-            Airport airport = airportService.getAirport(iata);
-            for (Airport airport2 : airportService.getAllAirports()) {
-                if (CoordinateHelper.calculateDistance(airport.getCoordinate(), airport2.getCoordinate()) <= radius) {
-                    AtmosphericInformation ai = airportService.getAtmosphericInformationByIataCode(airport2.getIata());
-                    if (ai != null) {
-                        result.add(ai);
-                    }
+            return Response.status(Response.Status.OK).entity(result).build();
+        }
+        int id = AirportCodes.idOf(iata);
+        // filtered answers depend on the clock, and only full ones are cached
+        boolean cacheable = filter.isEmpty() && projection.isAll();
+        byte[] cached = cacheable ? airportService.getQueryCache().get(id, radius) : null;
+        if (cached != null) {
+            return Response.status(Response.Status.OK).entity((StreamingOutput) output -> output.write(cached)).build();
+        }
+        // a wide radius matches many airports, write them out as they are found
+        return Response.status(Response.Status.OK)
+                .entity(new RadiusQueryOutput(airportService, id, airport, radius, filter, projection)).build();
+    }
+
+    @Override
+    public Response weatherRecords(final String iata, final String radiusString, final String filterString,
+            final String maxAge) {
+        double radius;
+        WeatherFilter filter;
+        try {
+            radius = radius(radiusString);
+            filter = filter(filterString, maxAge);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad weather query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        airportService.updateRequestFrequency(iata, radius);
+        return Response.status(Response.Status.OK)
+                .entity(new RecordQueryOutput(airportService, airportService.getAirport(iata), radius, filter))
+                .build();
+    }
+
+    @Override
+    public Response nearest(final String iata, final String k) {
+        int count;
+        try {
+            count = count(k);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad nearest query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        Airport airport = airportService.getAirport(iata);
+        if (airport == null) {
+            return Response.status(Response.Status.OK).entity(new ArrayList<AtmosphericInformation>()).build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(new NearestQueryOutput(airportService, airport.getCoordinate(), count)).build();
+    }
+
+    @Override
+    public Response nearestTo(final String latitude, final String longitude, final String k) {
+        Coordinate centre;
+        int count;
+        try {
+            centre = coordinate(latitude, longitude);
+            count = count(k);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad nearest query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(new NearestQueryOutput(airportService, centre, count))
+                .build();
+    }
+
+    @Override
+    public Response area(final String latitude, final String longitude, final String radiusString) {
+        Coordinate centre;
+        double radius;
+        try {
+            centre = coordinate(latitude, longitude);
+            radius = radius(radiusString);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad area query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(new AreaQueryOutput(
+                action -> airportService.forEachAtmosphericInformationWithin(centre, radius, action))).build();
+    }
+
+    @Override
+    public Response box(final String south, final String west, final String north, final String east) {
+        Coordinate southWest;
+        Coordinate northEast;
+        try {
+            southWest = coordinate(south, west);
+            northEast = coordinate(north, east);
+            if (northEast.getLatitude() < southWest.getLatitude()) {
+                throw new IllegalArgumentException("North edge below south edge");
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad box query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(new AreaQueryOutput(action -> airportService.forEachAtmosphericInformationInBox(
+                        southWest.getLatitude(), southWest.getLongitude(), northEast.getLatitude(),
+                        northEast.getLongitude(), action)))
+                .build();
+    }
+
+    @Override
+    public Response history(final String iata, final String pointType, final String from, final String to,
+            final String fields) {
+        History history;
+        Projection projection;
+        try {
+            history = airportService.getHistory(iata, pointType, time(from, 0), time(to, Long.MAX_VALUE));
+            projection = Projection.of(null, fields);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad history query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (projection.isAll()) {
+            return Response.status(Response.Status.OK).entity(history).build();
+        }
+        return Response.status(Response.Status.OK).entity((StreamingOutput) output -> {
+            JsonOutput json = new JsonOutput(output);
+            WeatherJson.write(json, history, projection);
+            json.flush();
+        }).build();
+    }
+
+    @Override
+    public Response rollup(final String iata, final String pointType, final String from, final String to,
+            final String points) {
+        Rollup rollup;
+        try {
+            long end = time(to, System.currentTimeMillis());
+            long start = time(from, end - DEFAULT_ROLLUP_RANGE);
+            int budget = points == null || points.trim().isEmpty() ? DEFAULT_ROLLUP_POINTS : Integer.parseInt(points.trim());
+            rollup = airportService.getRollup(iata, pointType, start, end, budget);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Bad rollup query", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(rollup).build();
+    }
+
+    @Override
+    public Response stats() {
+        QueryCache cache = airportService.getQueryCache();
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("size", cache.size());
+        counters.put("hits", cache.getHits());
+        counters.put("misses", cache.getMisses());
+        counters.put("evictions", cache.getEvictions());
+        counters.put("invalidations", cache.getInvalidations());
+        NeighbourIndex neighbourIndex = airportService.getNeighbourIndex();
+        Map<String, Object> lists = new LinkedHashMap<>();
+        neighbourIndex.forEachList((airport, length) -> lists.put(airport.getIata(), length));
+        Map<String, Object> neighbours = new LinkedHashMap<>();
+        neighbours.put("bytes", neighbourIndex.getMemoryBytes());
+        neighbours.put("lists", lists);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cache", counters);
+        stats.put("neighbours", neighbours);
+        return Response.status(Response.Status.OK).entity(stats).build();
+    }
+
+    /**
+     * @throws NumberFormatException
+     *             if the time is not a whole number
+     */
+    private static long time(final String time, final long ifMissing) {
+        return time == null || time.trim().isEmpty() ? ifMissing : Long.parseLong(time.trim());
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if either value is not a number or out of range
+     */
+    private static Coordinate coordinate(final String latitude, final String longitude) {
+        if (latitude == null || longitude == null) {
+            throw new IllegalArgumentException("Missing coordinate");
+        }
+        Coordinate coordinate = new Coordinate(Double.parseDouble(latitude), Double.parseDouble(longitude));
+        if (!CoordinateHelper.isValidLatitude(coordinate.getLatitude())
+                || !CoordinateHelper.isValidLongitude(coordinate.getLongitude())) {
+            throw new IllegalArgumentException("Invalid coordinate " + coordinate);
+        }
+        return coordinate;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the count is not a positive whole number
+     */
+    private static int count(final String count) {
+        int value = Integer.parseInt(count == null ? "" : count.trim());
+        if (value < 1) {
+            throw new IllegalArgumentException("Invalid count " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if a range is not type:min:max with known type and numbers
+     *             and at least one bound, or the age is not a whole number of at least 0
+     */
+    private static WeatherFilter filter(final String ranges, final String maxAge) {
+        WeatherFilter.Builder builder = new WeatherFilter.Builder();
+        if (ranges != null && !ranges.trim().isEmpty()) {
+            for (String range : ranges.split(",")) {
+                String[] parts = range.split(":", -1);
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Expected type:min:max, got " + range);
                 }
+                if (parts[1].trim().isEmpty() && parts[2].trim().isEmpty()) {
+                    throw new IllegalArgumentException("No bound in " + range);
+                }
+                builder.withRange(DataPointType.fromName(parts[0].trim()), bound(parts[1], Double.NEGATIVE_INFINITY),
+                        bound(parts[2], Double.POSITIVE_INFINITY));
             }
         }
-        return Response.status(Response.Status.OK).entity(result).build();
+        if (maxAge != null && !maxAge.trim().isEmpty()) {
+            long age = Long.parseLong(maxAge.trim());
+            if (age < 0) {
+                throw new IllegalArgumentException("Negative age " + age);
+            }
+            builder.withUpdatedSince(Math.max(1, System.currentTimeMillis() - age));
+        }
+        return builder.build();
+    }
+
+    private static double bound(final String bound, final double ifMissing) {
+        return bound.trim().isEmpty() ? ifMissing : Double.parseDouble(bound.trim());
+    }
+
+    /**
+     * @return the query radius in km in cache steps, 0 when missing or
+     *         negative
+     * @throws IllegalArgumentException
+     *             if the radius is not a number
+     */
+    private static double radius(final String radiusString) {
+        double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
+        if (Double.isNaN(radius)) {
+            throw new IllegalArgumentException("Radius is not a number");
+        }
+        return radius < 0 ? 0 : QueryCache.round(radius);
     }
 
 }
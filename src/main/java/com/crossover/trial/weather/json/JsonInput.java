@@ -0,0 +1,524 @@
+package com.crossover.trial.weather.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Pulls json tokens from a stream of utf-8 bytes, reading through a fixed size
+ * buffer so a body is never held whole. Several values may follow each other
+ * at the top level, as in a json lines stream.
+ *
+ * <p>
+ * Numbers may also be read from strings, so "NaN" reads back as a double.
+ * Not thread safe.
+ *
+ * @author Joao Gatto
+ */
+public final class JsonInput {
+
+    /** the kinds of token, see {@link JsonInput#peek()} */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /** bytes read from the stream at a time */
+    public static final int BUFFER_SIZE = 8192;
+
+    /** digits any long of which is exact as a double */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** the powers of ten exact as doubles */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final int DOCUMENT = 0;
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    /** a name was read and its value is next */
+    private static final int DANGLING_NAME = 5;
+
+    private final InputStream in;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    /** bytes consumed before the buffer, for error messages */
+    private long offset;
+
+    private int[] stack = new int[16];
+
+    private int depth = 1;
+
+    /** the next token, when already found */
+    private Token peeked;
+
+    private final StringBuilder text = new StringBuilder();
+
+    /** the digits of the last number read, without its point */
+    private long mantissa;
+
+    /** the digits of the last number read after its point */
+    private int fractionDigits;
+
+    /** whether mantissa and fractionDigits hold the last number exactly */
+    private boolean plainNumber;
+
+    public JsonInput(final InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+        stack[0] = DOCUMENT;
+    }
+
+    /**
+     * Read from bytes already in memory, without copying them.
+     */
+    public JsonInput(final byte[] bytes) {
+        this.in = null;
+        this.buffer = bytes;
+        this.limit = bytes.length;
+        stack[0] = DOCUMENT;
+    }
+
+    /**
+     * @return the kind of the next token, without consuming it
+     * @throws MalformedJsonException
+     *             if the input is not json
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = next();
+        }
+        return peeked;
+    }
+
+    /**
+     * @return whether the current array or object has more elements
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        readString();
+        return text.toString();
+    }
+
+    /**
+     * @return the next string, or the text of the next number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            readNumber();
+        } else {
+            expect(Token.STRING);
+            readString();
+        }
+        return text.toString();
+    }
+
+    public double nextDouble() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            readNumber();
+            if (plainNumber) {
+                // both exact in a double, so the one rounding is the right one
+                return fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+            }
+        } else if (token == Token.STRING) {
+            peeked = null;
+            readString();
+        } else {
+            throw error("Expected a number but was " + token);
+        }
+        String number = text.toString();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Not a number: " + number);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        double value = nextDouble();
+        if (value != (long) value) {
+            throw error("Not an integer: " + value);
+        }
+        return (long) value;
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw error("Not an int: " + value);
+        }
+        return (int) value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        if (peekByte() == 't') {
+            literal("true");
+            return true;
+        }
+        literal("false");
+        return false;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        literal("null");
+    }
+
+    /**
+     * Consume the next value, with everything nested in it.
+     */
+    public void skipValue() throws IOException {
+        if (!hasNext() || peek() == Token.NAME) {
+            throw error("Expected a value but was " + peek());
+        }
+        int nested = 0;
+        do {
+            switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                nested++;
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                nested++;
+                break;
+            case END_OBJECT:
+                endObject();
+                nested--;
+                break;
+            case END_ARRAY:
+                endArray();
+                nested--;
+                break;
+            case NAME:
+                nextName();
+                break;
+            case STRING:
+            case NUMBER:
+                nextString();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw error("Unexpected end of input");
+            }
+        } while (nested > 0);
+    }
+
+    private void expect(final Token token) throws IOException {
+        if (peek() != token) {
+            throw error("Expected " + token + " but was " + peeked);
+        }
+        peeked = null;
+    }
+
+    private void push(final int context) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * depth);
+        }
+        stack[depth++] = context;
+    }
+
+    /** finds the next token, consuming the separators before it */
+    private Token next() throws IOException {
+        int context = stack[depth - 1];
+        int c;
+        switch (context) {
+        case EMPTY_ARRAY:
+        case NONEMPTY_ARRAY:
+            stack[depth - 1] = NONEMPTY_ARRAY;
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return Token.END_ARRAY;
+            }
+            if (context == NONEMPTY_ARRAY) {
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            } else {
+                position--;
+            }
+            break;
+        case EMPTY_OBJECT:
+        case NONEMPTY_OBJECT:
+            stack[depth - 1] = DANGLING_NAME;
+            c = nextNonWhitespace();
+            if (c == '}') {
+                return Token.END_OBJECT;
+            }
+            if (context == NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+                c = nextNonWhitespace();
+            }
+            if (c != '"') {
+                throw error("Expected a name");
+            }
+            return Token.NAME;
+        case DANGLING_NAME:
+            stack[depth - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw error("Expected ':'");
+            }
+            break;
+        default:
+            if (!skipWhitespace()) {
+                return Token.END_DOCUMENT;
+            }
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+        case '{':
+            return Token.BEGIN_OBJECT;
+        case '[':
+            return Token.BEGIN_ARRAY;
+        case '"':
+            return Token.STRING;
+        case 't':
+        case 'f':
+            position--;
+            return Token.BOOLEAN;
+        case 'n':
+            position--;
+            return Token.NULL;
+        default:
+            if (c == '-' || c >= '0' && c <= '9') {
+                position--;
+                return Token.NUMBER;
+            }
+            throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Read the string after an opening quote, up to and including the closing
+     * one, into {@link #text}.
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = nextByte();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                text.append(readEscape());
+            } else if (c < 0x20) {
+                throw error("Control character in string");
+            } else if (c < 0x80) {
+                text.append((char) c);
+            } else {
+                readMultiByte(c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = nextByte();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        case 'b':
+            return '\b';
+        case 't':
+            return '\t';
+        case 'n':
+            return '\n';
+        case 'f':
+            return '\f';
+        case 'r':
+            return '\r';
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(nextByte(), 16);
+                if (digit < 0) {
+                    throw error("Invalid unicode escape");
+                }
+                value = value << 4 | digit;
+            }
+            return (char) value;
+        default:
+            throw error("Invalid escape '\\" + (char) c + "'");
+        }
+    }
+
+    private void readMultiByte(final int first) throws IOException {
+        int length;
+        int codePoint;
+        if ((first & 0xe0) == 0xc0) {
+            length = 1;
+            codePoint = first & 0x1f;
+        } else if ((first & 0xf0) == 0xe0) {
+            length = 2;
+            codePoint = first & 0x0f;
+        } else if ((first & 0xf8) == 0xf0) {
+            length = 3;
+            codePoint = first & 0x07;
+        } else {
+            throw error("Invalid utf-8");
+        }
+        for (int i = 0; i < length; i++) {
+            int c = nextByte();
+            if ((c & 0xc0) != 0x80) {
+                throw error("Invalid utf-8");
+            }
+            codePoint = codePoint << 6 | c & 0x3f;
+        }
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw error("Invalid utf-8");
+        }
+        text.appendCodePoint(codePoint);
+    }
+
+    /**
+     * Read a number into {@link #text}, and into {@link #mantissa} and
+     * {@link #fractionDigits} when it has no exponent and few enough digits
+     * to be exact.
+     */
+    private void readNumber() throws IOException {
+        text.setLength(0);
+        long digits = 0;
+        int significant = 0;
+        int fraction = -1;
+        boolean negative = false;
+        boolean plain = true;
+        while (true) {
+            int c = peekByte();
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + c - '0';
+                if (digits != 0) {
+                    significant++;
+                }
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '-' && text.length() == 0) {
+                negative = true;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                plain = false;
+            } else {
+                break;
+            }
+            text.append((char) c);
+            position++;
+        }
+        plainNumber = plain && significant <= MAX_EXACT_DIGITS && fraction < POWERS_OF_TEN.length && text.length() > 0
+                && text.charAt(text.length() - 1) != '.' && !(negative && digits == 0);
+        mantissa = negative ? -digits : digits;
+        fractionDigits = Math.max(fraction, 0);
+    }
+
+    private void literal(final String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (nextByte() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+        int c = peekByte();
+        if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+            throw error("Expected " + literal);
+        }
+    }
+
+    /** @return false at the end of the input */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            int c = peekByte();
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                position++;
+            } else {
+                return c >= 0;
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        if (!skipWhitespace()) {
+            throw error("Unexpected end of input");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw error("Unexpected end of input");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /** @return the next byte without consuming it, or -1 at the end */
+    private int peekByte() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        offset += limit;
+        position = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private MalformedJsonException error(final String message) {
+        return new MalformedJsonException(message + " at byte " + (offset + position));
+    }
+}
@@ -0,0 +1,292 @@
+package com.crossover.trial.weather.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes json as utf-8 bytes straight to a stream through a buffer that
+ * starts small and grows to {@link #BUFFER_SIZE}, so a single record costs
+ * little more than its bytes and a long stream no more than the buffer.
+ * Commas and colons are placed from the nesting, so callers only say what
+ * comes next. Numbers are written the way {@link Double#toString(double)}
+ * and {@link Long#toString(long)} print them; NaN and infinities, which json
+ * cannot hold, are written as strings.
+ *
+ * <p>
+ * Not thread safe. Closing the stream is left to its owner.
+ *
+ * @author Joao Gatto
+ */
+public final class JsonOutput implements Flushable {
+
+    /** bytes buffered before a write to the stream */
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    /** integral doubles below this print as digits and ".0" */
+    private static final double PLAIN_LIMIT = 1e7;
+
+    private final OutputStream out;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private int position;
+
+    /** per nesting level, whether the level holds a value already */
+    private boolean[] nonEmpty = new boolean[16];
+
+    private int depth;
+
+    /** a name was written and its value is next */
+    private boolean afterName;
+
+    public JsonOutput(final OutputStream out) {
+        this.out = out;
+    }
+
+    public JsonOutput beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonOutput endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonOutput beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonOutput endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * @param name
+     *            the key of the next value of the current object
+     */
+    public JsonOutput name(final String name) throws IOException {
+        separate();
+        string(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonOutput value(final String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        string(value);
+        return this;
+    }
+
+    public JsonOutput value(final double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value(Double.toString(value));
+        }
+        separate();
+        if (value == (long) value && Math.abs(value) < PLAIN_LIMIT && !(value == 0 && 1 / value < 0)) {
+            // what Double.toString prints for these, without the garbage
+            digits((long) value);
+            write('.');
+            write('0');
+        } else {
+            ascii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonOutput value(final long value) throws IOException {
+        separate();
+        digits(value);
+        return this;
+    }
+
+    public JsonOutput value(final boolean value) throws IOException {
+        separate();
+        write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonOutput nullValue() throws IOException {
+        separate();
+        write(NULL);
+        return this;
+    }
+
+    /**
+     * Hand the buffered bytes to the stream and flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private JsonOutput open(final char bracket) throws IOException {
+        separate();
+        write(bracket);
+        if (++depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, 2 * depth);
+        }
+        nonEmpty[depth] = false;
+        return this;
+    }
+
+    private JsonOutput close(final char bracket) throws IOException {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        depth--;
+        write(bracket);
+        return this;
+    }
+
+    /** the comma before a value, unless it follows a name */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        // values at the top level are a stream, written without commas
+        if (depth > 0 && nonEmpty[depth]) {
+            write(',');
+        }
+        nonEmpty[depth] = true;
+    }
+
+    private void string(final String value) throws IOException {
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    write(c);
+                } else {
+                    escape(c);
+                }
+            } else if (c < 0x800) {
+                write(0xc0 | c >> 6);
+                write(0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xf0 | codePoint >> 18);
+                write(0x80 | codePoint >> 12 & 0x3f);
+                write(0x80 | codePoint >> 6 & 0x3f);
+                write(0x80 | codePoint & 0x3f);
+            } else {
+                // a lone surrogate goes out as is, like the other 3 byte chars
+                write(0xe0 | c >> 12);
+                write(0x80 | c >> 6 & 0x3f);
+                write(0x80 | c & 0x3f);
+            }
+        }
+        write('"');
+    }
+
+    private void escape(final char c) throws IOException {
+        write('\\');
+        switch (c) {
+        case '"':
+        case '\\':
+            write(c);
+            break;
+        case '\b':
+            write('b');
+            break;
+        case '\t':
+            write('t');
+            break;
+        case '\n':
+            write('n');
+            break;
+        case '\f':
+            write('f');
+            break;
+        case '\r':
+            write('r');
+            break;
+        default:
+            write('u');
+            write('0');
+            write('0');
+            write(HEX[c >> 4]);
+            write(HEX[c & 0xf]);
+        }
+    }
+
+    private void digits(final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            ascii(Long.toString(value));
+            return;
+        }
+        if (buffer.length - position < 20) {
+            makeRoom();
+        }
+        long rest = value;
+        if (rest < 0) {
+            buffer[position++] = '-';
+            rest = -rest;
+        }
+        int end = position + digitCount(rest);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        position = end;
+    }
+
+    private static int digitCount(final long value) {
+        int count = 1;
+        for (long limit = 10; count < 19 && value >= limit; limit *= 10) {
+            count++;
+        }
+        return count;
+    }
+
+    private void ascii(final String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            write(b);
+        }
+    }
+
+    private void write(final int b) throws IOException {
+        if (position == buffer.length) {
+            makeRoom();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void makeRoom() throws IOException {
+        if (buffer.length < BUFFER_SIZE) {
+            buffer = Arrays.copyOf(buffer, Math.min(2 * buffer.length, BUFFER_SIZE));
+        } else {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.crossover.trial.weather.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the input is not json, or not the json expected where it was
+ * read.
+ *
+ * @author Joao Gatto
+ */
+public class MalformedJsonException extends IOException {
+
+    private static final long serialVersionUID = 3870912372925264573L;
+
+    public MalformedJsonException(final String message) {
+        super(message);
+    }
+}
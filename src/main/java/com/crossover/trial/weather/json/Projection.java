@@ -0,0 +1,85 @@
+package com.crossover.trial.weather.json;
+
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * The parts of atmospheric information and data points a client asked for:
+ * which point types, and which of their statistics. {@link WeatherJson}
+ * skips the rest while writing, so nothing is copied to leave them out.
+ *
+ * @author Joao Gatto
+ */
+public final class Projection {
+
+    /** the statistics of a data point, in the order they are written */
+    public enum Field {
+        MEAN, FIRST, MEDIAN, LAST, COUNT
+    }
+
+    private static final int ALL_TYPES = (1 << DataPointType.values().length) - 1;
+
+    private static final int ALL_FIELDS = (1 << Field.values().length) - 1;
+
+    /** everything, the form every response had before projections */
+    public static final Projection ALL = new Projection(ALL_TYPES, ALL_FIELDS);
+
+    /** bits by {@link DataPointType#ordinal()} */
+    private final int types;
+
+    /** bits by {@link Field#ordinal()} */
+    private final int fields;
+
+    private Projection(final int types, final int fields) {
+        this.types = types;
+        this.fields = fields;
+    }
+
+    /**
+     * @param types
+     *            comma separated point type names, all when null or empty
+     * @param fields
+     *            comma separated statistics, e.g. "mean,count", all when null
+     *            or empty
+     * @return the projection, {@link #ALL} when both are missing
+     * @throws IllegalArgumentException
+     *             if a name is unknown
+     */
+    public static Projection of(final String types, final String fields) {
+        int typeBits = ALL_TYPES;
+        if (types != null && !types.trim().isEmpty()) {
+            typeBits = 0;
+            for (String name : types.split(",")) {
+                typeBits |= 1 << DataPointType.fromName(name.trim()).ordinal();
+            }
+        }
+        int fieldBits = ALL_FIELDS;
+        if (fields != null && !fields.trim().isEmpty()) {
+            fieldBits = 0;
+            for (String name : fields.split(",")) {
+                fieldBits |= 1 << field(name.trim()).ordinal();
+            }
+        }
+        return typeBits == ALL_TYPES && fieldBits == ALL_FIELDS ? ALL : new Projection(typeBits, fieldBits);
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    public boolean includes(final DataPointType type) {
+        return (types & 1 << type.ordinal()) != 0;
+    }
+
+    public boolean includes(final Field field) {
+        return (fields & 1 << field.ordinal()) != 0;
+    }
+
+    private static Field field(final String name) {
+        for (Field field : Field.values()) {
+            if (field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field " + name);
+    }
+}
@@ -0,0 +1,471 @@
+package com.crossover.trial.weather.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.model.DST;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.model.WeatherUpdate;
+
+/**
+ * The json form of the model, written out field by field. Keys, their order
+ * and the null handling are those the service has always answered with:
+ * every property of a record is written, null or not. Reading ignores unknown
+ * keys and leaves missing ones at their defaults.
+ *
+ * @author Joao Gatto
+ */
+public final class WeatherJson {
+
+    private WeatherJson() {
+    }
+
+    /**
+     * @return the data point, or null for a json null
+     */
+    public static DataPoint readDataPoint(final JsonInput in) throws IOException {
+        if (in.peek() == JsonInput.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        DataPoint.Builder builder = new DataPoint.Builder();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "mean":
+                builder.withMean(in.nextDouble());
+                break;
+            case "first":
+                builder.withFirst(in.nextDouble());
+                break;
+            case "median":
+                builder.withMedian(in.nextDouble());
+                break;
+            case "last":
+                builder.withLast(in.nextDouble());
+                break;
+            case "count":
+                builder.withCount(in.nextInt());
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return builder.build();
+    }
+
+    public static void write(final JsonOutput out, final DataPoint dataPoint) throws IOException {
+        write(out, dataPoint, Projection.ALL);
+    }
+
+    /**
+     * Write a data point with only the statistics of a projection.
+     */
+    public static void write(final JsonOutput out, final DataPoint dataPoint, final Projection projection)
+            throws IOException {
+        if (dataPoint == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (projection.includes(Projection.Field.MEAN)) {
+            out.name("mean").value(dataPoint.getMean());
+        }
+        if (projection.includes(Projection.Field.FIRST)) {
+            out.name("first").value(dataPoint.getFirst());
+        }
+        if (projection.includes(Projection.Field.MEDIAN)) {
+            out.name("median").value(dataPoint.getMedian());
+        }
+        if (projection.includes(Projection.Field.LAST)) {
+            out.name("last").value(dataPoint.getLast());
+        }
+        if (projection.includes(Projection.Field.COUNT)) {
+            out.name("count").value(dataPoint.getCount());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Write a history as a list of samples, each a data point with its update
+     * time.
+     */
+    public static void write(final JsonOutput out, final History history) throws IOException {
+        write(out, history, Projection.ALL);
+    }
+
+    /**
+     * Write a history with only the statistics of a projection, and the time
+     * of every sample.
+     */
+    public static void write(final JsonOutput out, final History history, final Projection projection)
+            throws IOException {
+        out.beginArray();
+        for (int i = 0; i < history.size(); i++) {
+            out.beginObject();
+            out.name("time").value(history.getTime(i));
+            if (projection.includes(Projection.Field.MEAN)) {
+                out.name("mean").value(history.getMean(i));
+            }
+            if (projection.includes(Projection.Field.FIRST)) {
+                out.name("first").value(history.getFirst(i));
+            }
+            if (projection.includes(Projection.Field.MEDIAN)) {
+                out.name("median").value(history.getMedian(i));
+            }
+            if (projection.includes(Projection.Field.LAST)) {
+                out.name("last").value(history.getLast(i));
+            }
+            if (projection.includes(Projection.Field.COUNT)) {
+                out.name("count").value(history.getCount(i));
+            }
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Write a rollup as its resolution and the list of its buckets.
+     */
+    public static void write(final JsonOutput out, final Rollup rollup) throws IOException {
+        out.beginObject();
+        out.name("resolution").value(rollup.getResolution().name());
+        out.name("buckets").beginArray();
+        for (int i = 0; i < rollup.size(); i++) {
+            out.beginObject();
+            out.name("time").value(rollup.getTime(i));
+            out.name("min").value(rollup.getMin(i));
+            out.name("max").value(rollup.getMax(i));
+            out.name("mean").value(rollup.getMean(i));
+            out.name("count").value(rollup.getCount(i));
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * @return the atmospheric information, or null for a json null
+     */
+    public static AtmosphericInformation readAtmosphericInformation(final JsonInput in) throws IOException {
+        if (in.peek() == JsonInput.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "temperature":
+                builder.withTemperature(readDataPoint(in));
+                break;
+            case "wind":
+                builder.withWind(readDataPoint(in));
+                break;
+            case "humidity":
+                builder.withHumidity(readDataPoint(in));
+                break;
+            case "precipitation":
+                builder.withPrecipitation(readDataPoint(in));
+                break;
+            case "pressure":
+                builder.withPressure(readDataPoint(in));
+                break;
+            case "cloudCover":
+                builder.withCloudCover(readDataPoint(in));
+                break;
+            case "lastUpdateTime":
+                builder.withLastUpdateTime(in.nextLong());
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return builder.build();
+    }
+
+    public static void write(final JsonOutput out, final AtmosphericInformation ai) throws IOException {
+        write(out, ai, Projection.ALL);
+    }
+
+    /**
+     * Write atmospheric information with only the point types and statistics
+     * of a projection. The last update time is always written.
+     */
+    public static void write(final JsonOutput out, final AtmosphericInformation ai, final Projection projection)
+            throws IOException {
+        if (ai == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (projection.includes(DataPointType.TEMPERATURE)) {
+            write(out.name("temperature"), ai.getTemperature(), projection);
+        }
+        if (projection.includes(DataPointType.WIND)) {
+            write(out.name("wind"), ai.getWind(), projection);
+        }
+        if (projection.includes(DataPointType.HUMIDITY)) {
+            write(out.name("humidity"), ai.getHumidity(), projection);
+        }
+        if (projection.includes(DataPointType.PRECIPITATION)) {
+            write(out.name("precipitation"), ai.getPrecipitation(), projection);
+        }
+        if (projection.includes(DataPointType.PRESSURE)) {
+            write(out.name("pressure"), ai.getPressure(), projection);
+        }
+        if (projection.includes(DataPointType.CLOUDCOVER)) {
+            write(out.name("cloudCover"), ai.getCloudCover(), projection);
+        }
+        out.name("lastUpdateTime").value(ai.getLastUpdateTime());
+        out.endObject();
+    }
+
+    /**
+     * Read an airport, with its latitude and longitude either in a
+     * "coordinate" object, as written, or next to the other keys.
+     *
+     * @return the airport, or null for a json null
+     * @throws IllegalArgumentException
+     *             if the coordinate is missing or out of range, or the DST
+     *             unknown
+     */
+    public static Airport readAirport(final JsonInput in) throws IOException {
+        if (in.peek() == JsonInput.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Airport.Builder builder = new Airport.Builder();
+        double[] coordinate = { Double.NaN, Double.NaN };
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+            case "iata":
+                builder.withIata(readString(in, ""));
+                break;
+            case "icao":
+                builder.withIcao(readString(in, ""));
+                break;
+            case "city":
+                builder.withCity(readString(in, ""));
+                break;
+            case "country":
+                builder.withCountry(readString(in, ""));
+                break;
+            case "coordinate":
+                if (in.peek() == JsonInput.Token.NULL) {
+                    in.nextNull();
+                    break;
+                }
+                in.beginObject();
+                while (in.hasNext()) {
+                    readCoordinate(in, in.nextName(), coordinate);
+                }
+                in.endObject();
+                break;
+            case "altitude":
+                builder.withAltitude(in.nextDouble());
+                break;
+            case "timezone":
+                builder.withTimezone((int) in.nextDouble());
+                break;
+            case "dst":
+                String dst = readString(in, null);
+                builder.withDst(dst == null || dst.isEmpty() ? DST.U : DST.valueOf(dst));
+                break;
+            default:
+                readCoordinate(in, name, coordinate);
+            }
+        }
+        in.endObject();
+        if (Double.isNaN(coordinate[0]) || Double.isNaN(coordinate[1])) {
+            throw new IllegalArgumentException("Missing coordinate");
+        }
+        return builder.withLatitude(coordinate[0]).withLongitude(coordinate[1]).build();
+    }
+
+    private static void readCoordinate(final JsonInput in, final String name, final double[] coordinate) throws IOException {
+        if ("latitude".equals(name)) {
+            coordinate[0] = in.nextDouble();
+        } else if ("longitude".equals(name)) {
+            coordinate[1] = in.nextDouble();
+        } else {
+            in.skipValue();
+        }
+    }
+
+    public static void write(final JsonOutput out, final Airport airport) throws IOException {
+        if (airport == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("city").value(airport.getCity());
+        out.name("country").value(airport.getCountry());
+        out.name("iata").value(airport.getIata());
+        out.name("icao").value(airport.getIcao());
+        Coordinate coordinate = airport.getCoordinate();
+        out.name("coordinate");
+        if (coordinate == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("latitude").value(coordinate.getLatitude());
+            out.name("longitude").value(coordinate.getLongitude());
+            out.endObject();
+        }
+        out.name("altitude").value(airport.getAltitude());
+        out.name("timezone").value(airport.getTimezone());
+        out.name("dst").value(airport.getDst() == null ? null : airport.getDst().name());
+        out.endObject();
+    }
+
+    /**
+     * @return the update, or null for a json null
+     */
+    public static WeatherUpdate readWeatherUpdate(final JsonInput in) throws IOException {
+        if (in.peek() == JsonInput.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String iata = null;
+        String pointType = null;
+        DataPoint dataPoint = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "iata":
+                iata = readString(in, null);
+                break;
+            case "pointType":
+                pointType = readString(in, null);
+                break;
+            case "dataPoint":
+                dataPoint = readDataPoint(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new WeatherUpdate(iata, pointType, dataPoint);
+    }
+
+    /**
+     * Write any of the values the endpoints answer with: model records, maps,
+     * collections and arrays of them, strings, numbers, booleans and enums.
+     *
+     * @throws IllegalArgumentException
+     *             for any other type
+     */
+    public static void writeValue(final JsonOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof String) {
+            out.value((String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.value(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.value(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Enum) {
+            out.value(((Enum<?>) value).name());
+        } else if (value instanceof AtmosphericInformation) {
+            write(out, (AtmosphericInformation) value);
+        } else if (value instanceof DataPoint) {
+            write(out, (DataPoint) value);
+        } else if (value instanceof Airport) {
+            write(out, (Airport) value);
+        } else if (value instanceof History) {
+            write(out, (History) value);
+        } else if (value instanceof Rollup) {
+            write(out, (Rollup) value);
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writeValue(out.name(String.valueOf(entry.getKey())), entry.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof Iterable) {
+            out.beginArray();
+            for (Object element : (Iterable<?>) value) {
+                writeValue(out, element);
+            }
+            out.endArray();
+        } else if (value instanceof Object[]) {
+            out.beginArray();
+            for (Object element : (Object[]) value) {
+                writeValue(out, element);
+            }
+            out.endArray();
+        } else if (value instanceof int[]) {
+            out.beginArray();
+            for (int element : (int[]) value) {
+                out.value(element);
+            }
+            out.endArray();
+        } else if (value instanceof long[]) {
+            out.beginArray();
+            for (long element : (long[]) value) {
+                out.value(element);
+            }
+            out.endArray();
+        } else if (value instanceof double[]) {
+            out.beginArray();
+            for (double element : (double[]) value) {
+                out.value(element);
+            }
+            out.endArray();
+        } else {
+            throw new IllegalArgumentException("No json form for " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * @return whether {@link #writeValue(JsonOutput, Object)} takes values of
+     *         the type
+     */
+    public static boolean isWritable(final Class<?> type) {
+        return AtmosphericInformation.class.isAssignableFrom(type) || DataPoint.class.isAssignableFrom(type)
+                || Airport.class.isAssignableFrom(type) || type == History.class || type == Rollup.class
+                || Map.class.isAssignableFrom(type) || Iterable.class.isAssignableFrom(type)
+                || Object[].class.isAssignableFrom(type) || type == int[].class || type == long[].class
+                || type == double[].class;
+    }
+
+    /**
+     * @return the value as a json string
+     */
+    public static String toJson(final Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            JsonOutput out = new JsonOutput(bytes);
+            writeValue(out, value);
+            out.flush();
+        } catch (IOException e) {
+            // not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String readString(final JsonInput in, final String ifNull) throws IOException {
+        if (in.peek() == JsonInput.Token.NULL) {
+            in.nextNull();
+            return ifNull;
+        }
+        return in.nextString();
+    }
+}
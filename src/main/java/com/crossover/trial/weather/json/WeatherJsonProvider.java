@@ -0,0 +1,90 @@
+package com.crossover.trial.weather.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+
+/**
+ * Reads and writes request and response bodies with {@link WeatherJson},
+ * parsing straight from the request stream and writing straight to the
+ * response one. Bodies are read whatever their declared media type, since
+ * collectors have always posted data points as plain text too.
+ *
+ * @author Joao Gatto
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class WeatherJsonProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    @Override
+    public boolean isReadable(final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType) {
+        return type == DataPoint.class || type == AtmosphericInformation.class || type == Airport.class;
+    }
+
+    /**
+     * @return the record, or null for an empty body
+     * @throws BadRequestException
+     *             if the body is not a json record of the type
+     */
+    @Override
+    public Object readFrom(final Class<Object> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders, final InputStream entityStream)
+            throws IOException {
+        JsonInput in = new JsonInput(entityStream);
+        try {
+            if (in.peek() == JsonInput.Token.END_DOCUMENT) {
+                return null;
+            }
+            Object value;
+            if (DataPoint.class.equals(type)) {
+                value = WeatherJson.readDataPoint(in);
+            } else if (AtmosphericInformation.class.equals(type)) {
+                value = WeatherJson.readAtmosphericInformation(in);
+            } else {
+                value = WeatherJson.readAirport(in);
+            }
+            if (in.peek() != JsonInput.Token.END_DOCUMENT) {
+                throw new MalformedJsonException("Unexpected content after the " + type.getSimpleName());
+            }
+            return value;
+        } catch (MalformedJsonException | IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType) {
+        return WeatherJson.isWritable(type) && MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(final Object t, final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final Object t, final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
+            throws IOException {
+        JsonOutput out = new JsonOutput(entityStream);
+        WeatherJson.writeValue(out, t);
+        out.flush();
+    }
+}
@@ -1,7 +1,6 @@
 package com.crossover.trial.weather.model;
 
 import java.io.Serializable;
-import java.util.Optional;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -9,98 +8,96 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 /**
- * Encapsulates sensor information for a particular location
+ * Encapsulates sensor information for a particular location. Instances are
+ * immutable snapshots, updates build a new instance through {@link Builder}.
  */
 public class AtmosphericInformation implements Serializable {
 
     private static final long serialVersionUID = 4884101137188765237L;
 
     /** temperature in degrees celsius */
-    private DataPoint temperature;
+    private final DataPoint temperature;
 
     /** wind speed in km/h */
-    private DataPoint wind;
+    private final DataPoint wind;
 
     /** humidity in percent */
-    private DataPoint humidity;
+    private final DataPoint humidity;
 
     /** precipitation in cm */
-    private DataPoint precipitation;
+    private final DataPoint precipitation;
 
     /** pressure in mmHg */
-    private DataPoint pressure;
+    private final DataPoint pressure;
 
     /** cloud cover percent from 0 - 100 (integer) */
-    private DataPoint cloudCover;
+    private final DataPoint cloudCover;
 
     /** the last time this data was updated, in milliseconds since UTC epoch */
-    private long lastUpdateTime;
+    private final long lastUpdateTime;
 
     private AtmosphericInformation(final Builder builder) {
-        builder.temperature.ifPresent(value -> setTemperature(value));
-        builder.wind.ifPresent(value -> setWind(value));
-        builder.humidity.ifPresent(value -> setHumidity(value));
-        builder.precipitation.ifPresent(value -> setPrecipitation(value));
-        builder.pressure.ifPresent(value -> setPressure(value));
-        builder.cloudCover.ifPresent(value -> setCloudCover(value));
+        this.temperature = builder.temperature;
+        this.wind = builder.wind;
+        this.humidity = builder.humidity;
+        this.precipitation = builder.precipitation;
+        this.pressure = builder.pressure;
+        this.cloudCover = builder.cloudCover;
+        this.lastUpdateTime = builder.lastUpdateTime;
     }
 
     public DataPoint getTemperature() {
         return temperature;
     }
 
-    public void setTemperature(final DataPoint temperature) {
-        this.temperature = temperature;
-    }
-
     public DataPoint getWind() {
         return wind;
     }
 
-    public void setWind(final DataPoint wind) {
-        this.wind = wind;
-    }
-
     public DataPoint getHumidity() {
         return humidity;
     }
 
-    public void setHumidity(final DataPoint humidity) {
-        this.humidity = humidity;
-    }
-
     public DataPoint getPrecipitation() {
         return precipitation;
     }
 
-    public void setPrecipitation(final DataPoint precipitation) {
-        this.precipitation = precipitation;
-    }
-
     public DataPoint getPressure() {
         return pressure;
     }
 
-    public void setPressure(final DataPoint pressure) {
-        this.pressure = pressure;
-    }
-
     public DataPoint getCloudCover() {
         return cloudCover;
     }
 
-    public void setCloudCover(final DataPoint cloudCover) {
-        this.cloudCover = cloudCover;
+    /**
+     * @param type
+     *            the measurement type
+     * @return the data point of that type, null if there is none
+     */
+    public DataPoint get(final DataPointType type) {
+        switch (type) {
+        case WIND:
+            return wind;
+        case TEMPERATURE:
+            return temperature;
+        case HUMIDITY:
+            return humidity;
+        case PRESSURE:
+            return pressure;
+        case CLOUDCOVER:
+            return cloudCover;
+        case PRECIPITATION:
+            return precipitation;
+        default:
+            throw new IllegalArgumentException("Unknown data point type " + type);
+        }
     }
 
     public long getLastUpdateTime() {
         return this.lastUpdateTime;
     }
 
-    public void setLastUpdateTime(final long lastUpdateTime) {
-        this.lastUpdateTime = lastUpdateTime;
-    }
-
     @Override
     public String toString() {
         return ReflectionToStringBuilder.toString(this, ToStringStyle.NO_CLASS_NAME_STYLE);
@@ -118,55 +115,107 @@ public class AtmosphericInformation implements Serializable {
 
     public static class Builder {
 
-        private Optional<DataPoint> temperature = Optional.empty();
-        private Optional<DataPoint> wind = Optional.empty();
-        private Optional<DataPoint> humidity = Optional.empty();
-        private Optional<DataPoint> precipitation = Optional.empty();
-        private Optional<DataPoint> pressure = Optional.empty();
-        private Optional<DataPoint> cloudCover = Optional.empty();
+        private DataPoint temperature;
+        private DataPoint wind;
+        private DataPoint humidity;
+        private DataPoint precipitation;
+        private DataPoint pressure;
+        private DataPoint cloudCover;
+        private long lastUpdateTime;
+
+        public Builder() {
+        }
+
+        /**
+         * Start from a copy of an existing snapshot.
+         *
+         * @param from
+         *            the snapshot whose values are copied
+         */
+        public Builder(final AtmosphericInformation from) {
+            this.temperature = from.temperature;
+            this.wind = from.wind;
+            this.humidity = from.humidity;
+            this.precipitation = from.precipitation;
+            this.pressure = from.pressure;
+            this.cloudCover = from.cloudCover;
+            this.lastUpdateTime = from.lastUpdateTime;
+        }
 
         public Builder withTemperature(final DataPoint temperature) {
             if (temperature != null) {
-                this.temperature = Optional.of(temperature);
+                this.temperature = temperature;
             }
             return this;
         }
 
         public Builder withWind(final DataPoint wind) {
             if (wind != null) {
-                this.wind = Optional.of(wind);
+                this.wind = wind;
             }
             return this;
         }
 
         public Builder withHumidity(final DataPoint humidity) {
             if (humidity != null) {
-                this.humidity = Optional.of(humidity);
+                this.humidity = humidity;
             }
             return this;
         }
 
         public Builder withPrecipitation(final DataPoint precipitation) {
             if (precipitation != null) {
-                this.precipitation = Optional.of(precipitation);
+                this.precipitation = precipitation;
             }
             return this;
         }
 
         public Builder withPressure(final DataPoint pressure) {
             if (pressure != null) {
-                this.pressure = Optional.of(pressure);
+                this.pressure = pressure;
             }
             return this;
         }
 
         public Builder withCloudCover(final DataPoint cloudCover) {
             if (cloudCover != null) {
-                this.cloudCover = Optional.of(cloudCover);
+                this.cloudCover = cloudCover;
             }
             return this;
         }
 
+        /**
+         * Set the data point for the given type.
+         *
+         * @param type
+         *            the measurement the data point belongs to
+         * @param dataPoint
+         *            the new value
+         */
+        public Builder with(final DataPointType type, final DataPoint dataPoint) {
+            switch (type) {
+            case WIND:
+                return withWind(dataPoint);
+            case TEMPERATURE:
+                return withTemperature(dataPoint);
+            case HUMIDITY:
+                return withHumidity(dataPoint);
+            case PRESSURE:
+                return withPressure(dataPoint);
+            case CLOUDCOVER:
+                return withCloudCover(dataPoint);
+            case PRECIPITATION:
+                return withPrecipitation(dataPoint);
+            default:
+                throw new IllegalArgumentException("Unknown data point type " + type);
+            }
+        }
+
+        public Builder withLastUpdateTime(final long lastUpdateTime) {
+            this.lastUpdateTime = lastUpdateTime;
+            return this;
+        }
+
         public AtmosphericInformation build() {
             return new AtmosphericInformation(this);
         }
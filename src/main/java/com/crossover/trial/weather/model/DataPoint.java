@@ -4,7 +4,7 @@ import java.io.Serializable;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 /**
@@ -77,17 +77,28 @@ public class DataPoint implements Serializable {
     }
 
     public String toString() {
-        return ReflectionToStringBuilder.toString(this, ToStringStyle.NO_CLASS_NAME_STYLE);
+        return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE).append("mean", mean)
+                .append("first", first).append("median", median).append("last", last).append("count", count)
+                .toString();
     }
 
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, false);
+        return new HashCodeBuilder().append(mean).append(first).append(median).append(last).append(count)
+                .toHashCode();
     }
 
     @Override
     public boolean equals(final Object that) {
-        return EqualsBuilder.reflectionEquals(this, that, false);
+        if (this == that) {
+            return true;
+        }
+        if (that == null || that.getClass() != getClass()) {
+            return false;
+        }
+        DataPoint other = (DataPoint) that;
+        return new EqualsBuilder().append(mean, other.mean).append(first, other.first).append(median, other.median)
+                .append(last, other.last).append(count, other.count).isEquals();
     }
 
     public static class Builder {
@@ -10,6 +10,8 @@ import com.crossover.trial.weather.exception.WeatherException;
 public enum DataPointType {
     WIND(0, 1000), TEMPERATURE(-50, 100), HUMIDITY(0, 100), PRESSURE(650, 800), CLOUDCOVER(0, 100), PRECIPITATION(0, 100);
 
+    private static final DataPointType[] VALUES = values();
+
     private double min;
     private double max;
 
@@ -26,6 +28,24 @@ public enum DataPointType {
         return min;
     }
 
+    /**
+     * Case insensitive lookup of a point type, as sent by collectors.
+     *
+     * @param name
+     *            the point type name, e.g. "wind"
+     * @return the matching point type
+     * @throws IllegalArgumentException
+     *             if no point type has that name
+     */
+    public static DataPointType fromName(final String name) {
+        for (DataPointType type : VALUES) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown point type " + name);
+    }
+
     public boolean validate(final DataPoint dataPoint) throws WeatherException {
         boolean valid = false;
 
@@ -0,0 +1,99 @@
+package com.crossover.trial.weather.model;
+
+import java.util.Arrays;
+
+/**
+ * The readings of one airport and {@link DataPointType} over a time range, in
+ * the order they were recorded. Values sit in primitive arrays, so a series
+ * costs no object per sample. Reusable through {@link #clear()}, not thread
+ * safe.
+ *
+ * @author Joao Gatto
+ */
+public final class History {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    private double[] means = new double[INITIAL_CAPACITY];
+
+    private double[] firsts = new double[INITIAL_CAPACITY];
+
+    private double[] medians = new double[INITIAL_CAPACITY];
+
+    private double[] lasts = new double[INITIAL_CAPACITY];
+
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /** the update time of a sample in milliseconds since UTC epoch */
+    public long getTime(final int index) {
+        return times[check(index)];
+    }
+
+    public double getMean(final int index) {
+        return means[check(index)];
+    }
+
+    public double getFirst(final int index) {
+        return firsts[check(index)];
+    }
+
+    public double getMedian(final int index) {
+        return medians[check(index)];
+    }
+
+    public double getLast(final int index) {
+        return lasts[check(index)];
+    }
+
+    public int getCount(final int index) {
+        return counts[check(index)];
+    }
+
+    public DataPoint toDataPoint(final int index) {
+        check(index);
+        return new DataPoint.Builder().withMean(means[index]).withFirst(firsts[index]).withMedian(medians[index])
+                .withLast(lasts[index]).withCount(counts[index]).build();
+    }
+
+    /**
+     * Append a sample.
+     */
+    public void add(final long time, final double mean, final double first, final double median, final double last,
+            final int count) {
+        if (size == times.length) {
+            int capacity = 2 * size;
+            times = Arrays.copyOf(times, capacity);
+            means = Arrays.copyOf(means, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            medians = Arrays.copyOf(medians, capacity);
+            lasts = Arrays.copyOf(lasts, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        times[size] = time;
+        means[size] = mean;
+        firsts[size] = first;
+        medians[size] = median;
+        lasts[size] = last;
+        counts[size] = count;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private int check(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Sample " + index + " of " + size);
+        }
+        return index;
+    }
+}
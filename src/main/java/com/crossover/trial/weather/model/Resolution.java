@@ -0,0 +1,33 @@
+package com.crossover.trial.weather.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bucket widths readings are rolled up at, finest first.
+ *
+ * @author Joao Gatto
+ */
+public enum Resolution {
+    MINUTE(TimeUnit.MINUTES.toMillis(1)), HOUR(TimeUnit.HOURS.toMillis(1)), DAY(TimeUnit.DAYS.toMillis(1));
+
+    private final long millis;
+
+    Resolution(final long millis) {
+        this.millis = millis;
+    }
+
+    /** the width of a bucket in milliseconds */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @param time
+     *            a time in milliseconds since UTC epoch
+     * @return the number of the bucket holding the time, counted from the
+     *         epoch
+     */
+    public long bucketOf(final long time) {
+        return Math.floorDiv(time, millis);
+    }
+}
@@ -0,0 +1,96 @@
+package com.crossover.trial.weather.model;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates of the readings of one airport and {@link DataPointType} over a
+ * time range, one bucket per {@link Resolution} step, oldest first. Only
+ * buckets that received readings are present. Each bucket aggregates the mean
+ * of every reading that fell in it. Reusable through {@link #clear()}, not
+ * thread safe.
+ *
+ * @author Joao Gatto
+ */
+public final class Rollup {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Resolution resolution;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    private double[] mins = new double[INITIAL_CAPACITY];
+
+    private double[] maxs = new double[INITIAL_CAPACITY];
+
+    private double[] means = new double[INITIAL_CAPACITY];
+
+    private long[] counts = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(final Resolution resolution) {
+        this.resolution = resolution;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** the start of a bucket in milliseconds since UTC epoch */
+    public long getTime(final int index) {
+        return times[check(index)];
+    }
+
+    public double getMin(final int index) {
+        return mins[check(index)];
+    }
+
+    public double getMax(final int index) {
+        return maxs[check(index)];
+    }
+
+    public double getMean(final int index) {
+        return means[check(index)];
+    }
+
+    /** the number of readings in a bucket */
+    public long getCount(final int index) {
+        return counts[check(index)];
+    }
+
+    /**
+     * Append a bucket.
+     */
+    public void add(final long time, final double min, final double max, final double mean, final long count) {
+        if (size == times.length) {
+            int capacity = 2 * size;
+            times = Arrays.copyOf(times, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            means = Arrays.copyOf(means, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        times[size] = time;
+        mins[size] = min;
+        maxs[size] = max;
+        means[size] = mean;
+        counts[size] = count;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private int check(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bucket " + index + " of " + size);
+        }
+        return index;
+    }
+}
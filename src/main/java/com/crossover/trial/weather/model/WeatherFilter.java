@@ -0,0 +1,121 @@
+package com.crossover.trial.weather.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conditions an airport's readings must meet to be part of a query answer: a
+ * range for the mean of some point types, and how recently any reading must
+ * have been updated. Checked against the stored readings while a query runs,
+ * so airports that fail are never encoded.
+ *
+ * @author Joao Gatto
+ */
+public final class WeatherFilter {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** accepts every airport, readings or not */
+    public static final WeatherFilter NONE = new Builder().build();
+
+    /** the types with a range, in ordinal order */
+    private final List<DataPointType> types;
+
+    /** inclusive bounds of the mean, by type ordinal */
+    private final double[] min;
+
+    private final double[] max;
+
+    private final long updatedSince;
+
+    private WeatherFilter(final Builder builder) {
+        List<DataPointType> ranged = new ArrayList<>();
+        for (DataPointType type : TYPES) {
+            if (builder.min[type.ordinal()] != Double.NEGATIVE_INFINITY
+                    || builder.max[type.ordinal()] != Double.POSITIVE_INFINITY) {
+                ranged.add(type);
+            }
+        }
+        types = Collections.unmodifiableList(ranged);
+        min = builder.min.clone();
+        max = builder.max.clone();
+        updatedSince = builder.updatedSince;
+    }
+
+    /** true when every airport passes */
+    public boolean isEmpty() {
+        return types.isEmpty() && updatedSince == 0;
+    }
+
+    /** the point types an airport must have a reading of, in range */
+    public List<DataPointType> getTypes() {
+        return types;
+    }
+
+    /**
+     * @param type
+     *            one of {@link #getTypes()}
+     * @param mean
+     *            the mean of the airport's reading of that type
+     * @return true if the mean is within the range of the type
+     */
+    public boolean accepts(final DataPointType type, final double mean) {
+        return mean >= min[type.ordinal()] && mean <= max[type.ordinal()];
+    }
+
+    /**
+     * @return the time in milliseconds since UTC epoch an airport must have
+     *         a reading updated at or after, 0 for any
+     */
+    public long getUpdatedSince() {
+        return updatedSince;
+    }
+
+    public static class Builder {
+
+        private final double[] min = new double[TYPES.length];
+
+        private final double[] max = new double[TYPES.length];
+
+        private long updatedSince;
+
+        public Builder() {
+            for (int i = 0; i < TYPES.length; i++) {
+                min[i] = Double.NEGATIVE_INFINITY;
+                max[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        /**
+         * Require a reading of a type with its mean in a range, replacing an
+         * earlier range of the type. Infinite bounds leave that side open.
+         *
+         * @throws IllegalArgumentException
+         *             if a bound is not a number or the range is empty
+         */
+        public Builder withRange(final DataPointType type, final double min, final double max) {
+            if (Double.isNaN(min) || Double.isNaN(max) || min > max) {
+                throw new IllegalArgumentException("Empty range " + min + ".." + max + " for " + type);
+            }
+            this.min[type.ordinal()] = min;
+            this.max[type.ordinal()] = max;
+            return this;
+        }
+
+        /**
+         * Require a reading updated at or after a time.
+         *
+         * @param updatedSince
+         *            milliseconds since UTC epoch, 0 for any time
+         */
+        public Builder withUpdatedSince(final long updatedSince) {
+            this.updatedSince = updatedSince;
+            return this;
+        }
+
+        public WeatherFilter build() {
+            return new WeatherFilter(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.crossover.trial.weather.model;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * One record of a batched collector upload: a data point for one point type
+ * of one airport.
+ *
+ * @author Joao Gatto
+ */
+public class WeatherUpdate implements Serializable {
+
+    private static final long serialVersionUID = 5471069406232811562L;
+
+    /** the 3 letter airport code */
+    private String iata;
+
+    /** the point type name, see {@link DataPointType} */
+    private String pointType;
+
+    private DataPoint dataPoint;
+
+    public WeatherUpdate(final String iata, final String pointType, final DataPoint dataPoint) {
+        this.iata = iata;
+        this.pointType = pointType;
+        this.dataPoint = dataPoint;
+    }
+
+    public String getIata() {
+        return iata;
+    }
+
+    public String getPointType() {
+        return pointType;
+    }
+
+    public DataPoint getDataPoint() {
+        return dataPoint;
+    }
+
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE).append("iata", iata)
+                .append("pointType", pointType).append("dataPoint", dataPoint).toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.crossover.trial.weather.repository;
+
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import com.crossover.trial.weather.model.Airport;
+
+/**
+ * The known airports, indexed by the id from
+ * {@link com.crossover.trial.weather.utils.AirportCodes}. Lookups never hash
+ * a string or an {@link Airport}. Implementations must be safe for concurrent
+ * readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public interface AirportTable {
+
+    /**
+     * @param id
+     *            the airport id
+     * @return the airport, or null if there is none with that id
+     */
+    Airport get(int id);
+
+    /**
+     * Replace the airport of an id atomically with respect to other updates
+     * of the same id, so side effects in the function see a stable previous
+     * value.
+     *
+     * @param id
+     *            the airport id
+     * @param remapping
+     *            receives the current airport or null, returns the new one or
+     *            null to remove it
+     * @return the new airport
+     */
+    Airport compute(int id, UnaryOperator<Airport> remapping);
+
+    /**
+     * @param action
+     *            called for every airport, in id order
+     */
+    void forEach(Consumer<Airport> action);
+
+    int size();
+
+    /**
+     * @return a count bumped by every add, replacement and removal, so a view
+     *         of the airports can tell it is stale without comparing them
+     */
+    long getVersion();
+
+    void clear();
+}
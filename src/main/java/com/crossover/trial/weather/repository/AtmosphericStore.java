@@ -0,0 +1,74 @@
+package com.crossover.trial.weather.repository;
+
+import java.util.function.Consumer;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Storage for the latest readings of every airport, keyed by the airport id
+ * from {@link com.crossover.trial.weather.utils.AirportCodes}. Implementations
+ * differ in how a single reading is written, but all of them must accept
+ * concurrent updates without losing any and hand out consistent
+ * {@link AtmosphericInformation} snapshots.
+ *
+ * @author Joao Gatto
+ */
+public interface AtmosphericStore {
+
+    /**
+     * Store a reading, replacing the previous one of the same type.
+     *
+     * @param airport
+     *            the id of the airport the reading belongs to
+     * @param type
+     *            the measurement type
+     * @param dataPoint
+     *            the already validated reading
+     * @param time
+     *            the update time in milliseconds since UTC epoch
+     */
+    void update(int airport, DataPointType type, DataPoint dataPoint, long time);
+
+    /**
+     * @param airport
+     *            the airport id
+     * @return a snapshot of the airport's readings, or null if it has none
+     */
+    AtmosphericInformation get(int airport);
+
+    /**
+     * Copy a single reading without materializing a {@link DataPoint}.
+     *
+     * @param airport
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param into
+     *            receives the values when a reading exists
+     * @return false if the airport has no reading of that type
+     */
+    boolean read(int airport, DataPointType type, Reading into);
+
+    /**
+     * Drop every reading of an airport.
+     *
+     * @param airport
+     *            the airport id
+     */
+    void remove(int airport);
+
+    /**
+     * Visit a snapshot of every airport that has readings.
+     *
+     * @param action
+     *            called once per airport
+     */
+    void forEach(Consumer<AtmosphericInformation> action);
+
+    /**
+     * Remove all readings.
+     */
+    void clear();
+}
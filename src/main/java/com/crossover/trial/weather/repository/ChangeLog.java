@@ -0,0 +1,59 @@
+package com.crossover.trial.weather.repository;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Told about every accepted change to the airports and readings, right after
+ * it is applied, so the changes can be replayed later. Calls for the same
+ * airport come in the order the changes were applied. Implementations must
+ * not block, they are called on request threads and, for airports, while the
+ * airport's entry is locked.
+ *
+ * @author Joao Gatto
+ */
+public interface ChangeLog {
+
+    /** logs nothing */
+    ChangeLog NONE = new ChangeLog() {
+
+        @Override
+        public void airportAdded(final int id, final Airport airport) {
+        }
+
+        @Override
+        public void airportDeleted(final int id) {
+        }
+
+        @Override
+        public void readingUpdated(final int id, final DataPointType type, final DataPoint dataPoint, final long time) {
+        }
+    };
+
+    /**
+     * @param id
+     *            the airport id
+     * @param airport
+     *            the airport added or replaced
+     */
+    void airportAdded(int id, Airport airport);
+
+    /**
+     * @param id
+     *            the id of the deleted airport
+     */
+    void airportDeleted(int id);
+
+    /**
+     * @param id
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param dataPoint
+     *            the stored reading
+     * @param time
+     *            the update time in milliseconds since UTC epoch
+     */
+    void readingUpdated(int id, DataPointType type, DataPoint dataPoint, long time);
+}
@@ -1,19 +1,95 @@
 package com.crossover.trial.weather.repository;
 
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.crossover.trial.weather.model.Airport;
-import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.utils.RecentUpdateCounter;
 
+/**
+ * Every per-airport structure is indexed by the airport id from
+ * {@link com.crossover.trial.weather.utils.AirportCodes}.
+ *
+ * @author Joao Gatto
+ */
 public interface DataRepository {
 
-    Map<Airport, AtomicInteger> getRequestFrequency();
+    /**
+     * Bumped by every write to airports and readings and never reset, so
+     * derived data can tell when it is stale. Counting queries does not bump
+     * it, or every query would make derived data stale.
+     */
+    LongAdder getModificationCount();
 
-    Map<Double, AtomicInteger> getRadiusFrequency();
+    /** airports with a reading updated in the last day */
+    RecentUpdateCounter getRecentUpdates();
 
-    Map<String, AtmosphericInformation> getAtmosphericInformation();
+    /** answers of radius queries, see {@link QueryCache} */
+    QueryCache getQueryCache();
 
-    Map<String, Airport> getAirportData();
+    RequestCounters getRequestCounters();
+
+    AtmosphericStore getAtmosphericStore();
+
+    /** past readings, see {@link HistoryStore} */
+    HistoryStore getHistory();
+
+    /** aggregates of past readings, see {@link RollupStore} */
+    RollupStore getRollups();
+
+    AirportTable getAirports();
+
+    SpatialIndex getSpatialIndex();
+
+    /** sorted neighbours of the most requested airports, see {@link NeighbourIndex} */
+    NeighbourIndex getNeighbourIndex();
+
+    /**
+     * @return where accepted changes are logged, {@link ChangeLog#NONE} until
+     *         one is set
+     */
+    ChangeLog getChangeLog();
+
+    void setChangeLog(ChangeLog changeLog);
+
+    /**
+     * Add or replace an airport and update the indexes, under the airport's
+     * lock. Callers bump {@link #getModificationCount()} and clear the
+     * {@link #getQueryCache()} once the batch of airports is in.
+     *
+     * @param log
+     *            true to pass the change to {@link #getChangeLog()}, false
+     *            when it is being replayed
+     */
+    void putAirport(int id, Airport airport, boolean log);
+
+    /**
+     * Remove an airport with everything recorded about it, under the
+     * airport's lock, since its id is reused when the code is added again.
+     *
+     * @param log
+     *            true to pass the change to {@link #getChangeLog()}
+     * @return false if there was no such airport
+     */
+    boolean deleteAirport(int id, boolean log);
+
+    /**
+     * Store a validated reading with its history. Takes no lock: a delete
+     * that overlaps the writes is detected afterwards and the airport's data
+     * dropped again. A reading racing a delete and a new add of the same code
+     * may be kept for the new airport.
+     *
+     * @param log
+     *            true to pass the change to {@link #getChangeLog()}
+     * @return false if there is no such airport, or it was deleted while the
+     *         reading was stored
+     */
+    boolean updateReading(int id, DataPointType type, DataPoint dataPoint, long time, boolean log);
+
+    /**
+     * Remove all airports, atmospheric information and request statistics.
+     */
+    void clear();
 
 }
@@ -0,0 +1,67 @@
+package com.crossover.trial.weather.repository;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+
+/**
+ * Past readings per airport and {@link DataPointType}, keyed by the airport id
+ * from {@link com.crossover.trial.weather.utils.AirportCodes}. Every series
+ * keeps a fixed number of samples and drops the oldest one when full, so the
+ * memory a series takes never changes. Implementations must be safe for
+ * concurrent readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public interface HistoryStore {
+
+    /**
+     * @return the number of samples kept per series
+     */
+    int getCapacity();
+
+    /**
+     * Add a reading to its series.
+     *
+     * @param airport
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param dataPoint
+     *            the already validated reading
+     * @param time
+     *            the update time in milliseconds since UTC epoch
+     */
+    void record(int airport, DataPointType type, DataPoint dataPoint, long time);
+
+    /**
+     * Copy the samples of a series taken within a time range, in the order
+     * they were recorded.
+     *
+     * @param airport
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch
+     * @param to
+     *            the end of the range, exclusive
+     * @param into
+     *            receives the samples after those it already holds
+     */
+    void read(int airport, DataPointType type, long from, long to, History into);
+
+    /**
+     * Drop every series of an airport.
+     *
+     * @param airport
+     *            the airport id
+     */
+    void remove(int airport);
+
+    /**
+     * Drop all series.
+     */
+    void clear();
+}
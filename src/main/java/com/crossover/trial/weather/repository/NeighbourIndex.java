@@ -0,0 +1,82 @@
+package com.crossover.trial.weather.repository;
+
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import com.crossover.trial.weather.model.Airport;
+
+/**
+ * Every other airport sorted by distance, kept for a few chosen airports so a
+ * radius query around one of them is a binary search and a walk over the
+ * start of an array. The lists follow airports being added and removed; which
+ * airports have one is up to the caller, usually the most requested. Keyed by
+ * the airport id from {@link com.crossover.trial.weather.utils.AirportCodes};
+ * implementations must be safe for concurrent readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public interface NeighbourIndex {
+
+    /** the most airports with a list */
+    int getCapacity();
+
+    /**
+     * Keep lists for these airports only, building the missing ones.
+     *
+     * @param airports
+     *            at most {@link #getCapacity()} airports, as indexed
+     */
+    void retain(Airport... airports);
+
+    /**
+     * Visit the airports within a radius of an airport with a list, nearest
+     * first.
+     *
+     * @param centre
+     *            the airport at the centre, the instance that was indexed
+     * @param radiusKm
+     *            the search radius in km
+     * @param action
+     *            called once for every matching airport, the centre included
+     * @return false, without visiting anything, when the airport has no list
+     */
+    boolean forEachWithin(Airport centre, double radiusKm, Consumer<Airport> action);
+
+    /**
+     * Add an airport to the lists, after it was added to the spatial index.
+     */
+    void added(Airport airport);
+
+    /**
+     * Drop an airport from the lists, after it was removed from the spatial
+     * index. Its own list goes too.
+     */
+    void removed(Airport airport);
+
+    /**
+     * Drop the lists and build none until {@link #resume()}, for a batch of
+     * adds: building a list once costs about as much as adding a handful of
+     * airports to it one at a time. Queries fall back to the spatial index
+     * meanwhile. Calls nest.
+     */
+    void suspend();
+
+    /**
+     * Undo a {@link #suspend()}. The lists are built again by the next
+     * {@link #retain(Airport...)}.
+     */
+    void resume();
+
+    /**
+     * Visit the airports with a list.
+     *
+     * @param action
+     *            called with each airport and the length of its list
+     */
+    void forEachList(ObjIntConsumer<Airport> action);
+
+    /** the estimated memory taken by the lists, in bytes */
+    long getMemoryBytes();
+
+    void clear();
+}
@@ -0,0 +1,92 @@
+package com.crossover.trial.weather.repository;
+
+/**
+ * Encoded answers of radius queries, keyed by the airport id from
+ * {@link com.crossover.trial.weather.utils.AirportCodes} and the radius. An
+ * answer is dropped as soon as a reading of one of the airports it lists
+ * changes, and all of them are dropped when airports are added or removed,
+ * since a new airport may fall inside any circle. Implementations must be safe
+ * for concurrent readers and writers.
+ * <p>
+ * Radii are kept in steps of {@link #STEPS_PER_KM}: a query runs with its
+ * radius passed through {@link #round(double)}, so radii that round alike
+ * share one answer.
+ * <p>
+ * Filling the cache races with writes, so a caller takes a {@link #stamp()}
+ * before running the query and hands it to {@link #put}; answers that a write
+ * since the stamp may have made stale are not kept.
+ *
+ * @author Joao Gatto
+ */
+public interface QueryCache {
+
+    /** radius steps per km, a tenth of a km each */
+    int STEPS_PER_KM = 10;
+
+    /**
+     * @param radiusKm
+     *            a radius in km
+     * @return the radius rounded to the nearest step, the radius to query and
+     *         cache with
+     */
+    static double round(final double radiusKm) {
+        return Math.round(radiusKm * STEPS_PER_KM) / (double) STEPS_PER_KM;
+    }
+
+    /**
+     * @return the cached answer, or null on a miss
+     */
+    byte[] get(int airport, double radiusKm);
+
+    /**
+     * @return the stamp to pass to {@link #put} for a query run after this
+     *         call
+     */
+    long stamp();
+
+    /**
+     * Keep the answer of a query, unless a write since the stamp changed one of
+     * its airports.
+     *
+     * @param airport
+     *            the id of the airport at the centre
+     * @param radiusKm
+     *            the radius in km, as from {@link #round(double)}
+     * @param stamp
+     *            from {@link #stamp()} before the query ran
+     * @param members
+     *            the ids of the airports in the answer, the first count are used
+     * @param count
+     *            the number of airports in the answer
+     * @param body
+     *            the encoded answer, not copied
+     * @return whether the answer was kept
+     */
+    boolean put(int airport, double radiusKm, long stamp, int[] members, int count, byte[] body);
+
+    /**
+     * Drop the answers listing an airport, after one of its readings changed.
+     *
+     * @param airport
+     *            the airport id
+     */
+    void invalidate(int airport);
+
+    /**
+     * Drop all answers, after airports were added or removed.
+     */
+    void clear();
+
+    /** the number of answers held */
+    int size();
+
+    long getHits();
+
+    long getMisses();
+
+    /** answers dropped to make room for newer ones */
+    long getEvictions();
+
+    /** answers dropped by {@link #invalidate(int)} */
+    long getInvalidations();
+}
@@ -0,0 +1,72 @@
+package com.crossover.trial.weather.repository;
+
+import com.crossover.trial.weather.model.DataPoint;
+
+/**
+ * A reusable holder for one stored reading, filled by
+ * {@link AtmosphericStore#read(int, com.crossover.trial.weather.model.DataPointType, Reading)}
+ * so callers can look at values without a {@link DataPoint} per access. Not
+ * thread safe, use one per thread.
+ *
+ * @author Joao Gatto
+ */
+public final class Reading {
+
+    private double mean;
+
+    private double first;
+
+    private double median;
+
+    private double last;
+
+    private int count;
+
+    private long time;
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getFirst() {
+        return first;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** the update time in milliseconds since UTC epoch */
+    public long getTime() {
+        return time;
+    }
+
+    public Reading set(final double mean, final double first, final double median, final double last, final int count,
+            final long time) {
+        this.mean = mean;
+        this.first = first;
+        this.median = median;
+        this.last = last;
+        this.count = count;
+        this.time = time;
+        return this;
+    }
+
+    public Reading set(final DataPoint dataPoint, final long time) {
+        return set(dataPoint.getMean(), dataPoint.getFirst(), dataPoint.getMedian(), dataPoint.getLast(),
+                dataPoint.getCount(), time);
+    }
+
+    public DataPoint toDataPoint() {
+        return new DataPoint.Builder().withMean(mean).withFirst(first).withMedian(median).withLast(last).withCount(count)
+                .build();
+    }
+}
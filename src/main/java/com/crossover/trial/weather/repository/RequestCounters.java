@@ -0,0 +1,70 @@
+package com.crossover.trial.weather.repository;
+
+/**
+ * Counts weather queries per airport id and per query radius. Recording must
+ * be cheap and safe from any number of threads; reading goes through
+ * {@link #snapshot()}.
+ *
+ * @author Joao Gatto
+ */
+public interface RequestCounters {
+
+    /** radii above this many KM are counted as this radius */
+    int MAX_RADIUS_KM = 1000;
+
+    /** width of one radius histogram bucket in KM */
+    int RADIUS_BUCKET_KM = 10;
+
+    /**
+     * Count one query.
+     *
+     * @param airport
+     *            the id of the queried airport
+     * @param radiusKm
+     *            the query radius, clamped to [0, {@link #MAX_RADIUS_KM}]
+     */
+    void record(int airport, double radiusKm);
+
+    /**
+     * @param airport
+     *            the airport id
+     * @return the number of queries for the airport
+     */
+    long get(int airport);
+
+    /**
+     * @return the number of distinct airports queried at least once
+     */
+    int requestedAirports();
+
+    /**
+     * Forget the queries of one airport.
+     *
+     * @param airport
+     *            the airport id
+     */
+    void reset(int airport);
+
+    /**
+     * @return query counts per radius bucket, see
+     *         {@link RequestCounts#getRadiusHistogram()}
+     */
+    long[] radiusHistogram();
+
+    /**
+     * @return a copy of every counter, taken in one pass
+     */
+    RequestCounts snapshot();
+
+    /**
+     * Add saved counts to the current ones, the reverse of
+     * {@link #snapshot()}. Radius buckets beyond the current histogram are
+     * ignored.
+     *
+     * @param counts
+     *            the counts to add
+     */
+    void restore(RequestCounts counts);
+
+    void clear();
+}
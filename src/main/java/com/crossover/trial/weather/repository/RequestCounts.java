@@ -0,0 +1,58 @@
+package com.crossover.trial.weather.repository;
+
+/**
+ * An immutable copy of the {@link RequestCounters}. Counters that change while
+ * the copy is taken may be caught before or after the change.
+ *
+ * @author Joao Gatto
+ */
+public final class RequestCounts {
+
+    private final long[] airportCounts;
+
+    private final int requestedAirports;
+
+    private final long[] radiusHistogram;
+
+    /**
+     * @param airportCounts
+     *            query counts indexed by airport id, not copied
+     * @param radiusHistogram
+     *            query counts per radius bucket, not copied
+     */
+    public RequestCounts(final long[] airportCounts, final long[] radiusHistogram) {
+        this.airportCounts = airportCounts;
+        this.radiusHistogram = radiusHistogram;
+        int requested = 0;
+        for (long count : airportCounts) {
+            if (count > 0) {
+                requested++;
+            }
+        }
+        this.requestedAirports = requested;
+    }
+
+    /**
+     * @param airport
+     *            the airport id
+     * @return the number of queries for the airport
+     */
+    public long getCount(final int airport) {
+        return airportCounts[airport];
+    }
+
+    /** the number of distinct airports queried at least once */
+    public int getRequestedAirports() {
+        return requestedAirports;
+    }
+
+    /**
+     * @return query counts per radius bucket: bucket i holds radii from i *
+     *         {@link RequestCounters#RADIUS_BUCKET_KM} up to the next bucket,
+     *         the last one holds {@link RequestCounters#MAX_RADIUS_KM} and
+     *         above
+     */
+    public long[] getRadiusHistogram() {
+        return radiusHistogram.clone();
+    }
+}
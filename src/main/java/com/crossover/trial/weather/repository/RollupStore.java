@@ -0,0 +1,71 @@
+package com.crossover.trial.weather.repository;
+
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.Resolution;
+import com.crossover.trial.weather.model.Rollup;
+
+/**
+ * Min, max, mean and count of the readings per airport, {@link DataPointType}
+ * and {@link Resolution} bucket, kept up to date as readings arrive so long
+ * ranges are answered without scanning raw samples. Every resolution keeps a
+ * fixed number of the latest buckets. Keyed by the airport id from
+ * {@link com.crossover.trial.weather.utils.AirportCodes}; implementations must
+ * be safe for concurrent readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public interface RollupStore {
+
+    /**
+     * @return the number of buckets kept per series at the resolution
+     */
+    int getBuckets(Resolution resolution);
+
+    /**
+     * Add a reading to the buckets holding its time. Readings older than the
+     * buckets kept at a resolution are left out of it.
+     *
+     * @param airport
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param value
+     *            the value to aggregate
+     * @param time
+     *            the update time in milliseconds since UTC epoch
+     */
+    void record(int airport, DataPointType type, double value, long time);
+
+    /**
+     * Copy the buckets of a series that start within a time range, oldest
+     * first.
+     *
+     * @param airport
+     *            the airport id
+     * @param type
+     *            the measurement type
+     * @param resolution
+     *            the bucket width
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch; the bucket holding it is included
+     * @param to
+     *            the end of the range, exclusive
+     * @param into
+     *            receives the buckets after those it already holds
+     */
+    void read(int airport, DataPointType type, Resolution resolution, long from, long to, Rollup into);
+
+    /**
+     * Drop every series of an airport.
+     *
+     * @param airport
+     *            the airport id
+     */
+    void remove(int airport);
+
+    /**
+     * Drop all series.
+     */
+    void clear();
+}
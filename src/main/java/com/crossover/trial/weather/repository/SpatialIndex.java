@@ -0,0 +1,88 @@
+package com.crossover.trial.weather.repository;
+
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.Coordinate;
+
+/**
+ * A spatial index over the known airports, used to answer radius queries
+ * without visiting every airport. Implementations must be safe for concurrent
+ * readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public interface SpatialIndex {
+
+    /**
+     * Add an airport to the index at its current coordinate.
+     *
+     * @param airport
+     *            the airport to index
+     */
+    void add(Airport airport);
+
+    /**
+     * Remove a previously added airport from the index.
+     *
+     * @param airport
+     *            the same instance that was passed to {@link #add(Airport)}
+     * @return true if the airport was found and removed
+     */
+    boolean remove(Airport airport);
+
+    /**
+     * Visit every indexed airport whose great-circle distance from the centre
+     * is at most the given radius.
+     *
+     * @param centre
+     *            the centre of the search circle
+     * @param radiusKm
+     *            the search radius in km
+     * @param action
+     *            called once for every matching airport
+     */
+    void forEachWithin(Coordinate centre, double radiusKm, Consumer<Airport> action);
+
+    /**
+     * Visit every indexed airport inside a latitude/longitude box, edges
+     * included. A west edge greater than the east edge makes the box cross the
+     * antimeridian, and -180 to 180 takes every longitude.
+     *
+     * @param south
+     *            the southern edge in degrees
+     * @param west
+     *            the western edge in degrees
+     * @param north
+     *            the northern edge in degrees, at least south
+     * @param east
+     *            the eastern edge in degrees
+     * @param action
+     *            called once for every matching airport
+     */
+    void forEachInBox(double south, double west, double north, double east, Consumer<Airport> action);
+
+    /**
+     * Visit the indexed airports closest to a point by great-circle distance,
+     * nearest first. Ties are visited in no particular order.
+     *
+     * @param centre
+     *            the point to measure from
+     * @param k
+     *            the most airports to visit
+     * @param action
+     *            called with each airport and its distance in km
+     */
+    void forEachNearest(Coordinate centre, int k, ObjDoubleConsumer<Airport> action);
+
+    /**
+     * @return the number of indexed airports
+     */
+    int size();
+
+    /**
+     * Remove every airport from the index.
+     */
+    void clear();
+}
@@ -0,0 +1,87 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.repository.AirportTable;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * One array slot per possible airport id. Reads are a single volatile load,
+ * writers of the same id are serialized by a striped monitor.
+ *
+ * @author Joao Gatto
+ */
+public class ArrayAirportTable implements AirportTable {
+
+    /** number of write monitors, a power of two */
+    private static final int LOCK_STRIPES = 64;
+
+    private final AtomicReferenceArray<Airport> airports = new AtomicReferenceArray<>(AirportCodes.CAPACITY);
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public ArrayAirportTable() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Airport get(final int id) {
+        return airports.get(id);
+    }
+
+    @Override
+    public Airport compute(final int id, final UnaryOperator<Airport> remapping) {
+        synchronized (locks[id & (LOCK_STRIPES - 1)]) {
+            Airport previous = airports.get(id);
+            Airport next = remapping.apply(previous);
+            airports.set(id, next);
+            if (next != previous) {
+                version.incrementAndGet();
+            }
+            if (previous == null && next != null) {
+                size.incrementAndGet();
+            } else if (previous != null && next == null) {
+                size.decrementAndGet();
+            }
+            return next;
+        }
+    }
+
+    @Override
+    public void forEach(final Consumer<Airport> action) {
+        for (int id = 0; id < airports.length(); id++) {
+            Airport airport = airports.get(id);
+            if (airport != null) {
+                action.accept(airport);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void clear() {
+        for (int id = 0; id < airports.length(); id++) {
+            compute(id, previous -> null);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.repository.SpatialIndex;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+
+/**
+ * Each list is an immutable pair of arrays, the airports and their distances
+ * in ascending order, replaced with compare-and-set when an airport is added
+ * or removed, so queries never take a lock. A list costs
+ * {@value #NEIGHBOUR_SIZE} bytes per airport.
+ * <p>
+ * Lists are built from the spatial index, which an airport reaches before
+ * {@link #added(Airport)} runs. A build that overlaps an add or remove is
+ * done again, since the change may have missed the list before it was
+ * published. While suspended there are no lists, so adds and removes cost
+ * nothing.
+ *
+ * @author Joao Gatto
+ */
+public class ArrayNeighbourIndex implements NeighbourIndex {
+
+    /** bytes per neighbour: its distance and a compressed reference */
+    public static final int NEIGHBOUR_SIZE = 8 + 4;
+
+    /** builds overlapping changes this many times in a row are given up */
+    private static final int MAX_BUILD_ATTEMPTS = 3;
+
+    /** half the circumference of the earth, reaches every airport */
+    private static final double EVERYWHERE_KM = Math.PI * CoordinateHelper.EARTH_RADIUS_KM;
+
+    private final int capacity;
+
+    private final SpatialIndex spatialIndex;
+
+    /** by airport id, null when it has no list */
+    private final AtomicReferenceArray<Neighbours> lists = new AtomicReferenceArray<>(AirportCodes.CAPACITY);
+
+    /** ids of the airports with a list, replaced as a whole */
+    private volatile int[] owners = new int[0];
+
+    /** bumped by every add and remove before the lists are updated */
+    private final AtomicLong changes = new AtomicLong();
+
+    /** open {@link #suspend()} calls, guarded by this */
+    private int suspended;
+
+    /**
+     * @param capacity
+     *            the most airports with a list
+     * @param spatialIndex
+     *            supplies the airports when a list is built
+     */
+    public ArrayNeighbourIndex(final int capacity, final SpatialIndex spatialIndex) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.spatialIndex = spatialIndex;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void retain(final Airport... airports) {
+        if (airports.length > capacity) {
+            throw new IllegalArgumentException(airports.length + " lists requested, " + capacity + " allowed");
+        }
+        if (suspended > 0) {
+            return;
+        }
+        int[] next = new int[airports.length];
+        for (int i = 0; i < airports.length; i++) {
+            next[i] = AirportCodes.idOf(airports[i].getIata());
+        }
+        for (int id : owners) {
+            if (indexOf(next, id) < 0) {
+                lists.set(id, null);
+            }
+        }
+        // published first, so adds from now on reach the new lists
+        owners = next;
+        for (int i = 0; i < airports.length; i++) {
+            Neighbours current = lists.get(next[i]);
+            if (current == null || current.owner != airports[i]) {
+                build(next[i], airports[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean forEachWithin(final Airport centre, final double radiusKm, final Consumer<Airport> action) {
+        int id = AirportCodes.idOf(centre.getIata());
+        Neighbours list = id == AirportCodes.INVALID ? null : lists.get(id);
+        if (list == null || list.owner != centre) {
+            return false;
+        }
+        int end = upperBound(list.distances, list.distances.length, radiusKm);
+        for (int i = 0; i < end; i++) {
+            action.accept(list.airports[i]);
+        }
+        return true;
+    }
+
+    @Override
+    public void added(final Airport airport) {
+        changes.incrementAndGet();
+        for (int id : owners) {
+            Neighbours list;
+            Neighbours next;
+            do {
+                list = lists.get(id);
+                next = list == null ? null : list.with(airport);
+            } while (next != list && !lists.compareAndSet(id, list, next));
+        }
+    }
+
+    @Override
+    public void removed(final Airport airport) {
+        changes.incrementAndGet();
+        for (int id : owners) {
+            Neighbours list;
+            Neighbours next;
+            do {
+                list = lists.get(id);
+                next = list == null || list.owner == airport ? null : list.without(airport);
+            } while (next != list && !lists.compareAndSet(id, list, next));
+        }
+    }
+
+    @Override
+    public synchronized void suspend() {
+        suspended++;
+        clear();
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (suspended == 0) {
+            throw new IllegalStateException("Not suspended");
+        }
+        suspended--;
+    }
+
+    @Override
+    public void forEachList(final ObjIntConsumer<Airport> action) {
+        for (int id : owners) {
+            Neighbours list = lists.get(id);
+            if (list != null) {
+                action.accept(list.owner, list.airports.length);
+            }
+        }
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (int id : owners) {
+            Neighbours list = lists.get(id);
+            if (list != null) {
+                bytes += (long) list.airports.length * NEIGHBOUR_SIZE;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int id : owners) {
+            lists.set(id, null);
+        }
+        owners = new int[0];
+    }
+
+    private void build(final int id, final Airport owner) {
+        for (int attempt = 0; attempt < MAX_BUILD_ATTEMPTS; attempt++) {
+            long before = changes.get();
+            lists.set(id, Neighbours.of(owner, spatialIndex));
+            if (changes.get() == before) {
+                return;
+            }
+        }
+        // airports keep changing, try again on the next retain
+        lists.set(id, null);
+    }
+
+    private static int indexOf(final int[] values, final int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** the number of leading values at most the key */
+    private static int upperBound(final double[] values, final int length, final double key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** the other airports of one airport in ascending distance */
+    private static final class Neighbours {
+
+        final Airport owner;
+
+        final Airport[] airports;
+
+        final double[] distances;
+
+        private Neighbours(final Airport owner, final Airport[] airports, final double[] distances) {
+            this.owner = owner;
+            this.airports = airports;
+            this.distances = distances;
+        }
+
+        static Neighbours of(final Airport owner, final SpatialIndex spatialIndex) {
+            List<Airport> found = new ArrayList<>();
+            spatialIndex.forEachWithin(owner.getCoordinate(), EVERYWHERE_KM, found::add);
+            double[] unsorted = new double[found.size()];
+            Integer[] order = new Integer[found.size()];
+            for (int i = 0; i < order.length; i++) {
+                unsorted[i] = CoordinateHelper.calculateDistance(owner.getCoordinate(), found.get(i).getCoordinate());
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> unsorted[i]));
+            Airport[] airports = new Airport[order.length];
+            double[] distances = new double[order.length];
+            for (int i = 0; i < order.length; i++) {
+                airports[i] = found.get(order[i]);
+                distances[i] = unsorted[order[i]];
+            }
+            return new Neighbours(owner, airports, distances);
+        }
+
+        /** this list when the airport is already in it */
+        Neighbours with(final Airport airport) {
+            double distance = CoordinateHelper.calculateDistance(owner.getCoordinate(), airport.getCoordinate());
+            int end = upperBound(distances, distances.length, distance);
+            if (indexOf(airport, distance, end) >= 0) {
+                return this;
+            }
+            Airport[] nextAirports = new Airport[airports.length + 1];
+            double[] nextDistances = new double[distances.length + 1];
+            System.arraycopy(airports, 0, nextAirports, 0, end);
+            System.arraycopy(distances, 0, nextDistances, 0, end);
+            nextAirports[end] = airport;
+            nextDistances[end] = distance;
+            System.arraycopy(airports, end, nextAirports, end + 1, airports.length - end);
+            System.arraycopy(distances, end, nextDistances, end + 1, distances.length - end);
+            return new Neighbours(owner, nextAirports, nextDistances);
+        }
+
+        /** this list when the airport is not in it */
+        Neighbours without(final Airport airport) {
+            double distance = CoordinateHelper.calculateDistance(owner.getCoordinate(), airport.getCoordinate());
+            int position = indexOf(airport, distance, upperBound(distances, distances.length, distance));
+            if (position < 0) {
+                return this;
+            }
+            Airport[] nextAirports = new Airport[airports.length - 1];
+            double[] nextDistances = new double[distances.length - 1];
+            System.arraycopy(airports, 0, nextAirports, 0, position);
+            System.arraycopy(distances, 0, nextDistances, 0, position);
+            System.arraycopy(airports, position + 1, nextAirports, position, nextAirports.length - position);
+            System.arraycopy(distances, position + 1, nextDistances, position, nextDistances.length - position);
+            return new Neighbours(owner, nextAirports, nextDistances);
+        }
+
+        /** the position of the airport among those at the distance ending at end */
+        private int indexOf(final Airport airport, final double distance, final int end) {
+            for (int i = end - 1; i >= 0 && distances[i] == distance; i--) {
+                if (airports[i] == airport) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
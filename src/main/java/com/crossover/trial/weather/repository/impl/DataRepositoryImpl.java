@@ -1,28 +1,101 @@
 package com.crossover.trial.weather.repository.impl;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.crossover.trial.weather.model.Airport;
-import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.AirportTable;
+import com.crossover.trial.weather.repository.AtmosphericStore;
+import com.crossover.trial.weather.repository.ChangeLog;
 import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.HistoryStore;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.repository.QueryCache;
+import com.crossover.trial.weather.repository.RequestCounters;
+import com.crossover.trial.weather.repository.RollupStore;
+import com.crossover.trial.weather.repository.SpatialIndex;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.crossover.trial.weather.utils.RecentUpdateCounter;
 
 public class DataRepositoryImpl implements DataRepository {
 
-    private final Map<String, AtmosphericInformation> atmosphericInformation;
+    /**
+     * System property selecting how readings are stored: "slots" (default)
+     * for per-type atomic slots, "snapshot" for copy-on-write records,
+     * "offheap" for a direct buffer table.
+     */
+    public static final String STORE_PROPERTY = "weather.store";
 
-    private final Map<Airport, AtomicInteger> requestFrequency;
+    /**
+     * System property with the number of past readings kept per airport and
+     * type, 32 by default, 0 to keep none. See {@link RingHistoryStore} for
+     * the memory it takes.
+     */
+    public static final String HISTORY_PROPERTY = "weather.history";
 
-    private final Map<Double, AtomicInteger> radiusFrequency;
+    /**
+     * System property with the number of buckets kept per airport and type at
+     * each rollup resolution: minutes, hours and days, comma separated,
+     * "60,48,30" by default. See {@link RingRollupStore} for the memory they
+     * take.
+     */
+    public static final String ROLLUP_PROPERTY = "weather.rollups";
 
-    private final Map<String, Airport> airportData;
+    /**
+     * System property with the number of radius query answers kept, 1024 by
+     * default, 0 to keep none. See {@link LruQueryCache}.
+     */
+    public static final String CACHE_PROPERTY = "weather.cache";
+
+    /**
+     * System property with the number of most requested airports given a
+     * sorted neighbour list, 16 by default, 0 for none. See
+     * {@link ArrayNeighbourIndex} for the memory they take.
+     */
+    public static final String NEIGHBOUR_PROPERTY = "weather.neighbours";
+
+    private final LongAdder modificationCount = new LongAdder();
+
+    private final RecentUpdateCounter recentUpdates = new RecentUpdateCounter(AirportCodes.CAPACITY,
+            TimeUnit.DAYS.toMillis(1), TimeUnit.MINUTES.toMillis(1));
+
+    private final AtmosphericStore atmosphericStore;
+
+    private final HistoryStore history;
+
+    private final RollupStore rollups;
+
+    private final QueryCache queryCache;
+
+    private final RequestCounters requestCounters;
+
+    private final AirportTable airports;
+
+    private final SpatialIndex spatialIndex;
+
+    private final NeighbourIndex neighbourIndex;
+
+    private volatile ChangeLog changeLog = ChangeLog.NONE;
+
+    /**
+     * By airport id, bumped when a delete starts dropping the airport's data
+     * and again once it is out of the table, so readings are written without
+     * a lock and checked afterwards.
+     */
+    private final AtomicIntegerArray generations = new AtomicIntegerArray(AirportCodes.CAPACITY);
 
     private DataRepositoryImpl() {
-        atmosphericInformation = new ConcurrentHashMap<>(1000);
-        requestFrequency = new ConcurrentHashMap<>();
-        radiusFrequency = new ConcurrentHashMap<>();
-        airportData = new ConcurrentHashMap<>();
+        atmosphericStore = createStore(System.getProperty(STORE_PROPERTY, "slots"));
+        history = new RingHistoryStore(Integer.getInteger(HISTORY_PROPERTY, 32));
+        rollups = createRollups(System.getProperty(ROLLUP_PROPERTY, "60,48,30"));
+        queryCache = new LruQueryCache(Integer.getInteger(CACHE_PROPERTY, 1024));
+        requestCounters = new LongAdderRequestCounters();
+        airports = new ArrayAirportTable();
+        spatialIndex = new GridSpatialIndex();
+        neighbourIndex = new ArrayNeighbourIndex(Integer.getInteger(NEIGHBOUR_PROPERTY, 16), spatialIndex);
     }
 
     private static final DataRepository INSTANCE = new DataRepositoryImpl();
@@ -32,23 +105,179 @@ public class DataRepositoryImpl implements DataRepository {
     }
 
     @Override
-    public Map<Airport, AtomicInteger> getRequestFrequency() {
-        return requestFrequency;
+    public LongAdder getModificationCount() {
+        return modificationCount;
+    }
+
+    @Override
+    public RecentUpdateCounter getRecentUpdates() {
+        return recentUpdates;
+    }
+
+    @Override
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    @Override
+    public RequestCounters getRequestCounters() {
+        return requestCounters;
+    }
+
+    @Override
+    public AtmosphericStore getAtmosphericStore() {
+        return atmosphericStore;
+    }
+
+    @Override
+    public HistoryStore getHistory() {
+        return history;
     }
 
     @Override
-    public Map<Double, AtomicInteger> getRadiusFrequency() {
-        return radiusFrequency;
+    public RollupStore getRollups() {
+        return rollups;
     }
 
     @Override
-    public Map<String, AtmosphericInformation> getAtmosphericInformation() {
-        return atmosphericInformation;
+    public AirportTable getAirports() {
+        return airports;
     }
 
     @Override
-    public Map<String, Airport> getAirportData() {
-        return airportData;
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    @Override
+    public NeighbourIndex getNeighbourIndex() {
+        return neighbourIndex;
+    }
+
+    @Override
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    @Override
+    public void setChangeLog(final ChangeLog changeLog) {
+        this.changeLog = changeLog == null ? ChangeLog.NONE : changeLog;
+    }
+
+    @Override
+    public void putAirport(final int id, final Airport airport, final boolean log) {
+        // keep the indexes in step with the airport table, per id
+        airports.compute(id, previous -> {
+            if (previous != null) {
+                spatialIndex.remove(previous);
+                neighbourIndex.removed(previous);
+            }
+            spatialIndex.add(airport);
+            neighbourIndex.added(airport);
+            if (log) {
+                changeLog.airportAdded(id, airport);
+            }
+            return airport;
+        });
+    }
+
+    @Override
+    public boolean deleteAirport(final int id, final boolean log) {
+        boolean[] deleted = new boolean[1];
+        airports.compute(id, previous -> {
+            if (previous != null) {
+                // odd until the airport is out of the table, see updateReading
+                generations.incrementAndGet(id);
+                spatialIndex.remove(previous);
+                neighbourIndex.removed(previous);
+                drop(id);
+                queryCache.clear();
+                if (log) {
+                    changeLog.airportDeleted(id);
+                }
+                deleted[0] = true;
+            }
+            return null;
+        });
+        if (deleted[0]) {
+            generations.incrementAndGet(id);
+        }
+        return deleted[0];
+    }
+
+    @Override
+    public boolean updateReading(final int id, final DataPointType type, final DataPoint dataPoint, final long time,
+            final boolean log) {
+        int generation = generations.get(id);
+        if ((generation & 1) != 0 || airports.get(id) == null) {
+            return false;
+        }
+        atmosphericStore.update(id, type, dataPoint, time);
+        queryCache.invalidate(id);
+        history.record(id, type, dataPoint, time);
+        rollups.record(id, type, dataPoint.getMean(), time);
+        recentUpdates.record(id, time);
+        if (log) {
+            changeLog.readingUpdated(id, type, dataPoint, time);
+        }
+        if (generations.get(id) != generation) {
+            // a delete ran meanwhile and may have dropped the data before
+            // these writes, drop it again unless the code was added back
+            airports.compute(id, airport -> {
+                if (airport == null) {
+                    drop(id);
+                    queryCache.invalidate(id);
+                }
+                return airport;
+            });
+            return false;
+        }
+        return true;
+    }
+
+    /** everything recorded about an airport, but the airport itself */
+    private void drop(final int id) {
+        atmosphericStore.remove(id);
+        history.remove(id);
+        rollups.remove(id);
+        requestCounters.reset(id);
+        recentUpdates.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        airports.clear();
+        spatialIndex.clear();
+        neighbourIndex.clear();
+        atmosphericStore.clear();
+        history.clear();
+        rollups.clear();
+        queryCache.clear();
+        requestCounters.clear();
+        recentUpdates.clear();
+        modificationCount.increment();
+    }
+
+    private static RollupStore createRollups(final String buckets) {
+        String[] counts = buckets.split(",");
+        int[] sizes = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            sizes[i] = Integer.parseInt(counts[i].trim());
+        }
+        return new RingRollupStore(sizes);
+    }
+
+    private static AtmosphericStore createStore(final String mode) {
+        switch (mode) {
+        case "snapshot":
+            return new SnapshotAtmosphericStore();
+        case "slots":
+            return new SlotAtmosphericStore();
+        case "offheap":
+            return new OffHeapAtmosphericStore();
+        default:
+            throw new IllegalArgumentException("Unknown " + STORE_PROPERTY + " value: " + mode);
+        }
     }
 
 }
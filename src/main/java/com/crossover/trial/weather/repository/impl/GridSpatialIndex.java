@@ -0,0 +1,440 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.repository.SpatialIndex;
+import com.crossover.trial.weather.utils.CoordinateArray;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+import com.crossover.trial.weather.utils.SearchCircle;
+
+/**
+ * A fixed latitude/longitude grid. Every cell holds an immutable array of the
+ * airports inside it, alongside their precomputed coordinates, which is
+ * replaced with compare-and-set on writes so radius queries never take a lock.
+ * A query only visits the cells overlapping the bounding box of the search
+ * circle, widened to every longitude when the circle covers a pole.
+ * <p>
+ * Nearest neighbour queries run a best-first search over the cells: starting
+ * from the cell holding the point, cells are taken from a heap ordered by the
+ * least distance any of their points can have, and the search stops once that
+ * exceeds the k-th closest airport found. Only the cells around the answer are
+ * visited, with a heap operation each.
+ *
+ * @author Joao Gatto
+ */
+public class GridSpatialIndex implements SpatialIndex {
+
+    /** default cell edge in degrees */
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+
+    private final double cellDegrees;
+
+    private final int rows;
+
+    private final int columns;
+
+    private final AtomicReferenceArray<Cell> cells;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public GridSpatialIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees
+     *            the cell edge in degrees, must divide 180 evenly
+     */
+    public GridSpatialIndex(final double cellDegrees) {
+        double rowCount = 180.0 / cellDegrees;
+        if (cellDegrees <= 0 || rowCount != Math.rint(rowCount)) {
+            throw new IllegalArgumentException("Cell size must divide 180 degrees: " + cellDegrees);
+        }
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) rowCount;
+        this.columns = 2 * rows;
+        this.cells = new AtomicReferenceArray<>(rows * columns);
+        emptyCells();
+    }
+
+    @Override
+    public void add(final Airport airport) {
+        int index = cellOf(airport.getCoordinate());
+        Cell current;
+        do {
+            current = cells.get(index);
+        } while (!cells.compareAndSet(index, current, current.with(airport)));
+        size.incrementAndGet();
+    }
+
+    @Override
+    public boolean remove(final Airport airport) {
+        int index = cellOf(airport.getCoordinate());
+        Cell current;
+        Cell next;
+        do {
+            current = cells.get(index);
+            int position = current.indexOf(airport);
+            if (position < 0) {
+                return false;
+            }
+            next = current.without(position);
+        } while (!cells.compareAndSet(index, current, next));
+        size.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void forEachWithin(final Coordinate centre, final double radiusKm, final Consumer<Airport> action) {
+        if (radiusKm < 0) {
+            return;
+        }
+        SearchCircle circle = new SearchCircle(centre, radiusKm);
+        int firstColumn = 0;
+        int lastColumn = columns - 1;
+        if (!circle.coversPole()) {
+            int west = column(circle.getMinLongitude());
+            int east = column(circle.getMaxLongitude());
+            if (east - west + 1 < columns) {
+                firstColumn = west;
+                lastColumn = east;
+            }
+        }
+
+        int[] matches = new int[16];
+        int lastRow = row(circle.getMaxLatitude());
+        for (int row = row(circle.getMinLatitude()); row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Cell cell = cells.get(row * columns + Math.floorMod(column, columns));
+                if (cell.airports.length > matches.length) {
+                    matches = new int[Math.max(cell.airports.length, 2 * matches.length)];
+                }
+                int found = cell.coordinates.indicesWithin(circle, matches);
+                for (int i = 0; i < found; i++) {
+                    action.accept(cell.airports[matches[i]]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachInBox(final double south, final double west, final double north, final double east,
+            final Consumer<Airport> action) {
+        if (north < south) {
+            return;
+        }
+        // unwrap the east edge so the box runs eastwards from the west edge
+        double span = east >= west ? east - west : east - west + 360;
+        int firstColumn = column(west);
+        int lastColumn = column(west + span);
+        if (lastColumn - firstColumn + 1 >= columns) {
+            firstColumn = 0;
+            lastColumn = columns - 1;
+        }
+        int lastRow = row(north);
+        for (int row = row(south); row <= lastRow; row++) {
+            double cellSouth = CoordinateHelper.MIN_LATITUDE + row * cellDegrees;
+            boolean rowInside = cellSouth >= south && cellSouth + cellDegrees <= north;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Cell cell = cells.get(row * columns + Math.floorMod(column, columns));
+                double cellWest = CoordinateHelper.MIN_LONGITUDE + column * cellDegrees;
+                if (rowInside && cellWest >= west && cellWest + cellDegrees <= west + span) {
+                    // the whole cell is inside, skip the tests
+                    for (Airport airport : cell.airports) {
+                        action.accept(airport);
+                    }
+                    continue;
+                }
+                for (Airport airport : cell.airports) {
+                    Coordinate coordinate = airport.getCoordinate();
+                    double offset = coordinate.getLongitude() - west;
+                    if (offset < 0) {
+                        offset += 360;
+                    }
+                    if (coordinate.getLatitude() >= south && coordinate.getLatitude() <= north
+                            && (offset <= span || span >= 360)) {
+                        action.accept(airport);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachNearest(final Coordinate centre, final int k, final ObjDoubleConsumer<Airport> action) {
+        int limit = Math.min(k, size.get());
+        if (limit <= 0) {
+            return;
+        }
+        SearchCircle origin = new SearchCircle(centre, 0);
+        double latRad = Math.toRadians(centre.getLatitude());
+        double lonRad = Math.toRadians(centre.getLongitude());
+        Nearest nearest = new Nearest(limit);
+        CellQueue queue = new CellQueue();
+        BitSet queued = new BitSet(cells.length());
+        int start = cellOf(centre);
+        queue.add(0, start);
+        queued.set(start);
+        double[] distances = new double[16];
+        // cells come out closest first, so the search stops at the first
+        // one that cannot hold anything nearer than the k found so far
+        while (!queue.isEmpty() && !(nearest.isFull() && queue.peekBound() >= nearest.worst())) {
+            int index = queue.poll();
+            Cell cell = cells.get(index);
+            if (cell.airports.length > distances.length) {
+                distances = new double[Math.max(cell.airports.length, 2 * distances.length)];
+            }
+            cell.coordinates.distancesFrom(origin, distances);
+            for (int i = 0; i < cell.airports.length; i++) {
+                nearest.offer(cell.airports[i], distances[i]);
+            }
+            int row = index / columns;
+            int column = index % columns;
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = column - 1; c <= column + 1; c++) {
+                    int neighbour = r * columns + Math.floorMod(c, columns);
+                    if (!queued.get(neighbour)) {
+                        queued.set(neighbour);
+                        queue.add(distanceToCell(origin, latRad, lonRad, r, Math.floorMod(c, columns)), neighbour);
+                    }
+                }
+            }
+        }
+        nearest.forEachAscending(action);
+    }
+
+    /**
+     * The least distance from the origin to any point of a cell. Outside the
+     * cell's longitudes the nearest point lies on the closer edge meridian:
+     * along a meridian the distance falls towards the foot of the
+     * perpendicular from the origin and rises past it, so the foot clamped to
+     * the cell's latitudes is nearest, or one of the corners when the
+     * meridian is more than 90 degrees away and the foot is on its far half.
+     */
+    private double distanceToCell(final SearchCircle origin, final double latRad, final double lonRad, final int row,
+            final int column) {
+        double south = Math.toRadians(CoordinateHelper.MIN_LATITUDE + row * cellDegrees);
+        double north = Math.toRadians(CoordinateHelper.MIN_LATITUDE + (row + 1) * cellDegrees);
+        double west = Math.toRadians(CoordinateHelper.MIN_LONGITUDE + column * cellDegrees);
+        double width = Math.toRadians(cellDegrees);
+        double fromWest = Math.IEEEremainder(lonRad - west, 2 * Math.PI);
+        if (fromWest >= 0 && fromWest <= width) {
+            // straight north or south along a meridian
+            return CoordinateHelper.EARTH_RADIUS_KM * Math.max(0, Math.max(south - latRad, latRad - north));
+        }
+        double fromEast = Math.IEEEremainder(lonRad - west - width, 2 * Math.PI);
+        double edge = Math.abs(fromWest) <= Math.abs(fromEast) ? west : west + width;
+        double deltaLon = Math.min(Math.abs(fromWest), Math.abs(fromEast));
+        if (deltaLon < Math.PI / 2) {
+            double foot = Math.atan(Math.tan(latRad) / Math.cos(deltaLon));
+            double lat = Math.max(south, Math.min(north, foot));
+            return origin.distanceTo(lat, edge, Math.cos(lat));
+        }
+        return Math.min(origin.distanceTo(south, edge, Math.cos(south)), origin.distanceTo(north, edge, Math.cos(north)));
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void clear() {
+        emptyCells();
+        size.set(0);
+    }
+
+    private void emptyCells() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, Cell.EMPTY);
+        }
+    }
+
+    private int cellOf(final Coordinate coordinate) {
+        return row(coordinate.getLatitude()) * columns + Math.floorMod(column(coordinate.getLongitude()), columns);
+    }
+
+    private int row(final double latitude) {
+        return Math.min(rows - 1, (int) ((latitude - CoordinateHelper.MIN_LATITUDE) / cellDegrees));
+    }
+
+    /** unwrapped column, callers reduce it modulo the column count */
+    private int column(final double longitude) {
+        return (int) Math.floor((longitude - CoordinateHelper.MIN_LONGITUDE) / cellDegrees);
+    }
+
+    /** cell indexes in a binary min-heap on their distance */
+    private static final class CellQueue {
+
+        private double[] bounds = new double[64];
+
+        private int[] indexes = new int[64];
+
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekBound() {
+            return bounds[0];
+        }
+
+        void add(final double bound, final int index) {
+            if (size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * size);
+                indexes = Arrays.copyOf(indexes, 2 * size);
+            }
+            int i = size++;
+            while (i > 0 && bounds[(i - 1) / 2] > bound) {
+                bounds[i] = bounds[(i - 1) / 2];
+                indexes[i] = indexes[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            bounds[i] = bound;
+            indexes[i] = index;
+        }
+
+        int poll() {
+            int result = indexes[0];
+            size--;
+            double bound = bounds[size];
+            int index = indexes[size];
+            int i = 0;
+            for (int child = 1; child < size; child = 2 * i + 1) {
+                if (child + 1 < size && bounds[child + 1] < bounds[child]) {
+                    child++;
+                }
+                if (bounds[child] >= bound) {
+                    break;
+                }
+                bounds[i] = bounds[child];
+                indexes[i] = indexes[child];
+                i = child;
+            }
+            bounds[i] = bound;
+            indexes[i] = index;
+            return result;
+        }
+    }
+
+    /** the closest airports found so far, in a binary max-heap on distance */
+    private static final class Nearest {
+
+        private final Airport[] airports;
+
+        private final double[] distances;
+
+        private int size;
+
+        Nearest(final int capacity) {
+            airports = new Airport[capacity];
+            distances = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == airports.length;
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offer(final Airport airport, final double distance) {
+            if (!isFull()) {
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    airports[i] = airports[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                airports[i] = airport;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(airport, distance, size);
+            }
+        }
+
+        /** empties the heap */
+        void forEachAscending(final ObjDoubleConsumer<Airport> action) {
+            // take the farthest off repeatedly, filling the array from the end
+            int count = size;
+            while (size > 1) {
+                Airport airport = airports[0];
+                double distance = distances[0];
+                size--;
+                siftDown(airports[size], distances[size], size);
+                airports[size] = airport;
+                distances[size] = distance;
+            }
+            for (int i = 0; i < count; i++) {
+                action.accept(airports[i], distances[i]);
+            }
+            size = 0;
+        }
+
+        /** put an entry at the root of the first count and restore order */
+        private void siftDown(final Airport airport, final double distance, final int count) {
+            int i = 0;
+            for (int child = 1; child < count; child = 2 * i + 1) {
+                if (child + 1 < count && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                airports[i] = airports[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            airports[i] = airport;
+            distances[i] = distance;
+        }
+    }
+
+    /**
+     * The airports of one grid cell and their coordinates in the same order.
+     */
+    private static final class Cell {
+
+        static final Cell EMPTY = new Cell(new Airport[0], CoordinateArray.EMPTY);
+
+        final Airport[] airports;
+
+        final CoordinateArray coordinates;
+
+        Cell(final Airport[] airports, final CoordinateArray coordinates) {
+            this.airports = airports;
+            this.coordinates = coordinates;
+        }
+
+        Cell with(final Airport airport) {
+            Airport[] next = Arrays.copyOf(airports, airports.length + 1);
+            next[airports.length] = airport;
+            return new Cell(next, coordinates.append(airport.getCoordinate()));
+        }
+
+        Cell without(final int position) {
+            Airport[] next = new Airport[airports.length - 1];
+            System.arraycopy(airports, 0, next, 0, position);
+            System.arraycopy(airports, position + 1, next, position, next.length - position);
+            return new Cell(next, coordinates.remove(position));
+        }
+
+        int indexOf(final Airport airport) {
+            for (int i = 0; i < airports.length; i++) {
+                if (airports[i] == airport) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crossover.trial.weather.repository.RequestCounters;
+import com.crossover.trial.weather.repository.RequestCounts;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.crossover.trial.weather.utils.FixedWidthHistogram;
+
+/**
+ * One {@link LongAdder} per airport id, and a fixed bucket histogram of radii.
+ * A popular airport no longer funnels every query through one contended word:
+ * each adder spreads concurrent increments over per-thread cells and only sums
+ * them on read. Airport adders are created on the first query.
+ *
+ * @author Joao Gatto
+ */
+public class LongAdderRequestCounters implements RequestCounters {
+
+    private final AtomicReferenceArray<LongAdder> airports = new AtomicReferenceArray<>(AirportCodes.CAPACITY);
+
+    private final AtomicInteger requestedAirports = new AtomicInteger();
+
+    private final FixedWidthHistogram radii = new FixedWidthHistogram(RADIUS_BUCKET_KM, MAX_RADIUS_KM);
+
+    @Override
+    public void record(final int airport, final double radiusKm) {
+        adder(airport).increment();
+        radii.record(radiusKm);
+    }
+
+    @Override
+    public long get(final int airport) {
+        LongAdder adder = airports.get(airport);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    @Override
+    public int requestedAirports() {
+        return requestedAirports.get();
+    }
+
+    @Override
+    public void reset(final int airport) {
+        if (airports.getAndSet(airport, null) != null) {
+            requestedAirports.decrementAndGet();
+        }
+    }
+
+    @Override
+    public long[] radiusHistogram() {
+        return radii.snapshot();
+    }
+
+    @Override
+    public RequestCounts snapshot() {
+        long[] airportCounts = new long[airports.length()];
+        for (int i = 0; i < airportCounts.length; i++) {
+            LongAdder adder = airports.get(i);
+            if (adder != null) {
+                airportCounts[i] = adder.sum();
+            }
+        }
+        return new RequestCounts(airportCounts, radii.snapshot());
+    }
+
+    @Override
+    public void restore(final RequestCounts counts) {
+        for (int airport = 0; airport < airports.length(); airport++) {
+            long count = counts.getCount(airport);
+            if (count > 0) {
+                adder(airport).add(count);
+            }
+        }
+        long[] histogram = counts.getRadiusHistogram();
+        for (int bucket = 0; bucket < Math.min(histogram.length, radii.getBucketCount()); bucket++) {
+            radii.add(bucket, histogram[bucket]);
+        }
+    }
+
+    /** the counter of an airport, created if missing */
+    private LongAdder adder(final int airport) {
+        LongAdder adder = airports.get(airport);
+        // a reset may empty the slot again right after a lost race
+        while (adder == null) {
+            LongAdder created = new LongAdder();
+            if (airports.compareAndSet(airport, null, created)) {
+                requestedAirports.incrementAndGet();
+                adder = created;
+            } else {
+                adder = airports.get(airport);
+            }
+        }
+        return adder;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < airports.length(); i++) {
+            reset(i);
+        }
+        radii.reset();
+    }
+}
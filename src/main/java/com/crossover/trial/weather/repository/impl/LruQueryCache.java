@@ -0,0 +1,290 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crossover.trial.weather.repository.QueryCache;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Least recently used answers in access ordered maps, split in segments by key
+ * so lookups of different airports rarely wait on each other. The key packs
+ * the airport id with the number of radius steps, so every radius that rounds
+ * to the same step finds the same answer.
+ * <p>
+ * Every airport has the keys of the answers that list it, kept as an immutable
+ * array replaced with compare-and-set, so a reading update only touches the
+ * answers it affects. It also has the stamp of its last update: an answer
+ * whose airports changed after the query started is dropped right after it is
+ * stored, which covers updates that came before it was registered.
+ *
+ * @author Joao Gatto
+ */
+public class LruQueryCache implements QueryCache {
+
+    /** most segments, a power of two */
+    private static final int SEGMENTS = 16;
+
+    /** fewest answers per segment when there are several */
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private static final long[] NO_KEYS = new long[0];
+
+    private final int maxEntries;
+
+    /** null when nothing is kept */
+    private final Segment[] segments;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** by airport id, the sequence value of its last update */
+    private final AtomicLongArray stamps;
+
+    /** by airport id, the keys of the answers listing it, null when none */
+    private final AtomicReferenceArray<long[]> dependents;
+
+    /** the sequence value of the last clear */
+    private volatile long clearedAt;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries
+     *            the number of answers kept, 0 keeps none
+     */
+    public LruQueryCache(final int maxEntries) {
+        this(AirportCodes.CAPACITY, maxEntries);
+    }
+
+    /**
+     * @param capacity
+     *            the number of airport ids, ids range from 0 to capacity - 1
+     * @param maxEntries
+     *            the number of answers kept, 0 keeps none
+     */
+    public LruQueryCache(final int capacity, final int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Invalid cache size " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.stamps = new AtomicLongArray(capacity);
+        this.dependents = new AtomicReferenceArray<>(capacity);
+        if (maxEntries == 0) {
+            segments = null;
+        } else {
+            // small caches take fewer segments, so that a few busy keys
+            // sharing one do not push each other out
+            int count = Math.max(1, Math.min(SEGMENTS, Integer.highestOneBit(maxEntries / MIN_SEGMENT_SIZE)));
+            segments = new Segment[count];
+            // round up so the segments together hold at least maxEntries
+            int perSegment = (maxEntries + count - 1) / count;
+            for (int i = 0; i < count; i++) {
+                segments[i] = new Segment(perSegment);
+            }
+        }
+    }
+
+    @Override
+    public byte[] get(final int airport, final double radiusKm) {
+        if (segments == null) {
+            misses.increment();
+            return null;
+        }
+        long key = key(airport, radiusKm);
+        Segment segment = segmentOf(key);
+        byte[] answer;
+        synchronized (segment) {
+            answer = segment.get(key);
+        }
+        if (answer == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return answer;
+    }
+
+    @Override
+    public long stamp() {
+        return sequence.get();
+    }
+
+    @Override
+    public boolean put(final int airport, final double radiusKm, final long stamp, final int[] members, final int count,
+            final byte[] body) {
+        if (segments == null || clearedAt > stamp) {
+            return false;
+        }
+        long key = key(airport, radiusKm);
+        for (int i = 0; i < count; i++) {
+            register(members[i], key);
+        }
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            segment.put(key, body);
+        }
+        // an update between the stamp and the registration was missed by
+        // invalidate, look for it now that the answer is visible
+        boolean stale = clearedAt > stamp;
+        for (int i = 0; i < count && !stale; i++) {
+            stale = stamps.get(members[i]) > stamp;
+        }
+        if (stale) {
+            synchronized (segment) {
+                segment.remove(key, body);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void invalidate(final int airport) {
+        if (segments == null) {
+            return;
+        }
+        stamps.set(airport, sequence.incrementAndGet());
+        long[] keys = dependents.getAndSet(airport, null);
+        if (keys == null) {
+            return;
+        }
+        for (long key : keys) {
+            Segment segment = segmentOf(key);
+            synchronized (segment) {
+                if (segment.remove(key) != null) {
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (segments == null) {
+            return;
+        }
+        // before looking at the size, so an answer put meanwhile is dropped
+        // as stale
+        clearedAt = sequence.incrementAndGet();
+        if (size() == 0) {
+            return;
+        }
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        for (int i = 0; i < dependents.length(); i++) {
+            dependents.set(i, null);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        if (segments != null) {
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private void register(final int airport, final long key) {
+        long[] current;
+        long[] next;
+        do {
+            current = dependents.get(airport);
+            long[] keys = current == null ? NO_KEYS : current;
+            for (long known : keys) {
+                if (known == key) {
+                    return;
+                }
+            }
+            // keys of evicted answers pile up on airports that are never
+            // updated, drop them once there are more keys than answers
+            next = keys.length >= maxEntries ? held(keys, 1) : Arrays.copyOf(keys, keys.length + 1);
+            next[next.length - 1] = key;
+        } while (!dependents.compareAndSet(airport, current, next));
+    }
+
+    /** the keys of answers still held, with room for more at the end */
+    private long[] held(final long[] keys, final int extra) {
+        long[] held = new long[keys.length + extra];
+        int count = 0;
+        for (long key : keys) {
+            Segment segment = segmentOf(key);
+            synchronized (segment) {
+                if (segment.containsKey(key)) {
+                    held[count++] = key;
+                }
+            }
+        }
+        return Arrays.copyOf(held, count + extra);
+    }
+
+    private Segment segmentOf(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    /** radii beyond the last step reach every airport */
+    private static long key(final int airport, final double radiusKm) {
+        return (long) airport << 32 | Math.min(Math.round(radiusKm * STEPS_PER_KM), Integer.MAX_VALUE);
+    }
+
+    /** an access ordered map of at most a fixed number of answers */
+    private final class Segment extends LinkedHashMap<Long, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Segment(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, byte[]> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
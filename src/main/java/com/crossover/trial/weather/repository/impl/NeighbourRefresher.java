@@ -0,0 +1,110 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Gives the neighbour lists of a repository to its most requested airports,
+ * again at a fixed delay from a background thread, so requests never wait for
+ * a list to be built.
+ *
+ * @author Joao Gatto
+ */
+public class NeighbourRefresher implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(NeighbourRefresher.class.getName());
+
+    private final DataRepository repository;
+
+    private final long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param repository
+     *            the repository whose lists are refreshed
+     * @param intervalMillis
+     *            the delay between the end of a refresh and the start of the
+     *            next one
+     */
+    public NeighbourRefresher(final DataRepository repository, final long intervalMillis) {
+        this.repository = repository;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Give lists to the airports requested most so far, dropping the others.
+     */
+    public synchronized void refresh() {
+        NeighbourIndex neighbours = repository.getNeighbourIndex();
+        int capacity = neighbours.getCapacity();
+        if (capacity == 0) {
+            return;
+        }
+        // the most requested airports, kept sorted by their count when read
+        Airport[] top = new Airport[capacity];
+        long[] counts = new long[capacity];
+        int[] size = { 0 };
+        repository.getAirports().forEach(airport -> {
+            long count = repository.getRequestCounters().get(AirportCodes.idOf(airport.getIata()));
+            if (count == 0 || size[0] == capacity && count <= counts[capacity - 1]) {
+                return;
+            }
+            int i = size[0] < capacity ? size[0]++ : capacity - 1;
+            for (; i > 0 && counts[i - 1] < count; i--) {
+                top[i] = top[i - 1];
+                counts[i] = counts[i - 1];
+            }
+            top[i] = airport;
+            counts[i] = count;
+        });
+        neighbours.retain(Arrays.copyOf(top, size[0]));
+    }
+
+    /**
+     * Start refreshing in the background.
+     */
+    public synchronized void start() {
+        if (scheduler != null || repository.getNeighbourIndex().getCapacity() == 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "weather-neighbours");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                // keep the schedule, the lists are only a shortcut
+                LOGGER.log(Level.SEVERE, "Cannot refresh the neighbour lists", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop refreshing in the background.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+        if (stopped != null) {
+            stopped.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.AtmosphericStore;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Keeps every reading in one direct buffer outside the heap, one fixed size
+ * record per airport id and {@link DataPointType} ordinal, so stored readings
+ * cost the garbage collector nothing. {@link DataPoint}s are only created when
+ * a caller asks for them; {@link #read(int, DataPointType, Reading)} copies the
+ * raw values instead.
+ * <p>
+ * The records of one airport share a striped {@link StampedLock}: updates take
+ * the write lock, reads are optimistic and only fall back to the read lock if a
+ * write got in the way, so a snapshot never mixes two updates of one type.
+ *
+ * @author Joao Gatto
+ */
+public class OffHeapAtmosphericStore implements AtmosphericStore {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** record layout, all offsets in bytes */
+    private static final int MEAN = 0;
+    private static final int FIRST = 8;
+    private static final int MEDIAN = 16;
+    private static final int LAST = 24;
+    private static final int TIME = 32;
+    private static final int COUNT = 40;
+    private static final int PRESENT = 44;
+    private static final int RECORD_SIZE = 48;
+
+    private static final int AIRPORT_SIZE = RECORD_SIZE * TYPES.length;
+
+    /** number of locks, a power of two */
+    private static final int LOCK_STRIPES = 256;
+
+    private final int capacity;
+
+    /** only absolute gets and puts are used, so threads can share it */
+    private final ByteBuffer records;
+
+    private final StampedLock[] locks = new StampedLock[LOCK_STRIPES];
+
+    public OffHeapAtmosphericStore() {
+        this(AirportCodes.CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the number of airport ids, ids range from 0 to capacity - 1
+     */
+    public OffHeapAtmosphericStore(final int capacity) {
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * AIRPORT_SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    @Override
+    public void update(final int airport, final DataPointType type, final DataPoint dataPoint, final long time) {
+        int offset = offset(airport, type);
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            records.putDouble(offset + MEAN, dataPoint.getMean());
+            records.putDouble(offset + FIRST, dataPoint.getFirst());
+            records.putDouble(offset + MEDIAN, dataPoint.getMedian());
+            records.putDouble(offset + LAST, dataPoint.getLast());
+            records.putLong(offset + TIME, time);
+            records.putInt(offset + COUNT, dataPoint.getCount());
+            records.putInt(offset + PRESENT, 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public AtmosphericInformation get(final int airport) {
+        Reading[] readings = new Reading[TYPES.length];
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = readAll(airport, readings);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = readAll(airport, readings);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found ? toInformation(readings) : null;
+    }
+
+    @Override
+    public boolean read(final int airport, final DataPointType type, final Reading into) {
+        int offset = offset(airport, type);
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = readRecord(offset, into);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = readRecord(offset, into);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void forEach(final Consumer<AtmosphericInformation> action) {
+        for (int airport = 0; airport < capacity; airport++) {
+            AtmosphericInformation ai = get(airport);
+            if (ai != null) {
+                action.accept(ai);
+            }
+        }
+    }
+
+    @Override
+    public void remove(final int airport) {
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            for (DataPointType type : TYPES) {
+                records.putInt(offset(airport, type) + PRESENT, 0);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int airport = 0; airport < capacity; airport++) {
+            remove(airport);
+        }
+    }
+
+    private int offset(final int airport, final DataPointType type) {
+        if (airport < 0 || airport >= capacity) {
+            throw new IllegalArgumentException("Invalid airport id " + airport);
+        }
+        return airport * AIRPORT_SIZE + type.ordinal() * RECORD_SIZE;
+    }
+
+    private StampedLock lockOf(final int airport) {
+        return locks[airport & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Copy one record. Under an optimistic stamp the values may be torn, the
+     * caller validates the stamp before trusting them.
+     */
+    private boolean readRecord(final int offset, final Reading into) {
+        if (records.getInt(offset + PRESENT) == 0) {
+            return false;
+        }
+        into.set(records.getDouble(offset + MEAN), records.getDouble(offset + FIRST),
+                records.getDouble(offset + MEDIAN), records.getDouble(offset + LAST), records.getInt(offset + COUNT),
+                records.getLong(offset + TIME));
+        return true;
+    }
+
+    /** fill readings[ordinal], or null it out when absent */
+    private boolean readAll(final int airport, final Reading[] readings) {
+        boolean found = false;
+        for (DataPointType type : TYPES) {
+            Reading reading = readings[type.ordinal()];
+            if (reading == null) {
+                reading = new Reading();
+            }
+            if (readRecord(offset(airport, type), reading)) {
+                readings[type.ordinal()] = reading;
+                found = true;
+            } else {
+                readings[type.ordinal()] = null;
+            }
+        }
+        return found;
+    }
+
+    private static AtmosphericInformation toInformation(final Reading[] readings) {
+        AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder();
+        long lastUpdateTime = 0;
+        for (DataPointType type : TYPES) {
+            Reading reading = readings[type.ordinal()];
+            if (reading != null) {
+                builder.with(type, reading.toDataPoint());
+                lastUpdateTime = Math.max(lastUpdateTime, reading.getTime());
+            }
+        }
+        return builder.withLastUpdateTime(lastUpdateTime).build();
+    }
+}
@@ -0,0 +1,189 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.repository.HistoryStore;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Keeps every series in a ring of primitive arrays, allocated on its first
+ * reading and never resized: {@value #SAMPLE_SIZE} bytes per sample, so
+ * airports &times; types &times; samples &times; {@value #SAMPLE_SIZE} bytes
+ * bounds the whole store.
+ * <p>
+ * Like {@link OffHeapAtmosphericStore}, the series of one airport share a
+ * striped {@link StampedLock}; a read holds the read lock while it copies,
+ * which takes at most one pass over the ring.
+ *
+ * @author Joao Gatto
+ */
+public class RingHistoryStore implements HistoryStore {
+
+    /** bytes per sample: a time, four values and a count */
+    public static final int SAMPLE_SIZE = 8 + 4 * 8 + 4;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** number of locks, a power of two */
+    private static final int LOCK_STRIPES = 256;
+
+    /** value layout of a sample */
+    private static final int MEAN = 0;
+    private static final int FIRST = 1;
+    private static final int MEDIAN = 2;
+    private static final int LAST = 3;
+    private static final int VALUES = 4;
+
+    private final int capacity;
+
+    private final int samples;
+
+    /** indexed by airport * TYPES.length + type ordinal, null until used */
+    private final AtomicReferenceArray<Series> series;
+
+    private final StampedLock[] locks = new StampedLock[LOCK_STRIPES];
+
+    /**
+     * @param samples
+     *            the number of samples kept per series, 0 keeps nothing
+     */
+    public RingHistoryStore(final int samples) {
+        this(AirportCodes.CAPACITY, samples);
+    }
+
+    /**
+     * @param capacity
+     *            the number of airport ids, ids range from 0 to capacity - 1
+     * @param samples
+     *            the number of samples kept per series, 0 keeps nothing
+     */
+    public RingHistoryStore(final int capacity, final int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("Invalid history size " + samples);
+        }
+        this.capacity = capacity;
+        this.samples = samples;
+        this.series = new AtomicReferenceArray<>(capacity * TYPES.length);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return samples;
+    }
+
+    @Override
+    public void record(final int airport, final DataPointType type, final DataPoint dataPoint, final long time) {
+        if (samples == 0) {
+            return;
+        }
+        int index = index(airport, type);
+        Series ring = series.get(index);
+        while (ring == null) {
+            Series created = new Series(samples);
+            ring = series.compareAndSet(index, null, created) ? created : series.get(index);
+        }
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            ring.add(time, dataPoint);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void read(final int airport, final DataPointType type, final long from, final long to, final History into) {
+        Series ring = series.get(index(airport, type));
+        if (ring == null) {
+            return;
+        }
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.readLock();
+        try {
+            ring.copy(from, to, into);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void remove(final int airport) {
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            for (DataPointType type : TYPES) {
+                series.set(index(airport, type), null);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int airport = 0; airport < capacity; airport++) {
+            remove(airport);
+        }
+    }
+
+    private int index(final int airport, final DataPointType type) {
+        if (airport < 0 || airport >= capacity) {
+            throw new IllegalArgumentException("Invalid airport id " + airport);
+        }
+        return airport * TYPES.length + type.ordinal();
+    }
+
+    private StampedLock lockOf(final int airport) {
+        return locks[airport & (LOCK_STRIPES - 1)];
+    }
+
+    /** one series, guarded by the lock of its airport */
+    private static final class Series {
+
+        private final long[] times;
+
+        private final double[] values;
+
+        private final int[] counts;
+
+        /** samples ever added, the next one goes to added % length */
+        private long added;
+
+        Series(final int samples) {
+            times = new long[samples];
+            values = new double[samples * VALUES];
+            counts = new int[samples];
+        }
+
+        void add(final long time, final DataPoint dataPoint) {
+            int slot = (int) (added % times.length);
+            times[slot] = time;
+            values[slot * VALUES + MEAN] = dataPoint.getMean();
+            values[slot * VALUES + FIRST] = dataPoint.getFirst();
+            values[slot * VALUES + MEDIAN] = dataPoint.getMedian();
+            values[slot * VALUES + LAST] = dataPoint.getLast();
+            counts[slot] = dataPoint.getCount();
+            added++;
+        }
+
+        void copy(final long from, final long to, final History into) {
+            int size = (int) Math.min(added, times.length);
+            int oldest = (int) ((added - size) % times.length);
+            for (int i = 0; i < size; i++) {
+                int slot = (oldest + i) % times.length;
+                long time = times[slot];
+                if (time >= from && time < to) {
+                    int v = slot * VALUES;
+                    into.add(time, values[v + MEAN], values[v + FIRST], values[v + MEDIAN], values[v + LAST], counts[slot]);
+                }
+            }
+        }
+    }
+}
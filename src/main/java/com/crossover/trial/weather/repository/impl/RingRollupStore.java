@@ -0,0 +1,227 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.Resolution;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.repository.RollupStore;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Keeps the buckets of every series and resolution in a ring of primitive
+ * arrays indexed by bucket number modulo the ring size, so a reading updates
+ * one bucket per resolution in place and a read walks at most one ring. A
+ * series takes {@value #BUCKET_SIZE} bytes per bucket, allocated on its first
+ * reading and never resized.
+ * <p>
+ * Like {@link RingHistoryStore}, the series of one airport share a striped
+ * {@link StampedLock}.
+ *
+ * @author Joao Gatto
+ */
+public class RingRollupStore implements RollupStore {
+
+    /** bytes per bucket: its number, min, max, sum and count */
+    public static final int BUCKET_SIZE = 5 * 8;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    /** number of locks, a power of two */
+    private static final int LOCK_STRIPES = 256;
+
+    /** bucket number of an empty slot */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int capacity;
+
+    /** by resolution ordinal */
+    private final int[] buckets;
+
+    /** indexed by airport * TYPES.length + type ordinal, null until used */
+    private final AtomicReferenceArray<Series> series;
+
+    private final StampedLock[] locks = new StampedLock[LOCK_STRIPES];
+
+    /**
+     * @param buckets
+     *            the number of buckets kept per series at each
+     *            {@link Resolution}, finest first
+     */
+    public RingRollupStore(final int[] buckets) {
+        this(AirportCodes.CAPACITY, buckets);
+    }
+
+    /**
+     * @param capacity
+     *            the number of airport ids, ids range from 0 to capacity - 1
+     * @param buckets
+     *            the number of buckets kept per series at each
+     *            {@link Resolution}, finest first
+     */
+    public RingRollupStore(final int capacity, final int[] buckets) {
+        if (buckets.length != RESOLUTIONS.length) {
+            throw new IllegalArgumentException("Expected " + RESOLUTIONS.length + " bucket counts");
+        }
+        for (int count : buckets) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Invalid bucket count " + count);
+            }
+        }
+        this.capacity = capacity;
+        this.buckets = buckets.clone();
+        this.series = new AtomicReferenceArray<>(capacity * TYPES.length);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    @Override
+    public int getBuckets(final Resolution resolution) {
+        return buckets[resolution.ordinal()];
+    }
+
+    @Override
+    public void record(final int airport, final DataPointType type, final double value, final long time) {
+        int index = index(airport, type);
+        Series rings = series.get(index);
+        while (rings == null) {
+            Series created = new Series(buckets);
+            rings = series.compareAndSet(index, null, created) ? created : series.get(index);
+        }
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            for (Resolution resolution : RESOLUTIONS) {
+                rings.rings[resolution.ordinal()].add(resolution.bucketOf(time), value);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void read(final int airport, final DataPointType type, final Resolution resolution, final long from,
+            final long to, final Rollup into) {
+        Series rings = series.get(index(airport, type));
+        if (rings == null || to <= from) {
+            return;
+        }
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.readLock();
+        try {
+            rings.rings[resolution.ordinal()].copy(resolution, resolution.bucketOf(from), resolution.bucketOf(to - 1),
+                    into);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void remove(final int airport) {
+        StampedLock lock = lockOf(airport);
+        long stamp = lock.writeLock();
+        try {
+            for (DataPointType type : TYPES) {
+                series.set(index(airport, type), null);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int airport = 0; airport < capacity; airport++) {
+            remove(airport);
+        }
+    }
+
+    private int index(final int airport, final DataPointType type) {
+        if (airport < 0 || airport >= capacity) {
+            throw new IllegalArgumentException("Invalid airport id " + airport);
+        }
+        return airport * TYPES.length + type.ordinal();
+    }
+
+    private StampedLock lockOf(final int airport) {
+        return locks[airport & (LOCK_STRIPES - 1)];
+    }
+
+    /** the rings of one series, by resolution ordinal */
+    private static final class Series {
+
+        private final Ring[] rings = new Ring[RESOLUTIONS.length];
+
+        Series(final int[] buckets) {
+            for (int i = 0; i < rings.length; i++) {
+                rings[i] = new Ring(buckets[i]);
+            }
+        }
+    }
+
+    /** the latest buckets of one resolution, guarded by the airport's lock */
+    private static final class Ring {
+
+        private final long[] numbers;
+
+        private final double[] mins;
+
+        private final double[] maxs;
+
+        private final double[] sums;
+
+        private final long[] counts;
+
+        private long latest = EMPTY;
+
+        Ring(final int size) {
+            numbers = new long[size];
+            mins = new double[size];
+            maxs = new double[size];
+            sums = new double[size];
+            counts = new long[size];
+            Arrays.fill(numbers, EMPTY);
+        }
+
+        void add(final long bucket, final double value) {
+            if (latest != EMPTY && bucket <= latest - numbers.length) {
+                // older than anything kept
+                return;
+            }
+            int slot = (int) Math.floorMod(bucket, (long) numbers.length);
+            if (numbers[slot] != bucket) {
+                // the slot held a bucket that has fallen out of the ring
+                numbers[slot] = bucket;
+                mins[slot] = value;
+                maxs[slot] = value;
+                sums[slot] = value;
+                counts[slot] = 1;
+            } else {
+                mins[slot] = Math.min(mins[slot], value);
+                maxs[slot] = Math.max(maxs[slot], value);
+                sums[slot] += value;
+                counts[slot]++;
+            }
+            latest = Math.max(latest, bucket);
+        }
+
+        void copy(final Resolution resolution, final long first, final long last, final Rollup into) {
+            if (latest == EMPTY) {
+                return;
+            }
+            long end = Math.min(last, latest);
+            for (long bucket = Math.max(first, latest - numbers.length + 1); bucket <= end; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) numbers.length);
+                if (numbers[slot] == bucket) {
+                    into.add(bucket * resolution.getMillis(), mins[slot], maxs[slot], sums[slot] / counts[slot],
+                            counts[slot]);
+                }
+            }
+        }
+    }
+}
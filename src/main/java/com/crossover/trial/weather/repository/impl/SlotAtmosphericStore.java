@@ -0,0 +1,143 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.AtmosphericStore;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Gives every airport one atomic slot per {@link DataPointType}, so an update
+ * is a single reference write that never copies or retries against updates of
+ * other types. A slot holds the point together with its time, so a reader
+ * never pairs one update's point with another's time. Snapshots are assembled
+ * on read.
+ *
+ * @author Joao Gatto
+ */
+public class SlotAtmosphericStore implements AtmosphericStore {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** reads give up on a perfectly still view after this many attempts */
+    private static final int MAX_READ_ATTEMPTS = 8;
+
+    /** indexed by airport id, created on the first update */
+    private final AtomicReferenceArray<Slots> airports = new AtomicReferenceArray<>(AirportCodes.CAPACITY);
+
+    @Override
+    public void update(final int airport, final DataPointType type, final DataPoint dataPoint, final long time) {
+        Slots slots = airports.get(airport);
+        // a remove may empty the slot again right after a lost race
+        while (slots == null) {
+            Slots created = new Slots();
+            slots = airports.compareAndSet(airport, null, created) ? created : airports.get(airport);
+        }
+        slots.samples.set(type.ordinal(), new Sample(dataPoint, time));
+    }
+
+    @Override
+    public AtmosphericInformation get(final int airport) {
+        Slots slots = airports.get(airport);
+        return slots == null ? null : slots.snapshot();
+    }
+
+    @Override
+    public boolean read(final int airport, final DataPointType type, final Reading into) {
+        Slots slots = airports.get(airport);
+        if (slots == null) {
+            return false;
+        }
+        Sample sample = slots.samples.get(type.ordinal());
+        if (sample == null) {
+            return false;
+        }
+        into.set(sample.point, sample.time);
+        return true;
+    }
+
+    @Override
+    public void remove(final int airport) {
+        airports.set(airport, null);
+    }
+
+    @Override
+    public void forEach(final Consumer<AtmosphericInformation> action) {
+        for (int airport = 0; airport < airports.length(); airport++) {
+            Slots slots = airports.get(airport);
+            if (slots != null) {
+                action.accept(slots.snapshot());
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int airport = 0; airport < airports.length(); airport++) {
+            airports.set(airport, null);
+        }
+    }
+
+    /**
+     * The readings of one airport, indexed by {@link DataPointType#ordinal()}.
+     */
+    private static final class Slots {
+
+        final AtomicReferenceArray<Sample> samples = new AtomicReferenceArray<>(TYPES.length);
+
+        /**
+         * Read every slot twice and accept the first pass if nothing moved in
+         * between: each slot then held its value over an interval containing
+         * the end of the first pass, so the view existed at that instant.
+         */
+        AtmosphericInformation snapshot() {
+            Sample[] seen = new Sample[TYPES.length];
+            read(seen);
+            for (int attempt = 1; attempt < MAX_READ_ATTEMPTS && !unchanged(seen); attempt++) {
+                read(seen);
+            }
+            AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder();
+            long lastUpdateTime = 0;
+            for (DataPointType type : TYPES) {
+                Sample sample = seen[type.ordinal()];
+                if (sample != null) {
+                    builder.with(type, sample.point);
+                    lastUpdateTime = Math.max(lastUpdateTime, sample.time);
+                }
+            }
+            return builder.withLastUpdateTime(lastUpdateTime).build();
+        }
+
+        private void read(final Sample[] seen) {
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] = samples.get(i);
+            }
+        }
+
+        private boolean unchanged(final Sample[] seen) {
+            for (int i = 0; i < seen.length; i++) {
+                if (samples.get(i) != seen[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** a point with the time it was written, replaced as one */
+    private static final class Sample {
+
+        final DataPoint point;
+
+        final long time;
+
+        Sample(final DataPoint point, final long time) {
+            this.point = point;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.AtmosphericStore;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Keeps one immutable {@link AtmosphericInformation} per airport and replaces
+ * it on every update. Reads are a single array load; every write copies the
+ * whole record.
+ *
+ * @author Joao Gatto
+ */
+public class SnapshotAtmosphericStore implements AtmosphericStore {
+
+    /** indexed by airport id */
+    private final AtomicReferenceArray<AtmosphericInformation> snapshots = new AtomicReferenceArray<>(
+            AirportCodes.CAPACITY);
+
+    @Override
+    public void update(final int airport, final DataPointType type, final DataPoint dataPoint, final long time) {
+        // concurrent collectors for the same airport each build on the latest
+        // snapshot instead of overwriting each other
+        AtmosphericInformation current;
+        AtmosphericInformation next;
+        do {
+            current = snapshots.get(airport);
+            AtmosphericInformation.Builder builder = current == null ? new AtmosphericInformation.Builder()
+                    : new AtmosphericInformation.Builder(current);
+            next = builder.with(type, dataPoint)
+                    .withLastUpdateTime(current == null ? time : Math.max(time, current.getLastUpdateTime())).build();
+        } while (!snapshots.compareAndSet(airport, current, next));
+    }
+
+    @Override
+    public AtmosphericInformation get(final int airport) {
+        return snapshots.get(airport);
+    }
+
+    @Override
+    public boolean read(final int airport, final DataPointType type, final Reading into) {
+        AtmosphericInformation snapshot = snapshots.get(airport);
+        DataPoint dataPoint = snapshot == null ? null : snapshot.get(type);
+        if (dataPoint == null) {
+            return false;
+        }
+        into.set(dataPoint, snapshot.getLastUpdateTime());
+        return true;
+    }
+
+    @Override
+    public void remove(final int airport) {
+        snapshots.set(airport, null);
+    }
+
+    @Override
+    public void forEach(final Consumer<AtmosphericInformation> action) {
+        for (int airport = 0; airport < snapshots.length(); airport++) {
+            AtmosphericInformation snapshot = snapshots.get(airport);
+            if (snapshot != null) {
+                action.accept(snapshot);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int airport = 0; airport < snapshots.length(); airport++) {
+            snapshots.set(airport, null);
+        }
+    }
+}
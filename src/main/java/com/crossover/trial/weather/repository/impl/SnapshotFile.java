@@ -0,0 +1,351 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DST;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.repository.RequestCounts;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Saves the airports, readings and query counts of a {@link DataRepository}
+ * to one binary file and loads them back. Saving reads the live structures,
+ * so writers are never held up; every record is consistent on its own, but a
+ * snapshot taken under load may mix records from before and after a
+ * concurrent update.
+ * <p>
+ * The file is little endian: a header, then the airport, reading and
+ * query count sections, each a run of entries that starts with an airport id
+ * and ends with the id {@value #END}, then the radius histogram and a CRC32 of
+ * everything before it. It is written to a temporary file that is moved over
+ * the previous snapshot only once complete and on disk, so a crash leaves
+ * either snapshot whole.
+ *
+ * @author Joao Gatto
+ */
+public final class SnapshotFile {
+
+    /** "WXS1" */
+    private static final int MAGIC = 0x57585331;
+
+    private static final int VERSION = 1;
+
+    /** ends a section, above any airport id */
+    private static final int END = 0xffff;
+
+    /** large enough for any airport entry */
+    static final int BUFFER_SIZE = 128 * 1024;
+
+    /** bytes in a reading entry, its id included */
+    static final int READING_SIZE = 2 + 1 + 4 + 8 * 5;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private static final DST[] DSTS = DST.values();
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Save the repository.
+     *
+     * @param repository
+     *            the repository to save
+     * @param file
+     *            the snapshot, replaced once the new one is complete
+     * @return the size of the snapshot in bytes
+     */
+    public static long write(final DataRepository repository, final Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long size;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.ensure(16);
+            out.buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+
+            writeAirports(repository, out);
+            writeReadings(repository, out);
+            writeRequestCounts(repository.getRequestCounters().snapshot(), out);
+
+            size = out.finish();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    private static void writeAirports(final DataRepository repository, final Output out) throws IOException {
+        IOException[] failure = { null };
+        repository.getAirports().forEach(airport -> {
+            if (failure[0] != null) {
+                return;
+            }
+            try {
+                int id = AirportCodes.idOf(airport.getIata());
+                if (!putAirport(out.buffer, id, airport)) {
+                    out.drain();
+                    putAirport(out.buffer, id, airport);
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        out.end();
+    }
+
+    private static void writeReadings(final DataRepository repository, final Output out) throws IOException {
+        Reading reading = new Reading();
+        for (int id = 0; id < AirportCodes.CAPACITY; id++) {
+            for (DataPointType type : TYPES) {
+                if (repository.getAtmosphericStore().read(id, type, reading)) {
+                    out.ensure(READING_SIZE);
+                    putReading(out.buffer, id, type, reading);
+                }
+            }
+        }
+        out.end();
+    }
+
+    private static void writeRequestCounts(final RequestCounts counts, final Output out) throws IOException {
+        for (int id = 0; id < AirportCodes.CAPACITY; id++) {
+            long count = counts.getCount(id);
+            if (count > 0) {
+                out.ensure(2 + 8);
+                out.buffer.putShort((short) id).putLong(count);
+            }
+        }
+        out.end();
+        long[] histogram = counts.getRadiusHistogram();
+        out.ensure(4 + 8 * histogram.length);
+        out.buffer.putInt(histogram.length);
+        for (long count : histogram) {
+            out.buffer.putLong(count);
+        }
+    }
+
+    /**
+     * Replace the content of the repository with a snapshot.
+     *
+     * @param file
+     *            the snapshot
+     * @param repository
+     *            the repository to fill, cleared first
+     * @return the time the snapshot was taken, in milliseconds since UTC epoch
+     * @throws IOException
+     *             if the file cannot be read or is not a whole snapshot, the
+     *             repository is then left empty
+     */
+    public static long read(final Path file, final DataRepository repository) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        repository.clear();
+        try {
+            if (buffer.limit() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a weather snapshot: " + file);
+            }
+            checkCrc(buffer, file);
+            long time = buffer.getLong();
+            readAirports(buffer, repository);
+            repository.getQueryCache().clear();
+            readReadings(buffer, repository);
+            readRequestCounts(buffer, repository);
+            repository.getModificationCount().increment();
+            return time;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            repository.clear();
+            throw new IOException("Corrupt weather snapshot: " + file, e);
+        } catch (IOException e) {
+            repository.clear();
+            throw e;
+        }
+    }
+
+    private static void checkCrc(final ByteBuffer buffer, final Path file) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(buffer.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException("Corrupt weather snapshot, checksum mismatch: " + file);
+        }
+    }
+
+    private static void readAirports(final ByteBuffer buffer, final DataRepository repository) {
+        int id;
+        while ((id = buffer.getShort() & 0xffff) != END) {
+            repository.putAirport(id, getAirport(buffer, id), false);
+        }
+    }
+
+    private static void readReadings(final ByteBuffer buffer, final DataRepository repository) {
+        Reading reading = new Reading();
+        int id;
+        while ((id = buffer.getShort() & 0xffff) != END) {
+            DataPointType type = getReading(buffer, reading);
+            if (repository.getAirports().get(id) == null) {
+                throw new IllegalArgumentException("Reading of unknown airport " + id);
+            }
+            repository.getAtmosphericStore().update(id, type, reading.toDataPoint(), reading.getTime());
+            repository.getRecentUpdates().record(id, reading.getTime());
+        }
+    }
+
+    private static void readRequestCounts(final ByteBuffer buffer, final DataRepository repository) throws IOException {
+        long[] airportCounts = new long[AirportCodes.CAPACITY];
+        int id;
+        while ((id = buffer.getShort() & 0xffff) != END) {
+            airportCounts[id] = buffer.getLong();
+        }
+        long[] histogram = new long[buffer.getInt()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = buffer.getLong();
+        }
+        if (buffer.remaining() != 4) {
+            throw new IOException("Unexpected content at the end of the weather snapshot");
+        }
+        repository.getRequestCounters().restore(new RequestCounts(airportCounts, histogram));
+    }
+
+    /**
+     * Put an airport entry, also used by the {@link WriteAheadLog}.
+     *
+     * @return false, with the buffer position unchanged, if the entry does not
+     *         fit in the buffer
+     */
+    static boolean putAirport(final ByteBuffer buffer, final int id, final Airport airport) {
+        int start = buffer.position();
+        try {
+            buffer.putShort((short) id);
+            buffer.putDouble(airport.getCoordinate().getLatitude());
+            buffer.putDouble(airport.getCoordinate().getLongitude());
+            buffer.putDouble(airport.getAltitude());
+            buffer.putInt(airport.getTimezone());
+            buffer.put((byte) (airport.getDst() == null ? DST.U : airport.getDst()).ordinal());
+            putString(buffer, airport.getIcao());
+            putString(buffer, airport.getCity());
+            putString(buffer, airport.getCountry());
+            return true;
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * Read the rest of an airport entry, after its id.
+     */
+    static Airport getAirport(final ByteBuffer buffer, final int id) {
+        return new Airport.Builder().withIata(AirportCodes.codeOf(id)).withLatitude(buffer.getDouble())
+                .withLongitude(buffer.getDouble()).withAltitude(buffer.getDouble()).withTimezone(buffer.getInt())
+                .withDst(DSTS[buffer.get()]).withIcao(getString(buffer)).withCity(getString(buffer))
+                .withCountry(getString(buffer)).build();
+    }
+
+    /**
+     * Put a reading entry of {@link #READING_SIZE} bytes, also used by the
+     * {@link WriteAheadLog}.
+     */
+    static void putReading(final ByteBuffer buffer, final int id, final DataPointType type, final Reading reading) {
+        buffer.putShort((short) id).put((byte) type.ordinal()).putInt(reading.getCount()).putDouble(reading.getMean())
+                .putDouble(reading.getFirst()).putDouble(reading.getMedian()).putDouble(reading.getLast())
+                .putLong(reading.getTime());
+    }
+
+    /**
+     * Read the rest of a reading entry, after its id.
+     *
+     * @return the type of the reading
+     */
+    static DataPointType getReading(final ByteBuffer buffer, final Reading into) {
+        DataPointType type = TYPES[buffer.get()];
+        int count = buffer.getInt();
+        into.set(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), count, buffer.getLong());
+        return type;
+    }
+
+    private static void putString(final ByteBuffer buffer, final String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long for a snapshot: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** buffers writes to the channel and keeps the checksum of what went out */
+    private static final class Output {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        private final CRC32 crc = new CRC32();
+
+        private long written;
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** make room for the next bytes */
+        void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        /** closes a section */
+        void end() throws IOException {
+            ensure(2);
+            buffer.putShort((short) END);
+        }
+
+        /** writes the checksum and what is left */
+        long finish() throws IOException {
+            drain();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            return written;
+        }
+
+        void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
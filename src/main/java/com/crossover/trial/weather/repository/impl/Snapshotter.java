@@ -0,0 +1,196 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.crossover.trial.weather.repository.DataRepository;
+
+/**
+ * Keeps a {@link SnapshotFile} of a repository: loads it on start and
+ * rewrites it at a fixed delay from a background thread, skipping the write
+ * when nothing changed since the last one. With a {@link WriteAheadLog}, every
+ * snapshot also drops the log segments it covers.
+ * <p>
+ * A snapshot that cannot be loaded is moved aside rather than overwritten,
+ * and the log is then kept whole: its segments are what the moved file needs
+ * to be brought up to date, should it be repaired.
+ *
+ * @author Joao Gatto
+ */
+public class Snapshotter implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(Snapshotter.class.getName());
+
+    /** appended to the name of a snapshot that could not be loaded */
+    public static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private final DataRepository repository;
+
+    private final Path file;
+
+    private final long intervalMillis;
+
+    private final WriteAheadLog log;
+
+    private ScheduledExecutorService scheduler;
+
+    /** modification count covered by the file, -1 if unknown */
+    private long savedModificationCount = -1;
+
+    /** queries counted in the file, which do not bump the modification count */
+    private long savedQueryCount = -1;
+
+    /** false once a snapshot failed to load, log segments are then kept */
+    private boolean compact = true;
+
+    /**
+     * @param repository
+     *            the repository to save
+     * @param file
+     *            the snapshot file
+     * @param intervalMillis
+     *            the delay between the end of a snapshot and the start of the
+     *            next one
+     */
+    public Snapshotter(final DataRepository repository, final Path file, final long intervalMillis) {
+        this(repository, file, intervalMillis, null);
+    }
+
+    /**
+     * @param log
+     *            the log to compact after every snapshot, or null
+     */
+    public Snapshotter(final DataRepository repository, final Path file, final long intervalMillis,
+            final WriteAheadLog log) {
+        this.repository = repository;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.log = log;
+    }
+
+    /**
+     * Load the snapshot into the repository, if there is one. A snapshot that
+     * cannot be loaded is renamed with {@value #CORRUPT_SUFFIX} and the
+     * repository left empty; log segments are no longer deleted from then on.
+     *
+     * @return true if a snapshot was loaded
+     * @throws IOException
+     *             if the snapshot exists but can neither be loaded nor moved
+     *             aside
+     */
+    public synchronized boolean restore() throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        long time;
+        try {
+            time = SnapshotFile.read(file, repository);
+        } catch (IOException e) {
+            Path aside = moveAside();
+            compact = false;
+            LOGGER.log(Level.SEVERE, "Cannot restore snapshot, moved it to " + aside
+                    + " and keeping the log uncompacted", e);
+            return false;
+        }
+        savedModificationCount = repository.getModificationCount().sum();
+        savedQueryCount = queryCount();
+        LOGGER.info(String.format("Restored %d airports from a snapshot of %tc in %d ms", repository.getAirports().size(),
+                time, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return true;
+    }
+
+    /**
+     * Save the repository now, unless it did not change since the last save.
+     *
+     * @return true if a snapshot was written
+     */
+    public synchronized boolean snapshot() throws IOException {
+        // read before saving, so changes made while saving trigger the next one
+        long modificationCount = repository.getModificationCount().sum();
+        long queryCount = queryCount();
+        if (modificationCount == savedModificationCount && queryCount == savedQueryCount) {
+            return false;
+        }
+        long start = System.nanoTime();
+        // the older segments only hold changes the snapshot will see
+        long segment = log == null ? 0 : log.roll();
+        long size = SnapshotFile.write(repository, file);
+        savedModificationCount = modificationCount;
+        savedQueryCount = queryCount;
+        if (log != null && compact) {
+            log.deleteBefore(segment);
+        }
+        LOGGER.fine(String.format("Wrote a %d byte snapshot in %d ms", size,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return true;
+    }
+
+    /** every query lands in one radius bucket, so their sum counts queries */
+    private long queryCount() {
+        long count = 0;
+        for (long bucket : repository.getRequestCounters().radiusHistogram()) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /** rename the snapshot to the first free name with the corrupt suffix */
+    private Path moveAside() throws IOException {
+        Path aside = file.resolveSibling(file.getFileName() + CORRUPT_SUFFIX);
+        for (int i = 2; Files.exists(aside); i++) {
+            aside = file.resolveSibling(file.getFileName() + CORRUPT_SUFFIX + "." + i);
+        }
+        return Files.move(file, aside);
+    }
+
+    /**
+     * Start saving in the background.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "weather-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                // keep the schedule, the next attempt may succeed
+                LOGGER.log(Level.SEVERE, "Cannot write snapshot " + file, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop saving in the background and save a last time.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+        if (stopped != null) {
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+    }
+}
@@ -0,0 +1,557 @@
+package com.crossover.trial.weather.repository.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.ChangeLog;
+import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * An append-only log of the changes made since the last snapshot, so a crash
+ * loses at most what was not yet synced to disk.
+ * <p>
+ * Request threads only put changes on a lock-free queue. A single writer
+ * thread takes everything queued, writes it with one call and syncs it, so
+ * one sync covers all the changes that arrived while the previous one ran.
+ * Syncing either follows every batch or, to trade a short window of loss for
+ * fewer syncs, happens at most once per interval. Changes are acknowledged
+ * before they are on disk either way. The writer keeps every change until it
+ * is synced: after a failed write or sync it writes them all again, to a new
+ * segment, once a second until that succeeds.
+ * <p>
+ * The log is a directory of numbered segments. A record is a kind byte, the
+ * entry as in a {@link SnapshotFile} and a CRC32 of both, so a record torn by
+ * a crash ends the replay of its segment. Records hold whole values, which
+ * makes replaying them twice harmless. {@link Snapshotter} starts a segment
+ * before each snapshot and deletes the older ones once it is saved: they
+ * only hold changes made before the snapshot started.
+ *
+ * @author Joao Gatto
+ */
+public class WriteAheadLog implements ChangeLog, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+
+    /** sync after every batch */
+    public static final long SYNC_EVERY_BATCH = 0;
+
+    /** "WXL1" */
+    private static final int MAGIC = 0x57584c31;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte AIRPORT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte READING = 3;
+
+    private static final String SUFFIX = ".wal";
+
+    /** ends a batch early so a busy queue cannot hold off syncs or rolls */
+    private static final int BATCH_SIZE = SnapshotFile.BUFFER_SIZE / 2;
+
+    /** the wait before writing again after a failure */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path directory;
+
+    private final long syncNanos;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+
+    /** guards the segment, held by the writer for a whole batch */
+    private final Object lock = new Object();
+
+    private FileChannel channel;
+
+    private long segment;
+
+    private Thread writer;
+
+    private volatile boolean parked;
+
+    /**
+     * Changes taken from the queue and not yet synced, oldest first, owned by
+     * the writer. They are written again to a new segment if a write or sync
+     * fails.
+     */
+    private final List<Entry> pending = new ArrayList<>();
+
+    /** the number of pending changes written to the current segment */
+    private int written;
+
+    /** set when a write or sync failed, the writer then opens a new segment */
+    private boolean broken;
+
+    private volatile boolean closed;
+
+    /**
+     * @param directory
+     *            the directory of the segments, created if missing
+     * @param syncMillis
+     *            the longest time written changes may wait for a sync, or
+     *            {@link #SYNC_EVERY_BATCH}
+     */
+    public WriteAheadLog(final Path directory, final long syncMillis) {
+        this.directory = directory;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+    }
+
+    /**
+     * Apply the logged changes to the repository, oldest first. Call before
+     * {@link #start()}, after loading the snapshot if there is one.
+     *
+     * @return the number of records applied
+     */
+    public int replay(final DataRepository repository) throws IOException {
+        int applied = 0;
+        for (long number : segments()) {
+            applied += replay(path(number), repository);
+            segment = Math.max(segment, number);
+        }
+        if (applied > 0) {
+            repository.getQueryCache().clear();
+            repository.getModificationCount().increment();
+        }
+        return applied;
+    }
+
+    private int replay(final Path file, final DataRepository repository) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            LOGGER.warning("Skipping " + file + ", not a weather log");
+            return 0;
+        }
+        Reading reading = new Reading();
+        Reading stored = new Reading();
+        CRC32 crc = new CRC32();
+        int applied = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            try {
+                byte kind = buffer.get();
+                int id = buffer.getShort() & 0xffff;
+                Airport airport = null;
+                DataPointType type = null;
+                if (kind == AIRPORT) {
+                    airport = SnapshotFile.getAirport(buffer, id);
+                } else if (kind == READING) {
+                    type = SnapshotFile.getReading(buffer, reading);
+                } else if (kind != DELETE) {
+                    throw new IllegalArgumentException("Unknown record kind " + kind);
+                }
+                ByteBuffer record = buffer.duplicate();
+                record.position(start).limit(buffer.position());
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    throw new IllegalArgumentException("Checksum mismatch");
+                }
+                apply(repository, kind, id, airport, type, reading, stored);
+                applied++;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                // a crash while appending leaves a torn record at the end
+                LOGGER.warning("Ignoring " + (buffer.limit() - start) + " bytes at the end of " + file + ": " + e);
+                break;
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(final DataRepository repository, final byte kind, final int id, final Airport airport,
+            final DataPointType type, final Reading reading, final Reading stored) {
+        switch (kind) {
+        case AIRPORT:
+            repository.putAirport(id, airport, false);
+            break;
+        case DELETE:
+            repository.deleteAirport(id, false);
+            break;
+        default:
+            // keep a newer reading the snapshot caught before it reached the log
+            if (!repository.getAtmosphericStore().read(id, type, stored) || stored.getTime() <= reading.getTime()) {
+                repository.updateReading(id, type, reading.toDataPoint(), reading.getTime(), false);
+            }
+        }
+    }
+
+    /**
+     * Open a new segment and start writing.
+     */
+    public void start() throws IOException {
+        synchronized (lock) {
+            if (writer != null) {
+                return;
+            }
+            Files.createDirectories(directory);
+            if (segment == 0) {
+                for (long number : segments()) {
+                    segment = Math.max(segment, number);
+                }
+            }
+            openNextSegment();
+            writer = new Thread(this::writeLoop, "weather-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Sync the current segment and continue in a new one.
+     *
+     * @return the number of the new segment, every change in the older ones
+     *         was applied before this call
+     */
+    public long roll() throws IOException {
+        synchronized (lock) {
+            if (channel == null) {
+                throw new IOException("The log is closed");
+            }
+            channel.force(false);
+            channel.close();
+            return openNextSegment();
+        }
+    }
+
+    /**
+     * Delete the segments a snapshot made redundant.
+     *
+     * @param number
+     *            the segment returned by the {@link #roll()} that preceded
+     *            the snapshot
+     */
+    public void deleteBefore(final long number) throws IOException {
+        for (long older : segments()) {
+            if (older < number) {
+                Files.deleteIfExists(path(older));
+            }
+        }
+    }
+
+    @Override
+    public void airportAdded(final int id, final Airport airport) {
+        add(new Entry(AIRPORT, id, airport, null, null, 0));
+    }
+
+    @Override
+    public void airportDeleted(final int id) {
+        add(new Entry(DELETE, id, null, null, null, 0));
+    }
+
+    @Override
+    public void readingUpdated(final int id, final DataPointType type, final DataPoint dataPoint, final long time) {
+        add(new Entry(READING, id, null, type, dataPoint, time));
+    }
+
+    private void add(final Entry entry) {
+        queue.offer(entry);
+        // pairs with the writer setting parked before it looks at the queue
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Write and sync what is queued, then stop.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread stopped;
+        synchronized (lock) {
+            stopped = writer;
+            closed = true;
+        }
+        if (stopped != null) {
+            LockSupport.unpark(stopped);
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (lock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        Encoder encoder = new Encoder(SnapshotFile.BUFFER_SIZE);
+        long lastSync = System.nanoTime();
+        while (true) {
+            try {
+                boolean wrote = writeBatch(encoder);
+                if (!pending.isEmpty()
+                        && (syncNanos == SYNC_EVERY_BATCH || System.nanoTime() - lastSync >= syncNanos)) {
+                    sync();
+                    lastSync = System.nanoTime();
+                }
+                if (wrote) {
+                    continue;
+                }
+                if (closed) {
+                    // the last changes may have been queued after the poll
+                    if (writeBatch(encoder) || !pending.isEmpty()) {
+                        sync();
+                    }
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                // the segment may end in a torn record, so everything not yet
+                // synced is written again to a new one
+                broken = true;
+                written = 0;
+                if (closed) {
+                    LOGGER.log(Level.SEVERE, "Closing the weather log in " + directory + ", " + pending.size()
+                            + " changes and those still queued were not saved", e);
+                    return;
+                }
+                LOGGER.log(Level.SEVERE, "Cannot write to the weather log in " + directory + ", retrying "
+                        + pending.size() + " changes", e);
+                LockSupport.parkNanos(this, RETRY_NANOS);
+                continue;
+            }
+            parked = true;
+            if (queue.isEmpty() && !closed) {
+                if (!pending.isEmpty()) {
+                    LockSupport.parkNanos(this, syncNanos - (System.nanoTime() - lastSync));
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            parked = false;
+        }
+    }
+
+    /**
+     * Write the pending changes not yet written, then what is queued.
+     *
+     * @return false if there was nothing to write
+     */
+    private boolean writeBatch(final Encoder encoder) throws IOException {
+        if (written == pending.size() && queue.isEmpty()) {
+            return false;
+        }
+        synchronized (lock) {
+            if (broken) {
+                reopen();
+            }
+            for (int i = written; i < pending.size(); i++) {
+                if (!encode(encoder, pending.get(i))) {
+                    pending.remove(i--);
+                }
+            }
+            Entry entry;
+            while (encoder.buffer.position() < BATCH_SIZE && (entry = queue.poll()) != null) {
+                if (encode(encoder, entry)) {
+                    pending.add(entry);
+                }
+            }
+            drain(encoder.buffer);
+            written = pending.size();
+        }
+        return true;
+    }
+
+    /**
+     * Encode an entry, writing out the buffer first if it is full.
+     *
+     * @return false if the entry can never be written
+     */
+    private boolean encode(final Encoder encoder, final Entry entry) throws IOException {
+        try {
+            if (!encoder.encode(entry)) {
+                drain(encoder.buffer);
+                while (!encoder.encode(entry)) {
+                    // larger than an empty buffer
+                    encoder.grow();
+                }
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            // retrying would hold back every later change
+            LOGGER.log(Level.SEVERE, "Cannot log a change of airport " + AirportCodes.codeOf(entry.id)
+                    + ", it is lost on a crash until the next snapshot", e);
+            return false;
+        }
+    }
+
+    /** continue in a new segment after a failed write or sync */
+    private void reopen() throws IOException {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Cannot close the failed segment " + path(segment), e);
+        }
+        openNextSegment();
+        broken = false;
+    }
+
+    private void drain(final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void sync() throws IOException {
+        synchronized (lock) {
+            channel.force(false);
+        }
+        pending.clear();
+        written = 0;
+    }
+
+    private long openNextSegment() throws IOException {
+        segment++;
+        channel = FileChannel.open(path(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return segment;
+    }
+
+    private Path path(final long number) {
+        return directory.resolve(String.format("%019d%s", number, SUFFIX));
+    }
+
+    /** the numbers of the segments in the directory, oldest first */
+    private List<Long> segments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Skipping " + file + ", not a weather log segment");
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /** a change waiting for the writer */
+    private static final class Entry {
+
+        private final byte kind;
+
+        private final int id;
+
+        private final Airport airport;
+
+        private final DataPointType type;
+
+        private final DataPoint dataPoint;
+
+        private final long time;
+
+        Entry(final byte kind, final int id, final Airport airport, final DataPointType type, final DataPoint dataPoint,
+                final long time) {
+            this.kind = kind;
+            this.id = id;
+            this.airport = airport;
+            this.type = type;
+            this.dataPoint = dataPoint;
+            this.time = time;
+        }
+    }
+
+    /** turns entries into records, owned by the writer thread */
+    private static final class Encoder {
+
+        private ByteBuffer buffer;
+
+        private final Reading reading = new Reading();
+
+        private final CRC32 crc = new CRC32();
+
+        Encoder(final int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /** double the capacity of the buffer, which must be empty */
+        void grow() {
+            buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * @return false, with the buffer unchanged, if the record does not fit
+         * @throws IllegalArgumentException
+         *             with the buffer unchanged, if the entry cannot be encoded
+         */
+        boolean encode(final Entry entry) {
+            int start = buffer.position();
+            // keep room for the checksum
+            buffer.limit(buffer.capacity() - 4);
+            try {
+                if (buffer.remaining() < 1 + SnapshotFile.READING_SIZE) {
+                    return false;
+                }
+                buffer.put(entry.kind);
+                if (entry.kind == AIRPORT) {
+                    if (!SnapshotFile.putAirport(buffer, entry.id, entry.airport)) {
+                        buffer.position(start);
+                        return false;
+                    }
+                } else if (entry.kind == READING) {
+                    SnapshotFile.putReading(buffer, entry.id, entry.type, reading.set(entry.dataPoint, entry.time));
+                } else {
+                    buffer.putShort((short) entry.id);
+                }
+            } catch (IllegalArgumentException e) {
+                buffer.position(start);
+                throw e;
+            } finally {
+                buffer.limit(buffer.capacity());
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.position(start).limit(buffer.position());
+            crc.reset();
+            crc.update(record);
+            buffer.putInt((int) crc.getValue());
+            return true;
+        }
+    }
+}
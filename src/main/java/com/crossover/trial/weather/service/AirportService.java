@@ -1,19 +1,38 @@
 package com.crossover.trial.weather.service;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
 
 import com.crossover.trial.weather.exception.WeatherException;
 import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.Coordinate;
 import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.model.WeatherFilter;
+import com.crossover.trial.weather.model.WeatherUpdate;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.repository.QueryCache;
+import com.crossover.trial.weather.repository.RequestCounts;
 
 public interface AirportService {
 
     void addAirport(Airport airport);
 
+    /**
+     * Add or replace several airports in one call.
+     *
+     * @param airports
+     *            the airports to add
+     * @return the number of airports accepted
+     */
+    int addAirports(Collection<Airport> airports);
+
     Airport getAirport(String iataCode);
 
     void deleteAirport(String iata);
@@ -22,17 +41,185 @@ public interface AirportService {
 
     Set<String> getAllAirportCodes();
 
+    /**
+     * Find the airports within a given great-circle distance, using the
+     * repository spatial index rather than a scan of every airport.
+     *
+     * @param centre
+     *            the centre of the search circle
+     * @param radiusKm
+     *            the search radius in km
+     * @return the matching airports, in no particular order
+     */
+    List<Airport> findAirportsWithin(Coordinate centre, double radiusKm);
+
+    /**
+     * Visit the atmospheric information of the airports within a given
+     * great-circle distance as the spatial index finds them, without
+     * collecting them first. Airports without readings are visited with an
+     * empty record, as {@link #getAtmosphericInformationByIataCode(String)}
+     * returns.
+     *
+     * @param centre
+     *            the centre of the search circle
+     * @param radiusKm
+     *            the search radius in km
+     * @param action
+     *            called once per airport with its atmospheric information, in
+     *            no particular order
+     */
+    void forEachAtmosphericInformationWithin(Coordinate centre, double radiusKm,
+            BiConsumer<Airport, AtmosphericInformation> action);
+
+    /**
+     * Visit the atmospheric information of the airports within a given
+     * great-circle distance of an airport that pass a filter, as
+     * {@link #forEachAtmosphericInformationWithin(Coordinate, double, BiConsumer)}
+     * does around its coordinate. Read from the airport's neighbour list,
+     * nearest first, when it has one. The filter is checked on the stored
+     * readings, before the information of an airport is put together.
+     *
+     * @param centre
+     *            the airport at the centre, as returned by
+     *            {@link #getAirport(String)}
+     * @param radiusKm
+     *            the search radius in km
+     * @param filter
+     *            what the readings of an airport must meet,
+     *            {@link WeatherFilter#NONE} to visit all
+     * @param action
+     *            called once per matching airport with its atmospheric
+     *            information
+     */
+    void forEachAtmosphericInformationWithin(Airport centre, double radiusKm, WeatherFilter filter,
+            BiConsumer<Airport, AtmosphericInformation> action);
+
+    /**
+     * Visit the atmospheric information of the airports inside a
+     * latitude/longitude box, as
+     * {@link #forEachAtmosphericInformationWithin(Coordinate, double, BiConsumer)}
+     * does for a circle.
+     *
+     * @param south
+     *            the southern edge in degrees
+     * @param west
+     *            the western edge in degrees, greater than east when the box
+     *            crosses the antimeridian
+     * @param north
+     *            the northern edge in degrees
+     * @param east
+     *            the eastern edge in degrees
+     * @param action
+     *            called once per airport with its atmospheric information, in
+     *            no particular order
+     */
+    void forEachAtmosphericInformationInBox(double south, double west, double north, double east,
+            BiConsumer<Airport, AtmosphericInformation> action);
+
+    /**
+     * Visit the airports closest to a point by great-circle distance, nearest
+     * first, using the repository spatial index rather than sorting every
+     * airport.
+     *
+     * @param centre
+     *            the point to measure from
+     * @param k
+     *            the most airports to visit
+     * @param action
+     *            called with each airport and its distance in km
+     */
+    void forEachNearestAirport(Coordinate centre, int k, ObjDoubleConsumer<Airport> action);
+
     Collection<AtmosphericInformation> getAllAtmosphericInformation();
 
     void updateAtmosphericInformation(String iataCode, String pointType, DataPoint dp) throws WeatherException;
 
-    Map<Airport, AtomicInteger> getRequestCounts();
-
-    Map<Double, AtomicInteger> getRadiusCounts();
+    /**
+     * Apply a batch of collector updates in one pass. Each record is checked
+     * the same way as {@link #updateAtmosphericInformation(String, String,
+     * DataPoint)}; a rejected record does not stop the others.
+     *
+     * @param updates
+     *            the records to apply, in order
+     * @return the positions of the rejected records in the batch
+     */
+    BitSet updateAtmosphericInformation(List<WeatherUpdate> updates);
+
+    /**
+     * @return a copy of the per airport and per radius query counts
+     */
+    RequestCounts getRequestCounts();
+
+    /**
+     * @return query counts per radius bucket, see
+     *         {@link RequestCounts#getRadiusHistogram()}
+     */
+    long[] getRadiusCounts();
 
     AtmosphericInformation getAtmosphericInformationByIataCode(String iataCode);
 
-    AtomicInteger getRequestCount(String iataCode);
+    /**
+     * @return the encoded answers of radius queries, kept until a reading of
+     *         an airport they list changes
+     */
+    QueryCache getQueryCache();
+
+    /**
+     * @return the sorted neighbour lists of the most requested airports
+     */
+    NeighbourIndex getNeighbourIndex();
+
+    /**
+     * Past readings of one airport and type.
+     *
+     * @param iataCode
+     *            the airport code
+     * @param pointType
+     *            the {@link com.crossover.trial.weather.model.DataPointType}
+     *            name, in any case
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch
+     * @param to
+     *            the end of the range, exclusive
+     * @return the readings in the order they were recorded, none for an
+     *         unknown airport
+     * @throws IllegalArgumentException
+     *             if the point type is unknown
+     */
+    History getHistory(String iataCode, String pointType, long from, long to);
+
+    /**
+     * Aggregates of the readings of one airport and type. The resolution is
+     * the finest one that still holds the start of the range and covers the
+     * range in at most the given number of buckets, so the answer is only as
+     * coarse as the range and budget require; days when none does.
+     *
+     * @param iataCode
+     *            the airport code
+     * @param pointType
+     *            the {@link com.crossover.trial.weather.model.DataPointType}
+     *            name, in any case
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since UTC
+     *            epoch
+     * @param to
+     *            the end of the range, exclusive
+     * @param maxPoints
+     *            the most buckets the range may take
+     * @return the buckets that received readings, none for an unknown airport
+     * @throws IllegalArgumentException
+     *             if the point type is unknown, the range empty or the budget
+     *             below 1
+     */
+    Rollup getRollup(String iataCode, String pointType, long from, long to, int maxPoints);
+
+    /**
+     * @param iataCode
+     *            the airport code
+     * @return the number of queries made for the airport
+     */
+    long getRequestCount(String iataCode);
 
     void updateRequestFrequency(String iata, Double radius);
 
@@ -0,0 +1,18 @@
+package com.crossover.trial.weather.service;
+
+/**
+ * Service health statistics, as reported by the query ping.
+ *
+ * @author Joao Gatto
+ */
+public interface HealthService {
+
+    /**
+     * @return a json document with the number of airports updated in the
+     *         last day ("datasize"), the fraction of queries per airport
+     *         ("iata_freq") and the query count per 10 KM radius bucket
+     *         ("radius_freq")
+     */
+    String ping();
+
+}
@@ -1,34 +1,101 @@
 package com.crossover.trial.weather.service.impl;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
 import java.util.logging.Logger;
 
 import com.crossover.trial.weather.exception.WeatherException;
 import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.Coordinate;
 import com.crossover.trial.weather.model.DataPoint;
 import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.model.Resolution;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.model.WeatherFilter;
+import com.crossover.trial.weather.model.WeatherUpdate;
+import com.crossover.trial.weather.repository.AtmosphericStore;
 import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.NeighbourIndex;
+import com.crossover.trial.weather.repository.QueryCache;
+import com.crossover.trial.weather.repository.Reading;
+import com.crossover.trial.weather.repository.RequestCounts;
+import com.crossover.trial.weather.repository.RollupStore;
 import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
 import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.utils.AirportCodes;
 
 public class AirportServiceImpl implements AirportService {
 
     private static final Logger LOGGER = Logger.getLogger(AirportServiceImpl.class.getName());
 
+    /** returned for airports without readings, safe to share as it is immutable */
+    private static final AtmosphericInformation NO_INFORMATION = new AtmosphericInformation.Builder().build();
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** more airports than this are added with the neighbour lists suspended */
+    private static final int NEIGHBOUR_BATCH = 16;
+
     private DataRepository dataRepository = DataRepositoryImpl.getInstance();
 
     @Override
     public void addAirport(final Airport airport) {
+        if (put(airport)) {
+            dataRepository.getQueryCache().clear();
+            dataRepository.getModificationCount().increment();
+        }
+    }
+
+    @Override
+    public int addAirports(final Collection<Airport> airports) {
+        int added = 0;
+        // one build per list after the batch, rather than a copy per airport
+        NeighbourIndex neighbours = dataRepository.getNeighbourIndex();
+        boolean suspend = airports.size() > NEIGHBOUR_BATCH;
+        if (suspend) {
+            neighbours.suspend();
+        }
+        try {
+            for (Airport airport : airports) {
+                if (put(airport)) {
+                    added++;
+                }
+            }
+        } finally {
+            if (suspend) {
+                neighbours.resume();
+            }
+        }
+        // once for the batch, a clear touches every airport id
+        if (added > 0) {
+            dataRepository.getQueryCache().clear();
+        }
+        dataRepository.getModificationCount().increment();
+        return added;
+    }
+
+    private boolean put(final Airport airport) {
         if (airport == null || airport.getIata() == null) {
             LOGGER.severe("Cannot save airport");
-            return;
+            return false;
+        }
+        int id = AirportCodes.idOf(airport.getIata());
+        if (id == AirportCodes.INVALID) {
+            LOGGER.severe("Invalid IATA code " + airport.getIata());
+            return false;
         }
-        dataRepository.getAirportData().put(airport.getIata(), airport);
+        dataRepository.putAirport(id, airport, true);
+        return true;
     }
 
     @Override
@@ -37,31 +104,124 @@ public class AirportServiceImpl implements AirportService {
             LOGGER.severe("iataCode is null");
             return null;
         }
-        return dataRepository.getAirportData().get(iataCode);
+        int id = AirportCodes.idOf(iataCode);
+        return id == AirportCodes.INVALID ? null : dataRepository.getAirports().get(id);
     }
 
     @Override
     public Collection<Airport> getAllAirports() {
-        return dataRepository.getAirportData().values();
+        List<Airport> result = new ArrayList<>();
+        dataRepository.getAirports().forEach(result::add);
+        return result;
     }
 
     public Set<String> getAllAirportCodes() {
-        return dataRepository.getAirportData().keySet();
+        Set<String> result = new HashSet<>();
+        dataRepository.getAirports().forEach(airport -> result.add(airport.getIata()));
+        return result;
+    }
+
+    @Override
+    public List<Airport> findAirportsWithin(final Coordinate centre, final double radiusKm) {
+        if (centre == null) {
+            LOGGER.severe("centre is null");
+            return Collections.emptyList();
+        }
+        List<Airport> result = new ArrayList<>();
+        dataRepository.getSpatialIndex().forEachWithin(centre, radiusKm, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachAtmosphericInformationWithin(final Coordinate centre, final double radiusKm,
+            final BiConsumer<Airport, AtmosphericInformation> action) {
+        if (centre == null) {
+            LOGGER.severe("centre is null");
+            return;
+        }
+        dataRepository.getSpatialIndex().forEachWithin(centre, radiusKm, airport -> {
+            AtmosphericInformation ai = dataRepository.getAtmosphericStore().get(AirportCodes.idOf(airport.getIata()));
+            action.accept(airport, ai == null ? NO_INFORMATION : ai);
+        });
+    }
+
+    @Override
+    public void forEachAtmosphericInformationWithin(final Airport centre, final double radiusKm,
+            final WeatherFilter filter, final BiConsumer<Airport, AtmosphericInformation> action) {
+        if (centre == null) {
+            LOGGER.severe("centre is null");
+            return;
+        }
+        // one holder for the whole scan, filled per reading checked
+        Reading reading = filter.isEmpty() ? null : new Reading();
+        Consumer<Airport> visit = airport -> {
+            int id = AirportCodes.idOf(airport.getIata());
+            if (reading != null && !matches(id, filter, reading)) {
+                return;
+            }
+            AtmosphericInformation ai = dataRepository.getAtmosphericStore().get(id);
+            action.accept(airport, ai == null ? NO_INFORMATION : ai);
+        };
+        if (!dataRepository.getNeighbourIndex().forEachWithin(centre, radiusKm, visit)) {
+            dataRepository.getSpatialIndex().forEachWithin(centre.getCoordinate(), radiusKm, visit);
+        }
+    }
+
+    /**
+     * Check an airport against a filter one stored reading at a time, without
+     * a snapshot of all of them.
+     */
+    private boolean matches(final int id, final WeatherFilter filter, final Reading reading) {
+        AtmosphericStore store = dataRepository.getAtmosphericStore();
+        for (DataPointType type : filter.getTypes()) {
+            if (!store.read(id, type, reading) || !filter.accepts(type, reading.getMean())) {
+                return false;
+            }
+        }
+        if (filter.getUpdatedSince() == 0) {
+            return true;
+        }
+        for (DataPointType type : TYPES) {
+            if (store.read(id, type, reading) && reading.getTime() >= filter.getUpdatedSince()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachAtmosphericInformationInBox(final double south, final double west, final double north,
+            final double east, final BiConsumer<Airport, AtmosphericInformation> action) {
+        dataRepository.getSpatialIndex().forEachInBox(south, west, north, east, airport -> {
+            AtmosphericInformation ai = dataRepository.getAtmosphericStore().get(AirportCodes.idOf(airport.getIata()));
+            action.accept(airport, ai == null ? NO_INFORMATION : ai);
+        });
+    }
+
+    @Override
+    public void forEachNearestAirport(final Coordinate centre, final int k, final ObjDoubleConsumer<Airport> action) {
+        if (centre == null) {
+            LOGGER.severe("centre is null");
+            return;
+        }
+        dataRepository.getSpatialIndex().forEachNearest(centre, k, action);
     }
 
     @Override
     public Collection<AtmosphericInformation> getAllAtmosphericInformation() {
-        return Collections.unmodifiableCollection(dataRepository.getAtmosphericInformation().values());
+        List<AtmosphericInformation> result = new ArrayList<>();
+        dataRepository.getAtmosphericStore().forEach(result::add);
+        return result;
     }
 
     @Override
-    public Map<Airport, AtomicInteger> getRequestCounts() {
-        return Collections.unmodifiableMap(dataRepository.getRequestFrequency());
+    public RequestCounts getRequestCounts() {
+        return dataRepository.getRequestCounters().snapshot();
     }
 
     @Override
-    public Map<Double, AtomicInteger> getRadiusCounts() {
-        return Collections.unmodifiableMap(dataRepository.getRadiusFrequency());
+    public long[] getRadiusCounts() {
+        return dataRepository.getRequestCounters().radiusHistogram();
     }
 
     @Override
@@ -70,17 +230,68 @@ public class AirportServiceImpl implements AirportService {
             LOGGER.severe("iataCode is null");
             return null;
         }
-        return dataRepository.getAtmosphericInformation().getOrDefault(iataCode,
-                new AtmosphericInformation.Builder().build());
+        int id = AirportCodes.idOf(iataCode);
+        AtmosphericInformation ai = id == AirportCodes.INVALID ? null : dataRepository.getAtmosphericStore().get(id);
+        return ai == null ? NO_INFORMATION : ai;
     }
 
     @Override
-    public AtomicInteger getRequestCount(final String iataCode) {
+    public QueryCache getQueryCache() {
+        return dataRepository.getQueryCache();
+    }
+
+    @Override
+    public NeighbourIndex getNeighbourIndex() {
+        return dataRepository.getNeighbourIndex();
+    }
+
+    @Override
+    public History getHistory(final String iataCode, final String pointType, final long from, final long to) {
+        DataPointType type = DataPointType.fromName(pointType);
+        History history = new History();
+        int id = iataCode == null ? AirportCodes.INVALID : AirportCodes.idOf(iataCode);
+        if (id != AirportCodes.INVALID) {
+            dataRepository.getHistory().read(id, type, from, to, history);
+        }
+        return history;
+    }
+
+    @Override
+    public Rollup getRollup(final String iataCode, final String pointType, final long from, final long to,
+            final int maxPoints) {
+        DataPointType type = DataPointType.fromName(pointType);
+        if (to <= from || maxPoints < 1) {
+            throw new IllegalArgumentException("Empty rollup range or budget");
+        }
+        RollupStore rollups = dataRepository.getRollups();
+        long now = System.currentTimeMillis();
+        Resolution[] resolutions = Resolution.values();
+        Resolution chosen = resolutions[resolutions.length - 1];
+        for (Resolution resolution : resolutions) {
+            long buckets = resolution.bucketOf(to - 1) - resolution.bucketOf(from) + 1;
+            long oldest = resolution.bucketOf(now) - rollups.getBuckets(resolution) + 1;
+            if (buckets <= maxPoints && resolution.bucketOf(from) >= oldest) {
+                chosen = resolution;
+                break;
+            }
+        }
+        Rollup rollup = new Rollup();
+        rollup.setResolution(chosen);
+        int id = iataCode == null ? AirportCodes.INVALID : AirportCodes.idOf(iataCode);
+        if (id != AirportCodes.INVALID) {
+            rollups.read(id, type, chosen, from, to, rollup);
+        }
+        return rollup;
+    }
+
+    @Override
+    public long getRequestCount(final String iataCode) {
         if (iataCode == null) {
             LOGGER.severe("iataCode is null");
-            return null;
+            return 0;
         }
-        return dataRepository.getRequestFrequency().getOrDefault(iataCode, new AtomicInteger(0));
+        int id = AirportCodes.idOf(iataCode);
+        return id == AirportCodes.INVALID ? 0 : dataRepository.getRequestCounters().get(id);
     }
 
     @Override
@@ -89,15 +300,48 @@ public class AirportServiceImpl implements AirportService {
             LOGGER.severe("Cannot delete atmospheric information");
             return;
         }
-        dataRepository.getAirportData().remove(iata);
+        int id = AirportCodes.idOf(iata);
+        if (id == AirportCodes.INVALID) {
+            return;
+        }
+        dataRepository.deleteAirport(id, true);
+        dataRepository.getModificationCount().increment();
     }
 
     public void updateAtmosphericInformation(final String iataCode, final String pointType, final DataPoint dp)
             throws WeatherException {
+        long time = System.currentTimeMillis();
+        apply(iataCode, pointType, dp, time);
+        dataRepository.getModificationCount().increment();
+    }
+
+    @Override
+    public BitSet updateAtmosphericInformation(final List<WeatherUpdate> updates) {
+        BitSet rejected = new BitSet();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < updates.size(); i++) {
+            WeatherUpdate update = updates.get(i);
+            try {
+                if (update == null) {
+                    throw new IllegalArgumentException("Update is null");
+                }
+                apply(update.getIata(), update.getPointType(), update.getDataPoint(), time);
+            } catch (IllegalArgumentException | WeatherException e) {
+                LOGGER.fine("Rejected update " + i + ": " + e.getMessage());
+                rejected.set(i);
+            }
+        }
+        dataRepository.getModificationCount().increment();
+        return rejected;
+    }
+
+    private void apply(final String iataCode, final String pointType, final DataPoint dp, final long time)
+            throws WeatherException {
         if (iataCode == null) {
             throw new IllegalArgumentException("IATA code is null");
         }
-        if (dataRepository.getAirportData().get(iataCode) == null) {
+        int id = AirportCodes.idOf(iataCode);
+        if (id == AirportCodes.INVALID) {
             throw new IllegalArgumentException("Unknown IATA code");
         }
         if (pointType == null) {
@@ -107,68 +351,13 @@ public class AirportServiceImpl implements AirportService {
             throw new IllegalArgumentException("DataPoint is null");
         }
 
-        AtmosphericInformation oldValue = getAtmosphericInformationByIataCode(iataCode);
-        dataRepository.getAtmosphericInformation().putIfAbsent(iataCode, oldValue);
-
-        AtmosphericInformation newValue = new AtmosphericInformation.Builder()
-                .withTemperature(oldValue.getTemperature()).withHumidity(oldValue.getHumidity())
-                .withWind(oldValue.getWind()).withPrecipitation(oldValue.getPrecipitation())
-                .withPressure(oldValue.getPressure()).withCloudCover(oldValue.getCloudCover()).build();
-        updateAtmosphericInformation(newValue, pointType, dp);
-        dataRepository.getAtmosphericInformation().replace(iataCode, oldValue, newValue);
-    }
-
-    /**
-     * update atmospheric information with the given data point for the given
-     * point type
-     *
-     * @param ai
-     *            the atmospheric information object to update
-     * @param pointType
-     *            the data point type as a string
-     * @param dp
-     *            the actual data point
-     */
-    private void updateAtmosphericInformation(final AtmosphericInformation ai, final String pointType,
-            final DataPoint dp) throws WeatherException {
-        if (pointType.equalsIgnoreCase(DataPointType.WIND.name())) {
-            if (DataPointType.WIND.validate(dp)) {
-                ai.setWind(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
-        } else if (pointType.equalsIgnoreCase(DataPointType.TEMPERATURE.name())) {
-            if (DataPointType.TEMPERATURE.validate(dp)) {
-                ai.setTemperature(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
-        } else if (pointType.equalsIgnoreCase(DataPointType.HUMIDITY.name())) {
-            if (DataPointType.HUMIDITY.validate(dp)) {
-                ai.setHumidity(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
-        } else if (pointType.equalsIgnoreCase(DataPointType.PRESSURE.name())) {
-            if (DataPointType.PRESSURE.validate(dp)) {
-                ai.setPressure(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
-        } else if (pointType.equalsIgnoreCase(DataPointType.CLOUDCOVER.name())) {
-            if (DataPointType.CLOUDCOVER.validate(dp)) {
-                ai.setCloudCover(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
-        } else if (pointType.equalsIgnoreCase(DataPointType.PRECIPITATION.name())) {
-            if (DataPointType.PRECIPITATION.validate(dp)) {
-                ai.setPrecipitation(dp);
-            } else {
-                throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
-            }
+        DataPointType type = DataPointType.fromName(pointType);
+        if (!type.validate(dp)) {
+            throw new IllegalArgumentException("Wrong parameter " + pointType + " = " + dp.getMean());
+        }
+        if (!dataRepository.updateReading(id, type, dp, time, true)) {
+            throw new IllegalArgumentException("Unknown IATA code");
         }
-        ai.setLastUpdateTime(System.currentTimeMillis());
     }
 
     /**
@@ -180,31 +369,10 @@ public class AirportServiceImpl implements AirportService {
      *            query radius
      */
     public void updateRequestFrequency(final String iata, final Double radius) {
-        Airport airport = dataRepository.getAirportData().get(iata);
-        double r = radius.doubleValue();
-
-        if (airport != null) {
-            AtomicInteger i = dataRepository.getRequestFrequency().get(airport);
-            if (i == null) {
-                dataRepository.getRequestFrequency().putIfAbsent(airport, new AtomicInteger(0));
-                i = dataRepository.getRequestFrequency().get(airport);
-
-            }
-            i.incrementAndGet();
-
-            if (radius < 0) {
-                r = 0d;
-            }
-            if (radius > 1000) {
-                r = 1000d;
-            }
-
-            i = dataRepository.getRadiusFrequency().get(r);
-            if (i == null) {
-                dataRepository.getRadiusFrequency().putIfAbsent(r, new AtomicInteger(0));
-                i = dataRepository.getRadiusFrequency().get(r);
-            }
-            i.incrementAndGet();
+        int id = AirportCodes.idOf(iata);
+        if (id != AirportCodes.INVALID && dataRepository.getAirports().get(id) != null) {
+            // not a modification: a ping may lag queries by up to a second
+            dataRepository.getRequestCounters().record(id, radius);
         }
     }
 
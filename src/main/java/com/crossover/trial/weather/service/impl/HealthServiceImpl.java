@@ -0,0 +1,87 @@
+package com.crossover.trial.weather.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.RequestCounters;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.service.HealthService;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Reads the statistics the repository keeps up to date on every write, so no
+ * reading is scanned to answer a ping. The serialized result is reused until
+ * an airport is added or removed, the data size changes, or it is a second
+ * old, since the query counts move with every query. Reading updates alone
+ * do not rebuild it: under a steady write load the data size rarely moves,
+ * and a rebuild walks every airport.
+ *
+ * @author Joao Gatto
+ */
+public class HealthServiceImpl implements HealthService {
+
+    /** a cached ping is rebuilt after this long even without writes */
+    private static final long MAX_AGE_MILLIS = 1000;
+
+    /** shared since the endpoints create a service per request */
+    private static final AtomicReference<CachedPing> CACHE = new AtomicReference<>();
+
+    private DataRepository dataRepository = DataRepositoryImpl.getInstance();
+
+    @Override
+    public String ping() {
+        long now = System.currentTimeMillis();
+        // read before building, a change during the build then leaves the
+        // cache marked stale
+        long airports = dataRepository.getAirports().getVersion();
+        int dataSize = dataRepository.getRecentUpdates().count(now);
+        CachedPing cached = CACHE.get();
+        if (cached != null && cached.airports == airports && cached.dataSize == dataSize
+                && now - cached.time < MAX_AGE_MILLIS) {
+            return cached.json;
+        }
+        String json = build(dataSize);
+        CACHE.set(new CachedPing(json, airports, dataSize, now));
+        return json;
+    }
+
+    private String build(final int dataSize) {
+        Map<String, Object> retval = new HashMap<>();
+        retval.put("datasize", dataSize);
+
+        RequestCounters counters = dataRepository.getRequestCounters();
+        int requestedAirports = counters.requestedAirports();
+        Map<String, Double> freq = new HashMap<>();
+        // fraction of queries
+        dataRepository.getAirports().forEach(airport -> {
+            long count = counters.get(AirportCodes.idOf(airport.getIata()));
+            freq.put(airport.getIata(), requestedAirports == 0 ? 0.0 : (double) count / requestedAirports);
+        });
+        retval.put("iata_freq", freq);
+
+        // one entry per 10 KM of radius, the last one for 1000 KM and over
+        retval.put("radius_freq", counters.radiusHistogram());
+        return WeatherJson.toJson(retval);
+    }
+
+    private static final class CachedPing {
+
+        final String json;
+
+        final long airports;
+
+        final int dataSize;
+
+        final long time;
+
+        CachedPing(final String json, final long airports, final int dataSize, final long time) {
+            this.json = json;
+            this.airports = airports;
+            this.dataSize = dataSize;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.crossover.trial.weather.utils;
+
+/**
+ * Maps three letter IATA codes to dense integer ids and back. Every code is
+ * its own base-26 number, so the mapping needs no table, never changes and
+ * fits in 15 bits. Codes are upper case only, as they were when airports
+ * were keyed by the code string, so "bos" is not "BOS" but invalid.
+ *
+ * @author Joao Gatto
+ */
+public final class AirportCodes {
+
+    /** number of distinct ids, ids range from 0 to CAPACITY - 1 */
+    public static final int CAPACITY = 26 * 26 * 26;
+
+    /** returned for strings that are not three letter codes */
+    public static final int INVALID = -1;
+
+    private AirportCodes() {
+    }
+
+    /**
+     * @param iata
+     *            a three letter airport code
+     * @return the id of the code, or {@link #INVALID} unless it is three
+     *         upper case letters
+     */
+    public static int idOf(final String iata) {
+        if (iata == null || iata.length() != 3) {
+            return INVALID;
+        }
+        int id = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = iata.charAt(i) - 'A';
+            if (letter < 0 || letter >= 26) {
+                return INVALID;
+            }
+            id = id * 26 + letter;
+        }
+        return id;
+    }
+
+    /**
+     * @param id
+     *            an id returned by {@link #idOf(String)}
+     * @return the upper case code of the id
+     */
+    public static String codeOf(final int id) {
+        if (id < 0 || id >= CAPACITY) {
+            throw new IllegalArgumentException("Invalid airport id " + id);
+        }
+        return new String(new char[] { (char) ('A' + id / 676), (char) ('A' + id / 26 % 26), (char) ('A' + id % 26) });
+    }
+}
@@ -0,0 +1,137 @@
+package com.crossover.trial.weather.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.crossover.trial.weather.json.JsonInput;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DST;
+
+/**
+ * Reads airports from the formats accepted by the bulk upload: airports.dat
+ * CSV lines and JSON objects, one per line.
+ *
+ * @author Joao Gatto
+ */
+public final class AirportParser {
+
+    /** id, name, city, country, iata, icao, lat, long, altitude, timezone, dst */
+    private static final int CSV_FIELDS = 11;
+
+    private static final String CSV_NULL = "\\N";
+
+    private AirportParser() {
+    }
+
+    /**
+     * Parse one airports.dat line. Fields may be quoted, quoted fields may
+     * hold commas and doubled quotes.
+     *
+     * @param line
+     *            the CSV line
+     * @return the airport
+     * @throws IllegalArgumentException
+     *             if the line is malformed or has no valid IATA code
+     */
+    public static Airport parseCsv(final String line) {
+        List<String> p = splitCsv(line);
+        if (p.size() < CSV_FIELDS) {
+            throw new IllegalArgumentException("Expected " + CSV_FIELDS + " fields but found " + p.size());
+        }
+        return new Airport.Builder().withCity(p.get(2)).withCountry(p.get(3)).withIata(iata(p.get(4))).withIcao(p.get(5))
+                .withLatitude(number(p.get(6))).withLongitude(number(p.get(7))).withAltitude(number(p.get(8)))
+                .withTimezone((int) number(p.get(9))).withDst(dst(p.get(10))).build();
+    }
+
+    /**
+     * Parse one JSON object. Coordinates may be given as "latitude" and
+     * "longitude" or, as the collector returns airports, inside a
+     * "coordinate" object.
+     *
+     * @param json
+     *            the JSON object
+     * @return the airport
+     * @throws IllegalArgumentException
+     *             if the object is malformed or has no valid IATA code
+     */
+    public static Airport parseJson(final String json) {
+        Airport airport;
+        try {
+            JsonInput in = new JsonInput(json.getBytes(StandardCharsets.UTF_8));
+            if (in.peek() != JsonInput.Token.BEGIN_OBJECT) {
+                throw new IllegalArgumentException("Not a JSON object");
+            }
+            airport = WeatherJson.readAirport(in);
+            if (in.peek() != JsonInput.Token.END_DOCUMENT) {
+                throw new IllegalArgumentException("Unexpected content after the JSON object");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a JSON object: " + e.getMessage(), e);
+        }
+        iata(airport.getIata());
+        return airport;
+    }
+
+    /**
+     * Split a CSV line, removing the quotes around fields.
+     */
+    static List<String> splitCsv(final String line) {
+        List<String> fields = new ArrayList<>(CSV_FIELDS);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String iata(final String iata) {
+        if (AirportCodes.idOf(iata) == AirportCodes.INVALID) {
+            throw new IllegalArgumentException("Invalid IATA code " + iata);
+        }
+        return iata;
+    }
+
+    private static double number(final String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value, e);
+        }
+    }
+
+    private static DST dst(final String value) {
+        if (value == null || value.isEmpty() || CSV_NULL.equals(value)) {
+            return DST.U;
+        }
+        try {
+            return DST.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown DST " + value, e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.crossover.trial.weather.utils;
+
+import java.util.Arrays;
+
+import com.crossover.trial.weather.model.Coordinate;
+
+/**
+ * An immutable list of coordinates held as parallel primitive arrays of
+ * radians and latitude cosines, so the distance from one origin to every point
+ * is a tight loop over doubles with no allocation and no repeated trigonometry
+ * for the points.
+ *
+ * @author Joao Gatto
+ */
+public final class CoordinateArray {
+
+    public static final CoordinateArray EMPTY = new CoordinateArray(new double[0], new double[0], new double[0]);
+
+    private final double[] latRad;
+
+    private final double[] lonRad;
+
+    private final double[] cosLat;
+
+    private CoordinateArray(final double[] latRad, final double[] lonRad, final double[] cosLat) {
+        this.latRad = latRad;
+        this.lonRad = lonRad;
+        this.cosLat = cosLat;
+    }
+
+    public static CoordinateArray of(final Coordinate... coordinates) {
+        CoordinateArray result = new CoordinateArray(new double[coordinates.length], new double[coordinates.length],
+                new double[coordinates.length]);
+        for (int i = 0; i < coordinates.length; i++) {
+            result.set(i, coordinates[i]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return latRad.length;
+    }
+
+    /**
+     * @return a copy with the coordinate appended at index {@link #size()}
+     */
+    public CoordinateArray append(final Coordinate coordinate) {
+        int size = size();
+        CoordinateArray result = new CoordinateArray(Arrays.copyOf(latRad, size + 1), Arrays.copyOf(lonRad, size + 1),
+                Arrays.copyOf(cosLat, size + 1));
+        result.set(size, coordinate);
+        return result;
+    }
+
+    /**
+     * @return a copy without the coordinate at the given index, later entries
+     *         move down by one
+     */
+    public CoordinateArray remove(final int index) {
+        return new CoordinateArray(without(latRad, index), without(lonRad, index), without(cosLat, index));
+    }
+
+    /**
+     * Distance from the circle centre to every point.
+     *
+     * @param circle
+     *            supplies the origin
+     * @param distances
+     *            receives the distance in KM of point i at index i, must hold
+     *            at least {@link #size()} values
+     */
+    public void distancesFrom(final SearchCircle circle, final double[] distances) {
+        for (int i = 0; i < latRad.length; i++) {
+            distances[i] = circle.distanceTo(latRad[i], lonRad[i], cosLat[i]);
+        }
+    }
+
+    /**
+     * Find the points inside a circle. Points outside the circle's bounding
+     * box are rejected before the haversine is evaluated.
+     *
+     * @param circle
+     *            the search area
+     * @param matches
+     *            receives the indexes of the matching points, must hold at
+     *            least {@link #size()} values
+     * @return the number of matches written
+     */
+    public int indicesWithin(final SearchCircle circle, final int[] matches) {
+        int found = 0;
+        for (int i = 0; i < latRad.length; i++) {
+            if (circle.contains(latRad[i], lonRad[i], cosLat[i])) {
+                matches[found++] = i;
+            }
+        }
+        return found;
+    }
+
+    private void set(final int index, final Coordinate coordinate) {
+        latRad[index] = Math.toRadians(coordinate.getLatitude());
+        lonRad[index] = Math.toRadians(coordinate.getLongitude());
+        cosLat[index] = Math.cos(latRad[index]);
+    }
+
+    private static double[] without(final double[] values, final int index) {
+        double[] result = new double[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+}
@@ -56,7 +56,9 @@ public class CoordinateHelper {
     }
 
     /**
-     * Haversine distance between two airports.
+     * Haversine distance between two airports. For many distances from the
+     * same origin use {@link SearchCircle} and {@link CoordinateArray}
+     * instead.
      *
      * @param coord1
      *            coordinate 1
@@ -65,11 +67,11 @@ public class CoordinateHelper {
      * @return the distance in KM
      */
     public static double calculateDistance(final Coordinate coord1, final Coordinate coord2) {
-        double deltaLat = Math.toRadians(coord2.getLatitude() - coord1.getLatitude());
-        double deltaLon = Math.toRadians(coord2.getLongitude() - coord1.getLongitude());
-        double a = Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2) * Math.cos(coord1.getLatitude()) * Math.cos(coord2
-                .getLatitude());
-        double c = 2 * Math.asin(Math.sqrt(a));
+        double sinLat = Math.sin(Math.toRadians(coord2.getLatitude() - coord1.getLatitude()) / 2);
+        double sinLon = Math.sin(Math.toRadians(coord2.getLongitude() - coord1.getLongitude()) / 2);
+        double a = sinLat * sinLat + sinLon * sinLon * Math.cos(Math.toRadians(coord1.getLatitude())) * Math.cos(Math.toRadians(coord2
+                .getLatitude()));
+        double c = 2 * Math.asin(Math.sqrt(Math.min(1.0, a)));
         return EARTH_RADIUS_KM * c;
     }
 }
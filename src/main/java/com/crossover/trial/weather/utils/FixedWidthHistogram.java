@@ -0,0 +1,90 @@
+package com.crossover.trial.weather.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values in equal width buckets over [0, max]. Values outside the
+ * range are clamped into the first or last bucket, so memory stays fixed no
+ * matter which values are recorded. Recording is one {@link LongAdder}
+ * increment and allocates nothing.
+ *
+ * @author Joao Gatto
+ */
+public final class FixedWidthHistogram {
+
+    private final double bucketWidth;
+
+    private final LongAdder[] buckets;
+
+    /**
+     * @param bucketWidth
+     *            the width of one bucket
+     * @param max
+     *            the highest value counted on its own, it gets the last
+     *            bucket along with every value above it
+     */
+    public FixedWidthHistogram(final double bucketWidth, final double max) {
+        if (!(bucketWidth > 0) || !(max >= 0)) {
+            throw new IllegalArgumentException("Invalid histogram range " + bucketWidth + ", " + max);
+        }
+        this.bucketWidth = bucketWidth;
+        this.buckets = new LongAdder[(int) (max / bucketWidth) + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(final double value) {
+        buckets[bucketOf(value)].increment();
+    }
+
+    /**
+     * Add to the count of a bucket, as when reloading saved counts.
+     *
+     * @param bucket
+     *            the bucket index
+     * @param count
+     *            the number of values to add
+     */
+    public void add(final int bucket, final long count) {
+        buckets[bucket].add(count);
+    }
+
+    /**
+     * @param value
+     *            any value, NaN counts as 0
+     * @return the index of the bucket the value is counted in
+     */
+    public int bucketOf(final double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        return (int) Math.min(buckets.length - 1, value / bucketWidth);
+    }
+
+    public double getBucketWidth() {
+        return bucketWidth;
+    }
+
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * @return the count of every bucket, bucket i covering values from
+     *         i * width up to (i + 1) * width
+     */
+    public long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
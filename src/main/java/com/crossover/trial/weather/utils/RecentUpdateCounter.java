@@ -0,0 +1,155 @@
+package com.crossover.trial.weather.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the ids whose latest update falls inside a sliding time window,
+ * without visiting every id. The window is a ring of time buckets; each holds
+ * the number of ids last updated within it, packed with the bucket's time
+ * slot so a bucket that falls out of the window is recycled on the next write
+ * instead of being swept.
+ * <p>
+ * Precision is one bucket: an update counts until its bucket leaves the
+ * window.
+ *
+ * @author Joao Gatto
+ */
+public final class RecentUpdateCounter {
+
+    private static final int COUNT_BITS = 20;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final long bucketMillis;
+
+    private final int bucketCount;
+
+    /** latest update time per id, 0 for none */
+    private final AtomicLongArray latest;
+
+    /** slot << COUNT_BITS | count, indexed by slot modulo bucketCount */
+    private final AtomicLongArray buckets;
+
+    /**
+     * @param capacity
+     *            number of ids, ids range from 0 to capacity - 1
+     * @param windowMillis
+     *            length of the window
+     * @param bucketMillis
+     *            length of one bucket, must divide the window
+     */
+    public RecentUpdateCounter(final int capacity, final long windowMillis, final long bucketMillis) {
+        if (bucketMillis <= 0 || windowMillis % bucketMillis != 0 || capacity > COUNT_MASK) {
+            throw new IllegalArgumentException("Invalid window " + windowMillis + " / " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = (int) (windowMillis / bucketMillis);
+        this.latest = new AtomicLongArray(capacity);
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * Note an update. Updates older than the latest one of the id change
+     * nothing.
+     *
+     * @param id
+     *            the updated id
+     * @param time
+     *            the update time in milliseconds since UTC epoch
+     */
+    public void record(final int id, final long time) {
+        if (time <= 0) {
+            return;
+        }
+        long slot = time / bucketMillis;
+        // count first, so the count is in place before another thread can
+        // see this time as the one to take back
+        boolean counted = increment(slot);
+        long previous;
+        do {
+            previous = latest.get(id);
+            if (previous >= time) {
+                if (counted) {
+                    decrement(slot);
+                }
+                return;
+            }
+        } while (!latest.compareAndSet(id, previous, time));
+        if (previous > 0) {
+            decrement(previous / bucketMillis);
+        }
+    }
+
+    /**
+     * Forget an id.
+     *
+     * @param id
+     *            the id to forget
+     */
+    public void remove(final int id) {
+        long previous = latest.getAndSet(id, 0);
+        if (previous > 0) {
+            decrement(previous / bucketMillis);
+        }
+    }
+
+    /**
+     * @param now
+     *            the current time in milliseconds since UTC epoch
+     * @return the number of ids updated within the window ending now
+     */
+    public int count(final long now) {
+        long oldestSlot = now / bucketMillis - bucketCount;
+        int count = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            long bucket = buckets.get(i);
+            if (bucket >>> COUNT_BITS > oldestSlot) {
+                count += (int) (bucket & COUNT_MASK);
+            }
+        }
+        return count;
+    }
+
+    public void clear() {
+        for (int i = 0; i < latest.length(); i++) {
+            latest.set(i, 0);
+        }
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * @return false if the bucket already belongs to a later slot, the update
+     *         is then too old to count
+     */
+    private boolean increment(final long slot) {
+        int index = (int) (slot % bucketCount);
+        while (true) {
+            long bucket = buckets.get(index);
+            long bucketSlot = bucket >>> COUNT_BITS;
+            long next;
+            if (bucketSlot == slot) {
+                next = bucket + 1;
+            } else if (bucketSlot < slot) {
+                next = slot << COUNT_BITS | 1;
+            } else {
+                return false;
+            }
+            if (buckets.compareAndSet(index, bucket, next)) {
+                return true;
+            }
+        }
+    }
+
+    /** a no-op once the bucket has been recycled for a later slot */
+    private void decrement(final long slot) {
+        int index = (int) (slot % bucketCount);
+        while (true) {
+            long bucket = buckets.get(index);
+            if (bucket >>> COUNT_BITS != slot || buckets.compareAndSet(index, bucket, bucket - 1)) {
+                return;
+            }
+        }
+    }
+}
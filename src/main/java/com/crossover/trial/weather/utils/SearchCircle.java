@@ -0,0 +1,129 @@
+package com.crossover.trial.weather.utils;
+
+import com.crossover.trial.weather.model.Coordinate;
+
+/**
+ * A great-circle search area. The trigonometry for the centre and the
+ * haversine threshold for the radius are derived once, so testing a point
+ * against the circle costs two sines and no square root or arcsine.
+ *
+ * @author Joao Gatto
+ */
+public final class SearchCircle {
+
+    private final Coordinate centre;
+
+    private final double radiusKm;
+
+    /** centre latitude in radians */
+    private final double latRad;
+
+    /** centre longitude in radians */
+    private final double lonRad;
+
+    /** cosine of the centre latitude */
+    private final double cosLat;
+
+    /** the radius as an angle at the centre of the earth, in radians */
+    private final double angle;
+
+    /** widest longitude difference of any point inside, in radians */
+    private final double maxDeltaLon;
+
+    /** haversine value of the radius, sin^2(angle / 2) */
+    private final double threshold;
+
+    public SearchCircle(final Coordinate centre, final double radiusKm) {
+        this.centre = centre;
+        this.radiusKm = radiusKm;
+        this.latRad = Math.toRadians(centre.getLatitude());
+        this.lonRad = Math.toRadians(centre.getLongitude());
+        this.cosLat = Math.cos(latRad);
+        this.angle = Math.min(Math.PI, Math.max(0, radiusKm) / CoordinateHelper.EARTH_RADIUS_KM);
+        double halfAngleSine = Math.sin(angle / 2);
+        this.threshold = halfAngleSine * halfAngleSine;
+        this.maxDeltaLon = coversPole() ? Math.PI : Math.asin(Math.sin(angle) / cosLat);
+    }
+
+    public Coordinate getCentre() {
+        return centre;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    /**
+     * @return true if the circle reaches or covers either pole, in which case
+     *         it spans every longitude
+     */
+    public boolean coversPole() {
+        return latRad - angle <= -Math.PI / 2 || latRad + angle >= Math.PI / 2;
+    }
+
+    /** southern edge of the bounding box in degrees, clamped to the pole */
+    public double getMinLatitude() {
+        return Math.max(CoordinateHelper.MIN_LATITUDE, Math.toDegrees(latRad - angle));
+    }
+
+    /** northern edge of the bounding box in degrees, clamped to the pole */
+    public double getMaxLatitude() {
+        return Math.min(CoordinateHelper.MAX_LATITUDE, Math.toDegrees(latRad + angle));
+    }
+
+    /**
+     * Western edge of the bounding box in degrees. It may be below -180 when
+     * the circle crosses the antimeridian.
+     */
+    public double getMinLongitude() {
+        return Math.toDegrees(lonRad - maxDeltaLon);
+    }
+
+    /**
+     * Eastern edge of the bounding box in degrees. It may be above 180 when
+     * the circle crosses the antimeridian.
+     */
+    public double getMaxLongitude() {
+        return Math.toDegrees(lonRad + maxDeltaLon);
+    }
+
+    /**
+     * Test a point given in precomputed form.
+     *
+     * @param pointLatRad
+     *            latitude in radians
+     * @param pointLonRad
+     *            longitude in radians
+     * @param pointCosLat
+     *            cosine of the latitude
+     * @return true if the point is inside or on the circle
+     */
+    public boolean contains(final double pointLatRad, final double pointLonRad, final double pointCosLat) {
+        double deltaLat = pointLatRad - latRad;
+        if (Math.abs(deltaLat) > angle) {
+            return false;
+        }
+        double deltaLon = Math.abs(pointLonRad - lonRad);
+        if (deltaLon > Math.PI) {
+            deltaLon = 2 * Math.PI - deltaLon;
+        }
+        if (deltaLon > maxDeltaLon) {
+            return false;
+        }
+        double sinLat = Math.sin(deltaLat / 2);
+        double sinLon = Math.sin(deltaLon / 2);
+        return sinLat * sinLat + cosLat * pointCosLat * sinLon * sinLon <= threshold;
+    }
+
+    /**
+     * Haversine distance from the centre to a point given in precomputed form.
+     *
+     * @return the distance in KM
+     */
+    public double distanceTo(final double pointLatRad, final double pointLonRad, final double pointCosLat) {
+        double sinLat = Math.sin((pointLatRad - latRad) / 2);
+        double sinLon = Math.sin((pointLonRad - lonRad) / 2);
+        double a = sinLat * sinLat + cosLat * pointCosLat * sinLon * sinLon;
+        return 2 * CoordinateHelper.EARTH_RADIUS_KM * Math.asin(Math.sqrt(Math.min(1.0, a)));
+    }
+}
@@ -0,0 +1,109 @@
+package com.crossover.trial.weather.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.WeatherUpdate;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Checks the binary record layout and its stream readers and writers.
+ *
+ * @author Joao Gatto
+ */
+public class WeatherRecordsTest {
+
+    private final DataPoint dataPoint = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22.5).withLast(30)
+            .withCount(10).build();
+
+    @Test
+    public void testLayout() {
+        ByteBuffer buffer = buffer(WeatherRecords.RECORD_SIZE);
+        WeatherRecords.writeRecord(buffer, 0, AirportCodes.idOf("BOS"), DataPointType.HUMIDITY, dataPoint);
+        assertEquals(AirportCodes.idOf("BOS"), buffer.getShort(0));
+        assertEquals(DataPointType.HUMIDITY.ordinal(), buffer.get(2));
+        assertEquals(10, buffer.getInt(4));
+        assertEquals(22.5, buffer.getDouble(8), 0);
+        assertEquals(30, buffer.getDouble(32), 0);
+
+        WeatherUpdate update = WeatherRecords.readUpdate(buffer, 0);
+        assertEquals("BOS", update.getIata());
+        assertEquals("HUMIDITY", update.getPointType());
+        assertEquals(dataPoint, update.getDataPoint());
+    }
+
+    @Test
+    public void testReadUpdateWithoutAirportOrType() {
+        ByteBuffer buffer = buffer(WeatherRecords.RECORD_SIZE);
+        WeatherRecords.writeRecord(buffer, 0, AirportCodes.CAPACITY, DataPointType.WIND, dataPoint);
+        assertNull(WeatherRecords.readUpdate(buffer, 0));
+        WeatherRecords.writeRecord(buffer, 0, 0, DataPointType.WIND, dataPoint);
+        buffer.put(2, (byte) DataPointType.values().length);
+        assertNull(WeatherRecords.readUpdate(buffer, 0));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RecordOutput out = new RecordOutput(bytes);
+        AtmosphericInformation ai = new AtmosphericInformation.Builder().withWind(dataPoint).withCloudCover(dataPoint).build();
+        // enough to grow the buffer to its full size and drain it a few times
+        for (int airport = 0; airport < 1000; airport++) {
+            assertEquals(2, out.write(airport, ai));
+        }
+        out.write(7, new AtmosphericInformation.Builder().build());
+        out.flush();
+        assertEquals(2000 * WeatherRecords.RECORD_SIZE, bytes.size());
+
+        List<WeatherUpdate> updates = WeatherRecords.readUpdates(slow(bytes.toByteArray()));
+        assertEquals(2000, updates.size());
+        assertEquals(AirportCodes.codeOf(999), updates.get(1999).getIata());
+        assertEquals("CLOUDCOVER", updates.get(1999).getPointType());
+        assertEquals(dataPoint, updates.get(1999).getDataPoint());
+    }
+
+    @Test(expected = MalformedRecordException.class)
+    public void testReadUpdatesCutShort() throws IOException {
+        WeatherRecords.readUpdates(new ByteArrayInputStream(new byte[2 * WeatherRecords.RECORD_SIZE - 1]));
+    }
+
+    @Test
+    public void testReadDataPoint() throws IOException {
+        ByteBuffer buffer = buffer(WeatherRecords.DATA_POINT_SIZE);
+        WeatherRecords.writeDataPoint(buffer, 0, dataPoint);
+        assertEquals(dataPoint, WeatherRecords.readDataPoint(slow(buffer.array())));
+        assertNull(WeatherRecords.readDataPoint(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test(expected = MalformedRecordException.class)
+    public void testReadDataPointTooLong() throws IOException {
+        WeatherRecords.readDataPoint(new ByteArrayInputStream(new byte[WeatherRecords.RECORD_SIZE]));
+    }
+
+    private static ByteBuffer buffer(final int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static InputStream slow(final byte[] bytes) {
+        // hands out a few bytes at a time, like a socket
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+}
@@ -1,20 +1,50 @@
 package com.crossover.trial.weather.endpoint;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.crossover.trial.weather.binary.WeatherRecords;
 import com.crossover.trial.weather.endpoint.impl.WeatherCollectorEndpointImpl;
 import com.crossover.trial.weather.endpoint.impl.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.json.WeatherJson;
+import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.AtmosphericInformation;
 import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.model.Resolution;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.model.WeatherUpdate;
 import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.impl.ArrayNeighbourIndex;
 import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.repository.impl.NeighbourRefresher;
+import com.crossover.trial.weather.utils.AirportCodes;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 public class WeatherEndpointTest {
@@ -31,10 +61,7 @@ public class WeatherEndpointTest {
 
     @Before
     public void setUp() throws Exception {
-        repository.getAirportData().clear();
-        repository.getAtmosphericInformation().clear();
-        repository.getRadiusFrequency().clear();
-        repository.getRequestFrequency().clear();
+        repository.clear();
         update.addAirport("BOS", "42.364347", "-71.005181");
         update.addAirport("EWR", "40.6925", "-74.168667");
         update.addAirport("JFK", "40.639751", "-73.778925");
@@ -51,6 +78,44 @@ public class WeatherEndpointTest {
         JsonElement pingResult = new JsonParser().parse(ping);
         assertEquals(1, pingResult.getAsJsonObject().get("datasize").getAsInt());
         assertEquals(5, pingResult.getAsJsonObject().get("iata_freq").getAsJsonObject().entrySet().size());
+        assertEquals(101, pingResult.getAsJsonObject().get("radius_freq").getAsJsonArray().size());
+    }
+
+    @Test
+    public void testPingCachedUnderQueries() throws Exception {
+        String ping = query.ping();
+        query.weather("BOS", "0");
+        query.weather("JFK", "100");
+        assertSame(ping, query.ping());
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        assertEquals(2, new JsonParser().parse(query.ping()).getAsJsonObject().get("datasize").getAsInt());
+    }
+
+    @Test
+    public void testPingCachedUnderUpdates() throws Exception {
+        String ping = query.ping();
+        // BOS already counts in the data size
+        update.updateWeather("BOS", "wind", gson.toJson(dataPoint));
+        update.updateWeather("BOS", "humidity", gson.toJson(dataPoint));
+        assertSame(ping, query.ping());
+    }
+
+    @Test
+    public void testPingFollowsWrites() throws Exception {
+        String ping = query.ping();
+        assertSame(ping, query.ping());
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        query.weather("JFK", "0");
+        query.weather("JFK", "0");
+        query.weather("JFK", "0");
+        JsonObject pingResult = new JsonParser().parse(query.ping()).getAsJsonObject();
+        assertEquals(2, pingResult.get("datasize").getAsInt());
+        assertEquals(1.5, pingResult.get("iata_freq").getAsJsonObject().get("JFK").getAsDouble(), 1e-9);
+        assertEquals(4, pingResult.get("radius_freq").getAsJsonArray().get(0).getAsLong());
+        update.deleteAirport("JFK");
+        pingResult = new JsonParser().parse(query.ping()).getAsJsonObject();
+        assertEquals(1, pingResult.get("datasize").getAsInt());
+        assertEquals(4, pingResult.get("iata_freq").getAsJsonObject().entrySet().size());
     }
 
     @Test
@@ -59,6 +124,15 @@ public class WeatherEndpointTest {
         assertEquals(ais.get(0).getWind(), dataPoint);
     }
 
+    @Test
+    public void testGetUnknownAirport() throws Exception {
+        Response atOnce = query.weather("XYZ", "0");
+        assertEquals(200, atOnce.getStatus());
+        assertEquals(0, ((List<?>) atOnce.getEntity()).size());
+        assertEquals(0, ((List<?>) query.weather("XYZ", "100").getEntity()).size());
+        assertEquals(0, ((List<?>) query.weather("XYZ", "0", "wind:10:", null, null, null).getEntity()).size());
+    }
+
     @Test
     public void testGetNearby() throws Exception {
         update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
@@ -66,8 +140,204 @@ public class WeatherEndpointTest {
         update.updateWeather("EWR", "wind", gson.toJson(dataPoint));
         dataPoint.setMean(30);
         update.updateWeather("LGA", "wind", gson.toJson(dataPoint));
-        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) query.weather("JFK", "200").getEntity();
+        JsonArray ais = read(query.weather("JFK", "200"));
         assertEquals(4, ais.size());
+        List<DataPoint> winds = new ArrayList<>();
+        for (JsonElement ai : ais) {
+            winds.add(gson.fromJson(ai.getAsJsonObject().get("wind"), DataPoint.class));
+            assertTrue(ai.getAsJsonObject().has("cloudCover"));
+        }
+        assertTrue(winds.contains(dataPoint));
+        assertTrue(winds.contains(null));
+        assertEquals(0, read(query.weather("XXX", "200")).size());
+    }
+
+    @Test
+    public void testGetNearbyMatchesListOutput() throws Exception {
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        update.updateWeather("JFK", "humidity", gson.toJson(dataPoint));
+        String streamed = read(query.weather("JFK", "0.1")).toString();
+        List<?> listed = (List<?>) query.weather("JFK", "0").getEntity();
+        assertEquals(new GsonBuilder().serializeNulls().create().toJson(listed), streamed);
+    }
+
+    @Test
+    public void testGetNearbyCached() throws Exception {
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        JsonArray first = read(query.weather("JFK", "200"));
+        assertEquals(first, read(query.weather("JFK", "200")));
+        JsonObject stats = new JsonParser().parse(WeatherJson.toJson(query.stats().getEntity())).getAsJsonObject()
+                .get("cache").getAsJsonObject();
+        assertEquals(1, stats.get("size").getAsInt());
+        assertEquals(1, stats.get("hits").getAsLong());
+
+        // a reading inside the circle drops the answer, one outside does not
+        dataPoint.setMean(40);
+        update.updateWeather("EWR", "wind", gson.toJson(dataPoint));
+        assertTrue(read(query.weather("JFK", "200")).toString().contains("40.0"));
+        assertEquals(1, repository.getQueryCache().getInvalidations());
+        update.addAirport("LHR", "51.4775", "-0.461389");
+        assertEquals(0, repository.getQueryCache().size());
+        read(query.weather("JFK", "200"));
+        update.updateWeather("LHR", "wind", gson.toJson(dataPoint));
+        assertEquals(1, repository.getQueryCache().size());
+    }
+
+    @Test
+    public void testNeighbourLists() throws Exception {
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        JsonArray scanned = read(query.weather("JFK", "200"));
+        new NeighbourRefresher(repository, 0).refresh();
+        JsonObject neighbours = new JsonParser().parse(WeatherJson.toJson(query.stats().getEntity())).getAsJsonObject()
+                .get("neighbours").getAsJsonObject();
+        assertEquals(5, neighbours.get("lists").getAsJsonObject().get("JFK").getAsInt());
+        assertEquals(5, neighbours.get("lists").getAsJsonObject().get("BOS").getAsInt());
+        assertEquals(2 * 5 * ArrayNeighbourIndex.NEIGHBOUR_SIZE, neighbours.get("bytes").getAsLong());
+
+        // answered from the list now, nearest first
+        repository.getQueryCache().clear();
+        JsonArray listed = read(query.weather("JFK", "200"));
+        assertEquals(4, listed.size());
+        Set<JsonElement> expected = new HashSet<>();
+        scanned.forEach(expected::add);
+        Set<JsonElement> found = new HashSet<>();
+        listed.forEach(found::add);
+        assertEquals(expected, found);
+        assertEquals(22, listed.get(0).getAsJsonObject().get("wind").getAsJsonObject().get("mean").getAsDouble(), 0);
+
+        update.deleteAirport("MMU");
+        assertEquals(3, read(query.weather("JFK", "200")).size());
+        assertEquals(2 * 4 * ArrayNeighbourIndex.NEIGHBOUR_SIZE, repository.getNeighbourIndex().getMemoryBytes());
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        dataPoint.setMean(40);
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        update.updateWeather("EWR", "humidity", gson.toJson(dataPoint));
+        assertEquals(1, read(query.weather("JFK", "500", "wind:30:", null, null, null)).size());
+        assertEquals(2, read(query.weather("JFK", "500", "wind:10:", null, null, null)).size());
+        JsonArray calm = read(query.weather("JFK", "500", " wind : : 30 ", null, null, null));
+        assertEquals(1, calm.size());
+        assertEquals(22, calm.get(0).getAsJsonObject().get("wind").getAsJsonObject().get("mean").getAsDouble(), 0);
+        assertEquals(1, read(query.weather("JFK", "500", "humidity:40:40", null, null, null)).size());
+        assertEquals(0, read(query.weather("JFK", "500", "wind:30:,humidity:40:", null, null, null)).size());
+
+        // airports never updated are left out by any age
+        assertEquals(3, read(query.weather("JFK", "500", null, "60000", null, null)).size());
+        assertEquals(0, read(query.weather("BOS", "0", "wind:30:", null, null, null)).size());
+        assertEquals(1, read(query.weather("BOS", "0", "wind:20:", "60000", null, null)).size());
+        assertEquals(0, repository.getQueryCache().size());
+
+        assertEquals(400, query.weather("JFK", "500", "wind:1", null, null, null).getStatus());
+        assertEquals(400, query.weather("JFK", "500", "fog:1:2", null, null, null).getStatus());
+        assertEquals(400, query.weather("JFK", "500", "wind:5:1", null, null, null).getStatus());
+        assertEquals(400, query.weather("JFK", "500", "wind: : ", null, null, null).getStatus());
+        assertEquals(400, query.weather("JFK", "500", null, "-1", null, null).getStatus());
+        assertEquals(400, query.weatherRecords("JFK", "500", "wind:x:", null).getStatus());
+        assertEquals(400, query.weather("JFK", "abc").getStatus());
+        assertEquals(400, query.weatherRecords("JFK", "abc", null, null).getStatus());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        update.updateWeather("BOS", "humidity", gson.toJson(dataPoint));
+        JsonArray projected = read(query.weather("BOS", "0", null, null, "wind", "mean,count"));
+        assertEquals(1, projected.size());
+        JsonObject ai = projected.get(0).getAsJsonObject();
+        assertEquals(new HashSet<>(Arrays.asList("wind", "lastUpdateTime")), keys(ai));
+        assertEquals(new HashSet<>(Arrays.asList("mean", "count")), keys(ai.get("wind").getAsJsonObject()));
+        assertEquals(22, ai.get("wind").getAsJsonObject().get("mean").getAsDouble(), 0);
+
+        // every airport in the radius, types in any case and only the cached full answer
+        projected = read(query.weather("BOS", "500", null, null, "HUMIDITY,cloudcover", null));
+        assertEquals(5, projected.size());
+        for (JsonElement element : projected) {
+            JsonObject record = element.getAsJsonObject();
+            assertEquals(new HashSet<>(Arrays.asList("humidity", "cloudCover", "lastUpdateTime")), keys(record));
+            if (record.get("humidity").isJsonObject()) {
+                assertEquals(5, keys(record.get("humidity").getAsJsonObject()).size());
+            }
+        }
+        assertEquals(0, repository.getQueryCache().size());
+        assertEquals(read(query.weather("BOS", "500")), read(query.weather("BOS", "500", null, null, "", "")));
+
+        JsonArray history = read(query.history("BOS", "wind", null, null, "last"));
+        assertEquals(1, history.size());
+        assertEquals(new HashSet<>(Arrays.asList("time", "last")), keys(history.get(0).getAsJsonObject()));
+
+        assertEquals(400, query.weather("BOS", "0", null, null, "fog", null).getStatus());
+        assertEquals(400, query.weather("BOS", "0", null, null, null, "mode").getStatus());
+        assertEquals(400, query.history("BOS", "wind", null, null, "mode").getStatus());
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        JsonArray nearest = read(query.nearest("JFK", "3"));
+        assertEquals(3, nearest.size());
+        assertEquals("JFK", nearest.get(0).getAsJsonObject().get("iata").getAsString());
+        assertEquals(0, nearest.get(0).getAsJsonObject().get("distance").getAsDouble(), 1e-9);
+        assertEquals(22, nearest.get(0).getAsJsonObject().get("atmosphericInformation").getAsJsonObject().get("wind")
+                .getAsJsonObject().get("mean").getAsDouble(), 0);
+        assertEquals("LGA", nearest.get(1).getAsJsonObject().get("iata").getAsString());
+        assertEquals("EWR", nearest.get(2).getAsJsonObject().get("iata").getAsString());
+        assertEquals(5, read(query.nearest("JFK", "50")).size());
+        assertEquals(0, read(query.nearest("XXX", "3")).size());
+
+        // just north of Boston Logan
+        nearest = read(query.nearestTo("42.37", "-71.0", "1"));
+        assertEquals("BOS", nearest.get(0).getAsJsonObject().get("iata").getAsString());
+
+        assertEquals(400, query.nearest("JFK", "0").getStatus());
+        assertEquals(400, query.nearest("JFK", "many").getStatus());
+        assertEquals(400, query.nearestTo("91", "0", "1").getStatus());
+        assertEquals(400, query.nearestTo("north", "0", "1").getStatus());
+    }
+
+    @Test
+    public void testAreaAndBox() throws Exception {
+        // between the New York airports, no airport at the centre
+        JsonArray area = read(query.area("40.7", "-74.0", "50"));
+        Set<String> codes = new HashSet<>();
+        for (JsonElement entry : area) {
+            codes.add(entry.getAsJsonObject().get("iata").getAsString());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("EWR", "JFK", "LGA", "MMU")), codes);
+        assertEquals(0, read(query.area("0", "0", "100")).size());
+
+        JsonArray box = read(query.box("42", "-72", "43", "-70"));
+        assertEquals(1, box.size());
+        JsonObject bos = box.get(0).getAsJsonObject();
+        assertEquals("BOS", bos.get("iata").getAsString());
+        assertEquals(42.364347, bos.get("latitude").getAsDouble(), 1e-9);
+        assertEquals(22, bos.get("atmosphericInformation").getAsJsonObject().get("wind").getAsJsonObject().get("mean")
+                .getAsDouble(), 0);
+        // eastwards from 30E across the Pacific to 100W, short of the east coast
+        assertEquals(0, read(query.box("-90", "30", "90", "-100")).size());
+        assertEquals(5, read(query.box("-90", "-180", "90", "180")).size());
+
+        assertEquals(400, query.area("91", "0", "10").getStatus());
+        assertEquals(400, query.area("0", "0", "far").getStatus());
+        assertEquals(400, query.box("43", "-72", "42", "-70").getStatus());
+        assertEquals(400, query.box("42", "-181", "43", "-70").getStatus());
+    }
+
+    private static Set<String> keys(final JsonObject object) {
+        Set<String> keys = new HashSet<>();
+        object.entrySet().forEach(entry -> keys.add(entry.getKey()));
+        return keys;
+    }
+
+    private JsonArray read(final Response response) throws Exception {
+        assertEquals(200, response.getStatus());
+        Object entity = response.getEntity();
+        if (entity instanceof List) {
+            return gson.toJsonTree(entity).getAsJsonArray();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) entity).write(out);
+        return new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8)).getAsJsonArray();
     }
 
     @Test
@@ -85,4 +355,170 @@ public class WeatherEndpointTest {
         assertEquals(ais.get(0).getCloudCover(), cloudCoverDp);
     }
 
+    @Test
+    public void testAddAirports() throws Exception {
+        String csv = "1,\"Logan\",\"Boston\",\"United States\",\"BOS\",\"KBOS\",42.364347,-71.005181,19,-5,\"A\"\n"
+                + "not an airport\n"
+                + "\n"
+                + "2,\"Narita\",\"Tokyo\",\"Japan\",\"NRT\",\"RJAA\",35.764722,140.386389,141,9,\"U\"\n";
+        Response response = update.addAirports("text/csv", new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, response.getStatus());
+        Map<?, ?> result = (Map<?, ?>) response.getEntity();
+        assertEquals(2, result.get("added"));
+        assertEquals(1, result.get("rejected"));
+        assertEquals(Arrays.asList(2), result.get("rejectedLines"));
+        assertEquals("Tokyo", ((Airport) update.getAirport("NRT").getEntity()).getCity());
+
+        String json = "{\"iata\":\"SFO\",\"latitude\":37.618972,\"longitude\":-122.374889}\n{\"iata\":\"SF\"}\n";
+        response = update.addAirports("application/x-ndjson", new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        result = (Map<?, ?>) response.getEntity();
+        assertEquals(1, result.get("added"));
+        assertEquals(1, result.get("rejected"));
+        assertEquals(7, ((Set<?>) update.getAirports().getEntity()).size());
+    }
+
+    @Test
+    public void testAddAirportInvalidCode() throws Exception {
+        assertEquals(400, update.addAirport("A1B", "1", "1").getStatus());
+        // not a second spelling of BOS
+        assertEquals(400, update.addAirport("bos", "1", "1").getStatus());
+        assertEquals(42.364347, ((Airport) update.getAirport("BOS").getEntity()).getCoordinate().getLatitude(), 0);
+
+        String json = "{\"iata\":\"bos\",\"latitude\":1,\"longitude\":1}\n";
+        Map<?, ?> result = (Map<?, ?>) update.addAirports("application/x-ndjson",
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))).getEntity();
+        assertEquals(1, result.get("rejected"));
+        assertEquals(5, ((Set<?>) update.getAirports().getEntity()).size());
+    }
+
+    @Test
+    public void testUpdateWeatherBatch() throws Exception {
+        String dp = gson.toJson(dataPoint);
+        String array = "[{\"iata\":\"JFK\",\"pointType\":\"wind\",\"dataPoint\":" + dp + "},"
+                + "{\"iata\":\"XXX\",\"pointType\":\"wind\",\"dataPoint\":" + dp + "},"
+                + "{\"iata\":\"EWR\",\"pointType\":\"cloudcover\",\"dataPoint\":" + dp + "}]";
+        Response response = update.updateWeather(new ByteArrayInputStream(array.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, response.getStatus());
+        Map<?, ?> result = (Map<?, ?>) response.getEntity();
+        assertEquals(2, result.get("applied"));
+        assertEquals(1, result.get("rejected"));
+        assertArrayEquals(new int[] { 200, 400, 200 }, (int[]) result.get("status"));
+        assertEquals(dataPoint, ((AtmosphericInformation) ((List<?>) query.weather("EWR", "0").getEntity()).get(0)).getCloudCover());
+
+        String lines = "{\"iata\":\"LGA\",\"pointType\":\"wind\",\"dataPoint\":" + dp + "}\n"
+                + "{\"iata\":\"LGA\",\"pointType\":\"wind\"}\n";
+        result = (Map<?, ?>) update.updateWeather(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8))).getEntity();
+        assertArrayEquals(new int[] { 200, 400 }, (int[]) result.get("status"));
+        assertEquals(4, new JsonParser().parse(query.ping()).getAsJsonObject().get("datasize").getAsInt());
+
+        String broken = "[{\"iata\":\"MMU\",\"pointType\":\"wind\",\"dataPoint\":" + dp + "},{\"iata\":";
+        assertEquals(400, update.updateWeather(new ByteArrayInputStream(broken.getBytes(StandardCharsets.UTF_8))).getStatus());
+        assertEquals(4, new JsonParser().parse(query.ping()).getAsJsonObject().get("datasize").getAsInt());
+    }
+
+    @Test
+    public void testUpdateWeatherRecords() throws Exception {
+        ByteBuffer records = ByteBuffer.allocate(3 * WeatherRecords.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        WeatherRecords.writeRecord(records, 0, AirportCodes.idOf("JFK"), DataPointType.WIND, dataPoint);
+        WeatherRecords.writeRecord(records, 40, AirportCodes.idOf("XXX"), DataPointType.WIND, dataPoint);
+        WeatherRecords.writeRecord(records, 80, AirportCodes.idOf("EWR"), DataPointType.CLOUDCOVER, dataPoint);
+        Map<?, ?> result = (Map<?, ?>) update.updateWeatherRecords(new ByteArrayInputStream(records.array())).getEntity();
+        assertEquals(2, result.get("applied"));
+        assertArrayEquals(new int[] { 200, 400, 200 }, (int[]) result.get("status"));
+        assertEquals(dataPoint, ((AtmosphericInformation) ((List<?>) query.weather("EWR", "0").getEntity()).get(0)).getCloudCover());
+
+        byte[] cut = Arrays.copyOf(records.array(), 100);
+        assertEquals(400, update.updateWeatherRecords(new ByteArrayInputStream(cut)).getStatus());
+    }
+
+    @Test
+    public void testGetWeatherRecords() throws Exception {
+        update.updateWeather("JFK", "humidity", gson.toJson(dataPoint));
+        update.updateWeather("JFK", "wind", gson.toJson(dataPoint));
+        List<WeatherUpdate> records = readRecords(query.weatherRecords("BOS", "0"));
+        assertEquals(1, records.size());
+        assertEquals("WIND", records.get(0).getPointType());
+        assertEquals(dataPoint, records.get(0).getDataPoint());
+
+        Set<String> found = new HashSet<>();
+        for (WeatherUpdate record : readRecords(query.weatherRecords("JFK", "400"))) {
+            found.add(record.getIata() + " " + record.getPointType());
+            assertEquals(dataPoint, record.getDataPoint());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("BOS WIND", "JFK WIND", "JFK HUMIDITY")), found);
+        assertEquals(0, readRecords(query.weatherRecords("XXX", "200")).size());
+        // the binary queries count like the json ones
+        assertTrue(new JsonParser().parse(query.ping()).getAsJsonObject().get("iata_freq").getAsJsonObject().get("JFK")
+                .getAsDouble() > 0);
+    }
+
+    @Test
+    public void testHistory() throws Exception {
+        long before = System.currentTimeMillis();
+        DataPoint windy = new DataPoint.Builder().withCount(5).withFirst(40).withMedian(50).withLast(60).withMean(51).build();
+        update.updateWeather("BOS", "wind", gson.toJson(windy));
+        update.updateWeather("BOS", "humidity", gson.toJson(dataPoint));
+
+        Response response = query.history("BOS", "wind", null, null);
+        assertEquals(200, response.getStatus());
+        JsonArray samples = new JsonParser().parse(WeatherJson.toJson(response.getEntity())).getAsJsonArray();
+        assertEquals(2, samples.size());
+        assertEquals(dataPoint, gson.fromJson(samples.get(0), DataPoint.class));
+        assertEquals(windy, gson.fromJson(samples.get(1), DataPoint.class));
+        assertTrue(samples.get(1).getAsJsonObject().get("time").getAsLong() >= before);
+
+        String to = String.valueOf(System.currentTimeMillis() + 1);
+        assertEquals(1, ((History) query.history("BOS", "HUMIDITY", String.valueOf(before), to).getEntity()).size());
+        assertEquals(0, ((History) query.history("BOS", "wind", to, null).getEntity()).size());
+        assertEquals(0, ((History) query.history("XXX", "wind", null, null).getEntity()).size());
+        assertEquals(400, query.history("BOS", "fog", null, null).getStatus());
+        assertEquals(400, query.history("BOS", "wind", "yesterday", null).getStatus());
+
+        update.deleteAirport("BOS");
+        update.addAirport("BOS", "42.364347", "-71.005181");
+        assertEquals(0, ((History) query.history("BOS", "wind", null, null).getEntity()).size());
+    }
+
+    @Test
+    public void testRollup() throws Exception {
+        DataPoint windy = new DataPoint.Builder().withCount(5).withFirst(40).withMedian(50).withLast(60).withMean(52).build();
+        update.updateWeather("BOS", "wind", gson.toJson(windy));
+
+        // a day fits in 200 hours but not in 200 minutes
+        Response response = query.rollup("BOS", "wind", null, null, null);
+        assertEquals(200, response.getStatus());
+        JsonObject rollup = new JsonParser().parse(WeatherJson.toJson(response.getEntity())).getAsJsonObject();
+        assertEquals("HOUR", rollup.get("resolution").getAsString());
+        JsonObject bucket = rollup.get("buckets").getAsJsonArray().get(0).getAsJsonObject();
+        assertEquals(22, bucket.get("min").getAsDouble(), 0);
+        assertEquals(52, bucket.get("max").getAsDouble(), 0);
+        assertEquals(37, bucket.get("mean").getAsDouble(), 0);
+        assertEquals(2, bucket.get("count").getAsLong());
+
+        long now = System.currentTimeMillis();
+        String halfHourAgo = String.valueOf(now - 30 * 60 * 1000);
+        Rollup minutes = (Rollup) query.rollup("BOS", "WIND", halfHourAgo, null, null).getEntity();
+        assertEquals(Resolution.MINUTE, minutes.getResolution());
+        assertEquals(2, minutes.getCount(minutes.size() - 1));
+        // the budget decides too
+        assertEquals(Resolution.HOUR, ((Rollup) query.rollup("BOS", "wind", halfHourAgo, null, "10").getEntity()).getResolution());
+        // minutes are only kept for an hour
+        String twoHoursAgo = String.valueOf(now - 2 * 60 * 60 * 1000);
+        assertEquals(Resolution.HOUR, ((Rollup) query.rollup("BOS", "wind", twoHoursAgo, null, "1000").getEntity()).getResolution());
+        // a year of days needs more than the budget, days are the fallback
+        assertEquals(Resolution.DAY, ((Rollup) query.rollup("BOS", "wind", "0", null, "1").getEntity()).getResolution());
+
+        assertEquals(0, ((Rollup) query.rollup("BOS", "humidity", null, null, null).getEntity()).size());
+        assertEquals(400, query.rollup("BOS", "fog", null, null, null).getStatus());
+        assertEquals(400, query.rollup("BOS", "wind", null, null, "0").getStatus());
+        assertEquals(400, query.rollup("BOS", "wind", "10", "5", null).getStatus());
+    }
+
+    private static List<WeatherUpdate> readRecords(final Response response) throws Exception {
+        assertEquals(200, response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return WeatherRecords.readUpdates(new ByteArrayInputStream(out.toByteArray()));
+    }
+
 }
@@ -0,0 +1,196 @@
+package com.crossover.trial.weather.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DST;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.WeatherUpdate;
+
+/**
+ * Checks the json codec against the format the service has always produced.
+ *
+ * @author Joao Gatto
+ */
+public class WeatherJsonTest {
+
+    private final DataPoint dataPoint = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22.5).withLast(30)
+            .withCount(10).build();
+
+    @Test
+    public void testWriteDataPoint() {
+        assertEquals("{\"mean\":22.5,\"first\":10.0,\"median\":20.0,\"last\":30.0,\"count\":10}", WeatherJson.toJson(dataPoint));
+    }
+
+    @Test
+    public void testWriteAtmosphericInformation() {
+        AtmosphericInformation ai = new AtmosphericInformation.Builder().withWind(dataPoint).withLastUpdateTime(1445000000000L)
+                .build();
+        assertEquals("{\"temperature\":null,\"wind\":" + WeatherJson.toJson(dataPoint)
+                + ",\"humidity\":null,\"precipitation\":null,\"pressure\":null,\"cloudCover\":null,\"lastUpdateTime\":1445000000000}",
+                WeatherJson.toJson(ai));
+    }
+
+    @Test
+    public void testWriteAirport() {
+        Airport airport = new Airport.Builder().withIata("BOS").withIcao("KBOS").withCity("Boston").withCountry("United States")
+                .withLatitude(42.364347).withLongitude(-71.005181).withAltitude(19).withTimezone(-5).withDst(DST.A).build();
+        assertEquals("{\"city\":\"Boston\",\"country\":\"United States\",\"iata\":\"BOS\",\"icao\":\"KBOS\","
+                + "\"coordinate\":{\"latitude\":42.364347,\"longitude\":-71.005181},\"altitude\":19.0,\"timezone\":-5,\"dst\":\"A\"}",
+                WeatherJson.toJson(airport));
+    }
+
+    @Test
+    public void testWriteValues() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("list", Arrays.asList(1, "two", null, true));
+        map.put("ints", new int[] { 200, 400 });
+        map.put("doubles", new double[] { 0.5, -0.0, 1e7, Double.NaN });
+        map.put("dst", DST.E);
+        assertEquals("{\"list\":[1,\"two\",null,true],\"ints\":[200,400],\"doubles\":[0.5,-0.0,1.0E7,\"NaN\"],\"dst\":\"E\"}",
+                WeatherJson.toJson(map));
+    }
+
+    @Test
+    public void testStringEscapes() throws IOException {
+        String text = "quote\" slash\\ tab\t nl\n bell\u0007 e\u00e9 euro\u20ac clef\ud834\udd1e";
+        String json = WeatherJson.toJson(Arrays.asList(text));
+        assertEquals("[\"quote\\\" slash\\\\ tab\\t nl\\n bell\\u0007 e\u00e9 euro\u20ac clef\ud834\udd1e\"]", json);
+        JsonInput in = input(json);
+        in.beginArray();
+        assertEquals(text, in.nextString());
+        in.endArray();
+        assertEquals(JsonInput.Token.END_DOCUMENT, in.peek());
+        assertEquals("/\u00e9", input("\"\\/\\u00E9\"").nextString());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        AtmosphericInformation ai = new AtmosphericInformation.Builder().withWind(dataPoint).withPressure(dataPoint)
+                .withLastUpdateTime(42).build();
+        AtmosphericInformation read = WeatherJson.readAtmosphericInformation(input(WeatherJson.toJson(ai)));
+        assertEquals(dataPoint, read.getWind());
+        assertEquals(dataPoint, read.getPressure());
+        assertNull(read.getTemperature());
+        assertEquals(42, read.getLastUpdateTime());
+    }
+
+    @Test
+    public void testReadIgnoresUnknownKeys() throws IOException {
+        DataPoint read = WeatherJson.readDataPoint(
+                input(" {\"extra\" : [1, {\"a\": null}, false], \"mean\":22.5,\"first\":10,\"median\":20,\"last\":3e1,\"count\":10}"));
+        assertEquals(dataPoint, read);
+    }
+
+    @Test
+    public void testReadAirport() throws IOException {
+        Airport flat = WeatherJson.readAirport(input("{\"iata\":\"JFK\",\"latitude\":40.6,\"longitude\":-73.7,\"dst\":\"\"}"));
+        Airport nested = WeatherJson.readAirport(input("{\"iata\":\"JFK\",\"coordinate\":{\"latitude\":40.6,\"longitude\":-73.7}}"));
+        assertEquals(40.6, flat.getCoordinate().getLatitude(), 0);
+        assertEquals(flat.getCoordinate(), nested.getCoordinate());
+        assertEquals(DST.U, flat.getDst());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadAirportWithoutCoordinate() throws IOException {
+        WeatherJson.readAirport(input("{\"iata\":\"JFK\",\"latitude\":40.6}"));
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+        String dp = WeatherJson.toJson(dataPoint);
+        JsonInput in = new JsonInput(stream("{\"iata\":\"BOS\",\"pointType\":\"wind\",\"dataPoint\":" + dp + "}\n"
+                + "{\"iata\":\"JFK\",\"pointType\":\"humidity\",\"dataPoint\":null}\n"));
+        WeatherUpdate first = WeatherJson.readWeatherUpdate(in);
+        WeatherUpdate second = WeatherJson.readWeatherUpdate(in);
+        assertEquals(JsonInput.Token.END_DOCUMENT, in.peek());
+        assertEquals("BOS", first.getIata());
+        assertEquals(dataPoint, first.getDataPoint());
+        assertEquals("humidity", second.getPointType());
+        assertNull(second.getDataPoint());
+    }
+
+    @Test
+    public void testReadAcrossBuffers() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("\"\u00e9\u20ac\ud834\udd1e\"");
+        }
+        JsonInput in = new JsonInput(stream(json.append("]").toString()));
+        in.beginArray();
+        int count = 0;
+        while (in.hasNext()) {
+            assertEquals("\u00e9\u20ac\ud834\udd1e", in.nextString());
+            count++;
+        }
+        in.endArray();
+        assertEquals(2000, count);
+    }
+
+    @Test
+    public void testReadNumbers() throws IOException {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("[0,-0,-0.0,1e3,2.5E-3,123456789012345678901234,0.1,-73.778925,9007199254740993");
+        for (int i = 0; i < 10000; i++) {
+            json.append(',').append(random.nextInt(3) == 0 ? random.nextDouble() * 1e6 : random.nextInt(2000000) / 1e5 - 10);
+        }
+        String[] numbers = json.substring(1).split(",");
+        JsonInput in = input(json.append(']').toString());
+        in.beginArray();
+        for (String number : numbers) {
+            double expected = Double.parseDouble(number);
+            assertEquals(number, Double.doubleToLongBits(expected), Double.doubleToLongBits(in.nextDouble()));
+        }
+        in.endArray();
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void testTruncated() throws IOException {
+        WeatherJson.readDataPoint(input("{\"mean\":22.5,"));
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void testMissingComma() throws IOException {
+        JsonInput in = input("[1 2]");
+        in.beginArray();
+        in.nextLong();
+        in.nextLong();
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void testNotAnInteger() throws IOException {
+        WeatherJson.readDataPoint(input("{\"count\":1.5}"));
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void testBadLiteral() throws IOException {
+        input("nul").nextNull();
+    }
+
+    private static JsonInput input(final String json) {
+        return new JsonInput(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream stream(final String json) {
+        // hands out a few bytes at a time, like a socket
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+}
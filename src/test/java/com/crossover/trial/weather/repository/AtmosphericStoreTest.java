@@ -0,0 +1,168 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.OffHeapAtmosphericStore;
+import com.crossover.trial.weather.repository.impl.SlotAtmosphericStore;
+import com.crossover.trial.weather.repository.impl.SnapshotAtmosphericStore;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Runs the same checks against every {@link AtmosphericStore} implementation.
+ *
+ * @author Joao Gatto
+ */
+@RunWith(Parameterized.class)
+public class AtmosphericStoreTest {
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> stores() {
+        Supplier<AtmosphericStore> snapshot = SnapshotAtmosphericStore::new;
+        Supplier<AtmosphericStore> slots = SlotAtmosphericStore::new;
+        Supplier<AtmosphericStore> offHeap = OffHeapAtmosphericStore::new;
+        return Arrays.asList(
+                new Object[][] { { "snapshot", snapshot }, { "slots", slots }, { "offheap", offHeap } });
+    }
+
+    private static final int AAA = AirportCodes.idOf("AAA");
+
+    private static final int BBB = AirportCodes.idOf("BBB");
+
+    private final Supplier<AtmosphericStore> factory;
+
+    private AtmosphericStore store;
+
+    public AtmosphericStoreTest(final String name, final Supplier<AtmosphericStore> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() {
+        store = factory.get();
+    }
+
+    @Test
+    public void testUpdateAndGet() {
+        DataPoint wind = new DataPoint.Builder().withMean(10).withCount(1).build();
+        DataPoint humidity = new DataPoint.Builder().withMean(50).withCount(2).build();
+        store.update(AAA, DataPointType.WIND, wind, 1000);
+        store.update(AAA, DataPointType.HUMIDITY, humidity, 2000);
+        AtmosphericInformation ai = store.get(AAA);
+        assertEquals(wind, ai.getWind());
+        assertEquals(humidity, ai.getHumidity());
+        assertNull(ai.getTemperature());
+        assertEquals(2000, ai.getLastUpdateTime());
+        assertNull(store.get(BBB));
+    }
+
+    @Test
+    public void testRead() {
+        DataPoint pressure = new DataPoint.Builder().withMean(1000).withFirst(990).withMedian(1001).withLast(1010)
+                .withCount(7).build();
+        store.update(AAA, DataPointType.PRESSURE, pressure, 3000);
+        Reading reading = new Reading();
+        assertTrue(store.read(AAA, DataPointType.PRESSURE, reading));
+        assertEquals(pressure, reading.toDataPoint());
+        assertEquals(3000, reading.getTime());
+        assertFalse(store.read(AAA, DataPointType.WIND, reading));
+        assertFalse(store.read(BBB, DataPointType.PRESSURE, reading));
+    }
+
+    @Test
+    public void testForEachAndClear() {
+        store.update(AAA, DataPointType.WIND, new DataPoint.Builder().withMean(10).build(), 1000);
+        store.update(BBB, DataPointType.WIND, new DataPoint.Builder().withMean(10).build(), 1000);
+        List<AtmosphericInformation> all = new ArrayList<>();
+        store.forEach(all::add);
+        assertEquals(2, all.size());
+        store.clear();
+        assertNull(store.get(AAA));
+    }
+
+    @Test
+    public void testSnapshotsAreConsistent() throws Exception {
+        // the writer always updates wind before temperature with the same
+        // count, so no snapshot may show temperature ahead of wind
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 20000; i++) {
+                store.update(AAA, DataPointType.WIND, new DataPoint.Builder().withMean(10).withCount(i).build(), i);
+                store.update(AAA, DataPointType.TEMPERATURE, new DataPoint.Builder().withMean(10).withCount(i).build(), i);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            AtmosphericInformation ai = store.get(AAA);
+            if (ai != null && ai.getTemperature() != null) {
+                int lead = ai.getWind().getCount() - ai.getTemperature().getCount();
+                assertTrue("wind " + ai.getWind().getCount() + " temperature " + ai.getTemperature().getCount(),
+                        lead == 0 || lead == 1);
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testReadsAreConsistent() throws Exception {
+        // the writer stamps every point with its count, so a read must return
+        // the time of the same update as its point
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 20000; i++) {
+                store.update(AAA, DataPointType.WIND, new DataPoint.Builder().withMean(10).withCount(i).build(), i);
+            }
+            done.set(true);
+        });
+        writer.start();
+        Reading reading = new Reading();
+        while (!done.get()) {
+            if (store.read(AAA, DataPointType.WIND, reading)) {
+                assertEquals(reading.getCount(), reading.getTime());
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testUpdateWhileRemoved() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= 20000; i++) {
+                    store.update(AAA, DataPointType.WIND, new DataPoint.Builder().withMean(10).withCount(i).build(), i);
+                }
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            store.remove(AAA);
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,102 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.History;
+import com.crossover.trial.weather.repository.impl.RingHistoryStore;
+
+/**
+ * Checks the fixed size series of {@link RingHistoryStore}.
+ *
+ * @author Joao Gatto
+ */
+public class HistoryStoreTest {
+
+    private final HistoryStore store = new RingHistoryStore(16, 4);
+
+    @Test
+    public void testKeepsLatestSamples() {
+        for (int i = 1; i <= 10; i++) {
+            store.record(3, DataPointType.WIND, dataPoint(i), 1000 * i);
+        }
+        History history = new History();
+        store.read(3, DataPointType.WIND, 0, Long.MAX_VALUE, history);
+        assertEquals(4, history.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1000 * (7 + i), history.getTime(i));
+            assertEquals(7 + i, history.getMean(i), 0);
+            assertEquals(dataPoint(7 + i), history.toDataPoint(i));
+        }
+    }
+
+    @Test
+    public void testTimeRange() {
+        for (int i = 1; i <= 4; i++) {
+            store.record(3, DataPointType.WIND, dataPoint(i), 1000 * i);
+        }
+        History history = new History();
+        store.read(3, DataPointType.WIND, 2000, 4000, history);
+        assertEquals(2, history.size());
+        assertEquals(2000, history.getTime(0));
+        assertEquals(3000, history.getTime(1));
+    }
+
+    @Test
+    public void testSeriesAreSeparate() {
+        store.record(3, DataPointType.WIND, dataPoint(1), 1000);
+        store.record(3, DataPointType.HUMIDITY, dataPoint(2), 1000);
+        store.record(4, DataPointType.WIND, dataPoint(3), 1000);
+        store.remove(4);
+
+        History history = new History();
+        store.read(3, DataPointType.HUMIDITY, 0, Long.MAX_VALUE, history);
+        assertEquals(1, history.size());
+        assertEquals(2, history.getMean(0), 0);
+        history.clear();
+        store.read(4, DataPointType.WIND, 0, Long.MAX_VALUE, history);
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void testNoHistory() {
+        HistoryStore none = new RingHistoryStore(16, 0);
+        none.record(3, DataPointType.WIND, dataPoint(1), 1000);
+        History history = new History();
+        none.read(3, DataPointType.WIND, 0, Long.MAX_VALUE, history);
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void testRecordWhileRemoved() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= 20000; i++) {
+                    store.record(3, DataPointType.WIND, dataPoint(i), i);
+                }
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            store.remove(3);
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+
+    private static DataPoint dataPoint(final int mean) {
+        return new DataPoint.Builder().withMean(mean).withFirst(1).withMedian(mean).withLast(20).withCount(mean).build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.repository.impl.ArrayNeighbourIndex;
+import com.crossover.trial.weather.repository.impl.GridSpatialIndex;
+import com.crossover.trial.weather.utils.AirportCodes;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+
+/**
+ * Checks the neighbour lists against the spatial index they are built from.
+ *
+ * @author Joao Gatto
+ */
+public class NeighbourIndexTest {
+
+    private SpatialIndex spatialIndex;
+
+    private NeighbourIndex neighbours;
+
+    private List<Airport> airports;
+
+    @Before
+    public void setUp() {
+        spatialIndex = new GridSpatialIndex();
+        neighbours = new ArrayNeighbourIndex(4, spatialIndex);
+        airports = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            airports.add(add(AirportCodes.codeOf(i), random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+        neighbours.retain(airports.get(0), airports.get(1));
+    }
+
+    @Test
+    public void testMatchesSpatialIndex() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            assertMatches(airports.get(i % 2), random.nextDouble() * 5000);
+        }
+        assertMatches(airports.get(0), 0);
+        assertMatches(airports.get(0), 25000);
+        assertFalse(neighbours.forEachWithin(airports.get(2), 1000, airport -> {
+        }));
+    }
+
+    @Test
+    public void testNearestFirst() {
+        Airport centre = airports.get(0);
+        double[] last = { -1 };
+        neighbours.forEachWithin(centre, 3000, airport -> {
+            double distance = CoordinateHelper.calculateDistance(centre.getCoordinate(), airport.getCoordinate());
+            assertTrue(distance >= last[0]);
+            last[0] = distance;
+        });
+        assertTrue(last[0] > 0);
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        Airport centre = airports.get(0);
+        Airport near = add("ZZZ", centre.getCoordinate().getLatitude(), centre.getCoordinate().getLongitude() + 0.01);
+        neighbours.added(near);
+        assertMatches(centre, 5);
+        assertTrue(within(centre, 5).contains(near));
+
+        spatialIndex.remove(near);
+        neighbours.removed(near);
+        assertFalse(within(centre, 5).contains(near));
+        assertMatches(centre, 500);
+
+        // a list leaves with its airport
+        spatialIndex.remove(airports.get(1));
+        neighbours.removed(airports.get(1));
+        assertFalse(neighbours.forEachWithin(airports.get(1), 1000, airport -> {
+        }));
+        assertMatches(centre, 25000);
+    }
+
+    @Test
+    public void testStatistics() {
+        Map<String, Integer> lists = new HashMap<>();
+        neighbours.forEachList((airport, length) -> lists.put(airport.getIata(), length));
+        assertEquals(2, lists.size());
+        assertEquals(airports.size(), (int) lists.get(airports.get(0).getIata()));
+        assertEquals(2L * airports.size() * ArrayNeighbourIndex.NEIGHBOUR_SIZE, neighbours.getMemoryBytes());
+
+        neighbours.retain(airports.get(1), airports.get(2));
+        assertFalse(neighbours.forEachWithin(airports.get(0), 1000, airport -> {
+        }));
+        assertMatches(airports.get(2), 1000);
+
+        neighbours.clear();
+        assertEquals(0, neighbours.getMemoryBytes());
+    }
+
+    @Test
+    public void testSuspend() {
+        Airport centre = airports.get(0);
+        neighbours.suspend();
+        assertFalse(neighbours.forEachWithin(centre, 1000, airport -> {
+        }));
+        neighbours.added(add("ZZZ", centre.getCoordinate().getLatitude(), centre.getCoordinate().getLongitude()));
+        neighbours.retain(centre);
+        assertEquals(0, neighbours.getMemoryBytes());
+
+        neighbours.resume();
+        neighbours.retain(centre);
+        assertMatches(centre, 1000);
+        assertEquals(airports.size() + 1, within(centre, 25000).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity() {
+        neighbours.retain(airports.subList(0, 5).toArray(new Airport[5]));
+    }
+
+    private Airport add(final String iata, final double latitude, final double longitude) {
+        Airport airport = new Airport.Builder().withIata(iata).withLatitude(latitude).withLongitude(longitude).build();
+        spatialIndex.add(airport);
+        return airport;
+    }
+
+    private List<Airport> within(final Airport centre, final double radiusKm) {
+        List<Airport> found = new ArrayList<>();
+        assertTrue(neighbours.forEachWithin(centre, radiusKm, found::add));
+        return found;
+    }
+
+    private void assertMatches(final Airport centre, final double radiusKm) {
+        List<Airport> expected = new ArrayList<>();
+        spatialIndex.forEachWithin(centre.getCoordinate(), radiusKm, expected::add);
+        List<Airport> found = within(centre, radiusKm);
+        assertEquals(expected.size(), found.size());
+        assertTrue(found.containsAll(expected));
+    }
+}
@@ -0,0 +1,90 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.repository.impl.LruQueryCache;
+
+/**
+ * Checks the lookups, eviction and invalidation of {@link LruQueryCache}.
+ *
+ * @author Joao Gatto
+ */
+public class QueryCacheTest {
+
+    private static final byte[] BODY = { '[', ']' };
+
+    private final QueryCache cache = new LruQueryCache(16, 16);
+
+    @Test
+    public void testGet() {
+        assertNull(cache.get(3, 100));
+        assertTrue(cache.put(3, 100, cache.stamp(), new int[] { 3, 4 }, 2, BODY));
+        assertArrayEquals(BODY, cache.get(3, 100));
+        // the same step, the next one
+        assertArrayEquals(BODY, cache.get(3, 100.04));
+        assertNull(cache.get(3, 100.1));
+        assertNull(cache.get(4, 100));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testRound() {
+        assertEquals(100.1, QueryCache.round(100.06), 0);
+        assertEquals(100, QueryCache.round(100.04), 0);
+        assertEquals(0, QueryCache.round(0.04), 0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        QueryCache small = new LruQueryCache(16, 2);
+        small.put(3, 100, small.stamp(), new int[] { 3 }, 1, BODY);
+        small.put(4, 100, small.stamp(), new int[] { 4 }, 1, BODY);
+        small.get(3, 100);
+        small.put(5, 100, small.stamp(), new int[] { 5 }, 1, BODY);
+        assertNull(small.get(4, 100));
+        assertArrayEquals(BODY, small.get(3, 100));
+        assertArrayEquals(BODY, small.get(5, 100));
+        assertEquals(2, small.size());
+        assertEquals(1, small.getEvictions());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(3, 100, cache.stamp(), new int[] { 3, 4 }, 2, BODY);
+        cache.put(5, 100, cache.stamp(), new int[] { 5 }, 1, BODY);
+        cache.invalidate(4);
+        assertNull(cache.get(3, 100));
+        assertArrayEquals(BODY, cache.get(5, 100));
+        assertEquals(1, cache.getInvalidations());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testKeepsOutStaleAnswers() {
+        long stamp = cache.stamp();
+        // updated while the query ran
+        cache.invalidate(4);
+        assertFalse(cache.put(3, 100, stamp, new int[] { 3, 4 }, 2, BODY));
+        assertNull(cache.get(3, 100));
+        assertTrue(cache.put(3, 100, stamp, new int[] { 3 }, 1, BODY));
+
+        stamp = cache.stamp();
+        cache.clear();
+        assertFalse(cache.put(5, 100, stamp, new int[] { 5 }, 1, BODY));
+
+        // a clear with nothing to drop still rejects older queries
+        stamp = cache.stamp();
+        cache.clear();
+        assertFalse(cache.put(5, 100, stamp, new int[] { 5 }, 1, BODY));
+        assertEquals(0, new LruQueryCache(16, 0).size());
+        assertFalse(new LruQueryCache(16, 0).put(3, 100, 0, new int[] { 3 }, 1, BODY));
+    }
+}
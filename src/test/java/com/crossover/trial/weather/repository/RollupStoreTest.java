@@ -0,0 +1,122 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.Resolution;
+import com.crossover.trial.weather.model.Rollup;
+import com.crossover.trial.weather.repository.impl.RingRollupStore;
+
+/**
+ * Checks the incremental buckets of {@link RingRollupStore}.
+ *
+ * @author Joao Gatto
+ */
+public class RollupStoreTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final RollupStore store = new RingRollupStore(16, new int[] { 5, 3, 2 });
+
+    @Test
+    public void testAggregates() {
+        // three readings in the first minute, one in the second
+        store.record(3, DataPointType.WIND, 10, HOUR);
+        store.record(3, DataPointType.WIND, 30, HOUR + 1000);
+        store.record(3, DataPointType.WIND, 20, HOUR + MINUTE - 1);
+        store.record(3, DataPointType.WIND, 5, HOUR + MINUTE);
+
+        Rollup minutes = read(Resolution.MINUTE, 0, Long.MAX_VALUE);
+        assertEquals(2, minutes.size());
+        assertEquals(HOUR, minutes.getTime(0));
+        assertEquals(10, minutes.getMin(0), 0);
+        assertEquals(30, minutes.getMax(0), 0);
+        assertEquals(20, minutes.getMean(0), 0);
+        assertEquals(3, minutes.getCount(0));
+        assertEquals(HOUR + MINUTE, minutes.getTime(1));
+        assertEquals(1, minutes.getCount(1));
+
+        Rollup hours = read(Resolution.HOUR, 0, Long.MAX_VALUE);
+        assertEquals(1, hours.size());
+        assertEquals(5, hours.getMin(0), 0);
+        assertEquals(16.25, hours.getMean(0), 0);
+        assertEquals(4, hours.getCount(0));
+    }
+
+    @Test
+    public void testKeepsLatestBuckets() {
+        for (int minute = 0; minute < 8; minute++) {
+            store.record(3, DataPointType.WIND, minute, HOUR + minute * MINUTE);
+        }
+        // too old for the five minutes kept
+        store.record(3, DataPointType.WIND, 100, HOUR + MINUTE);
+
+        Rollup minutes = read(Resolution.MINUTE, 0, Long.MAX_VALUE);
+        assertEquals(5, minutes.size());
+        assertEquals(HOUR + 3 * MINUTE, minutes.getTime(0));
+        assertEquals(7, minutes.getMax(4), 0);
+        // but still within the hour
+        assertEquals(9, read(Resolution.HOUR, 0, Long.MAX_VALUE).getCount(0));
+    }
+
+    @Test
+    public void testRange() {
+        for (int minute = 0; minute < 5; minute++) {
+            store.record(3, DataPointType.WIND, minute, HOUR + minute * MINUTE);
+        }
+        // the bucket holding the start is in, the one starting at the end out
+        Rollup minutes = read(Resolution.MINUTE, HOUR + MINUTE + 1, HOUR + 3 * MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(HOUR + MINUTE, minutes.getTime(0));
+        assertEquals(HOUR + 2 * MINUTE, minutes.getTime(1));
+        assertEquals(0, read(Resolution.MINUTE, HOUR, HOUR).size());
+    }
+
+    @Test
+    public void testRemove() {
+        store.record(3, DataPointType.WIND, 1, HOUR);
+        store.record(4, DataPointType.WIND, 1, HOUR);
+        store.remove(3);
+        assertEquals(0, read(Resolution.DAY, 0, Long.MAX_VALUE).size());
+        Rollup other = new Rollup();
+        store.read(4, DataPointType.WIND, Resolution.DAY, 0, Long.MAX_VALUE, other);
+        assertEquals(1, other.size());
+    }
+
+    @Test
+    public void testRecordWhileRemoved() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= 20000; i++) {
+                    store.record(3, DataPointType.WIND, i, HOUR + i);
+                }
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            store.remove(3);
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+
+    private Rollup read(final Resolution resolution, final long from, final long to) {
+        Rollup rollup = new Rollup();
+        store.read(3, DataPointType.WIND, resolution, from, to, rollup);
+        return rollup;
+    }
+}
@@ -0,0 +1,146 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.model.DST;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.repository.impl.SnapshotFile;
+import com.crossover.trial.weather.repository.impl.Snapshotter;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Saves the repository and loads it back.
+ *
+ * @author Joao Gatto
+ */
+public class SnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DataRepository repository = DataRepositoryImpl.getInstance();
+
+    private final AirportService airportService = new AirportServiceImpl();
+
+    private final DataPoint dataPoint = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(22.5).withLast(30)
+            .withCount(10).build();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        repository.clear();
+        file = folder.getRoot().toPath().resolve("weather.snapshot");
+        airportService.addAirport(new Airport.Builder().withIata("BOS").withIcao("KBOS").withCity("Boston")
+                .withCountry("United States").withLatitude(42.364347).withLongitude(-71.005181).withAltitude(19)
+                .withTimezone(-5).withDst(DST.A).build());
+        airportService.addAirport(new Airport.Builder().withIata("GRU").withCity("S\u00e3o Paulo")
+                .withLatitude(-23.432075).withLongitude(-46.469511).build());
+        airportService.updateAtmosphericInformation("BOS", "WIND", dataPoint);
+        airportService.updateAtmosphericInformation("BOS", "HUMIDITY", dataPoint);
+        airportService.updateAtmosphericInformation("GRU", "TEMPERATURE", dataPoint);
+        airportService.updateRequestFrequency("BOS", 0.0);
+        airportService.updateRequestFrequency("BOS", 250.0);
+        airportService.updateRequestFrequency("GRU", 999.0);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        int bos = AirportCodes.idOf("BOS");
+        Airport boston = repository.getAirports().get(bos);
+        Reading saved = new Reading();
+        repository.getAtmosphericStore().read(bos, DataPointType.WIND, saved);
+        long[] histogram = repository.getRequestCounters().radiusHistogram();
+
+        long before = System.currentTimeMillis();
+        SnapshotFile.write(repository, file);
+        repository.clear();
+        assertTrue(SnapshotFile.read(file, repository) >= before);
+
+        assertEquals(2, repository.getAirports().size());
+        Airport restored = repository.getAirports().get(bos);
+        assertEquals("KBOS", restored.getIcao());
+        assertEquals("Boston", restored.getCity());
+        assertEquals(boston.getCoordinate(), restored.getCoordinate());
+        assertEquals(DST.A, restored.getDst());
+        assertEquals("S\u00e3o Paulo", repository.getAirports().get(AirportCodes.idOf("GRU")).getCity());
+
+        assertEquals(dataPoint, repository.getAtmosphericStore().get(bos).get(DataPointType.WIND));
+        assertEquals(dataPoint, repository.getAtmosphericStore().get(bos).get(DataPointType.HUMIDITY));
+        assertNull(repository.getAtmosphericStore().get(bos).get(DataPointType.TEMPERATURE));
+        Reading reading = new Reading();
+        repository.getAtmosphericStore().read(bos, DataPointType.WIND, reading);
+        assertEquals(saved.getTime(), reading.getTime());
+        assertEquals(2, repository.getRecentUpdates().count(System.currentTimeMillis()));
+
+        assertEquals(2, repository.getRequestCounters().get(bos));
+        assertEquals(2, repository.getRequestCounters().requestedAirports());
+        assertArrayEquals(histogram, repository.getRequestCounters().radiusHistogram());
+
+        // the spatial index came back too
+        List<Airport> near = new ArrayList<>();
+        repository.getSpatialIndex().forEachWithin(new Coordinate(42, -71), 100, near::add);
+        assertEquals(1, near.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptFile() throws Exception {
+        SnapshotFile.write(repository, file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        try {
+            SnapshotFile.read(file, repository);
+        } finally {
+            assertEquals(0, repository.getAirports().size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws Exception {
+        SnapshotFile.write(repository, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 20));
+        SnapshotFile.read(file, repository);
+    }
+
+    @Test
+    public void testSnapshotterSkipsUnchanged() throws Exception {
+        Snapshotter snapshotter = new Snapshotter(repository, file, 60000);
+        assertFalse(snapshotter.restore());
+        assertTrue(snapshotter.snapshot());
+        assertFalse(snapshotter.snapshot());
+        airportService.updateAtmosphericInformation("GRU", "WIND", dataPoint);
+        assertTrue(snapshotter.snapshot());
+        // queries are saved too, though they are not modifications
+        airportService.updateRequestFrequency("GRU", 10.0);
+        assertTrue(snapshotter.snapshot());
+        assertFalse(snapshotter.snapshot());
+
+        repository.clear();
+        assertTrue(new Snapshotter(repository, file, 60000).restore());
+        assertEquals(dataPoint, repository.getAtmosphericStore().get(AirportCodes.idOf("GRU")).get(DataPointType.WIND));
+    }
+}
@@ -0,0 +1,190 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.Coordinate;
+import com.crossover.trial.weather.repository.impl.GridSpatialIndex;
+import com.crossover.trial.weather.utils.CoordinateHelper;
+
+/**
+ * Checks the spatial index against a brute force scan.
+ *
+ * @author Joao Gatto
+ */
+public class SpatialIndexTest {
+
+    private SpatialIndex index;
+
+    private List<Airport> airports;
+
+    @Before
+    public void setUp() {
+        index = new GridSpatialIndex();
+        airports = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            Airport airport = new Airport.Builder().withIata("A" + i).withLatitude(random.nextDouble() * 180 - 90)
+                    .withLongitude(random.nextDouble() * 360 - 180).build();
+            airports.add(airport);
+            index.add(airport);
+        }
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(airports.size(), index.size());
+    }
+
+    @Test
+    public void testRandomQueries() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            Coordinate centre = new Coordinate(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            assertMatchesScan(centre, random.nextDouble() * 3000);
+        }
+    }
+
+    @Test
+    public void testAntimeridian() {
+        assertMatchesScan(new Coordinate(10, 179.9), 800);
+        assertMatchesScan(new Coordinate(-10, -179.9), 800);
+    }
+
+    @Test
+    public void testPoles() {
+        assertMatchesScan(new Coordinate(89.5, 0), 1500);
+        assertMatchesScan(new Coordinate(-90, 0), 1500);
+        assertMatchesScan(new Coordinate(60, 45), 4000);
+    }
+
+    @Test
+    public void testWholeGlobe() {
+        assertMatchesScan(new Coordinate(0, 0), 25000);
+    }
+
+    @Test
+    public void testRemove() {
+        Airport airport = airports.get(0);
+        assertTrue(index.remove(airport));
+        assertFalse(index.remove(airport));
+        assertEquals(airports.size() - 1, index.size());
+        Set<Airport> found = identitySet();
+        index.forEachWithin(airport.getCoordinate(), 1, found::add);
+        assertFalse(found.contains(airport));
+    }
+
+    @Test
+    public void testClear() {
+        index.clear();
+        assertEquals(0, index.size());
+        Set<Airport> found = identitySet();
+        index.forEachWithin(new Coordinate(0, 0), 25000, found::add);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void testBox() {
+        Random random = new Random(13);
+        for (int i = 0; i < 200; i++) {
+            double south = random.nextDouble() * 180 - 90;
+            double north = south + random.nextDouble() * (90 - south);
+            double west = random.nextDouble() * 360 - 180;
+            double east = random.nextDouble() * 360 - 180;
+            assertBoxMatchesScan(south, west, north, east);
+        }
+        // across the antimeridian, up to a pole, everything
+        assertBoxMatchesScan(-20, 170, 20, -170);
+        assertBoxMatchesScan(70, -180, 90, 180);
+        assertBoxMatchesScan(-90, -180, 90, 180);
+        assertBoxMatchesScan(-90, 0, -60, 0.5);
+    }
+
+    private void assertBoxMatchesScan(final double south, final double west, final double north, final double east) {
+        Set<Airport> expected = identitySet();
+        for (Airport airport : airports) {
+            double latitude = airport.getCoordinate().getLatitude();
+            double longitude = airport.getCoordinate().getLongitude();
+            boolean inLongitude = west <= east ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && inLongitude) {
+                expected.add(airport);
+            }
+        }
+        Set<Airport> found = identitySet();
+        index.forEachInBox(south, west, north, east, found::add);
+        assertEquals("box " + south + "," + west + " " + north + "," + east, expected, found);
+    }
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            Coordinate centre = new Coordinate(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            assertNearestMatchesScan(centre, 1 + random.nextInt(50));
+        }
+        assertNearestMatchesScan(new Coordinate(10, 179.9), 20);
+        assertNearestMatchesScan(new Coordinate(89.9, 0), 20);
+        assertNearestMatchesScan(new Coordinate(-90, 0), 20);
+    }
+
+    @Test
+    public void testNearestSparse() {
+        index.clear();
+        Airport north = new Airport.Builder().withIata("N").withLatitude(80).withLongitude(10).build();
+        Airport south = new Airport.Builder().withIata("S").withLatitude(-60).withLongitude(-170).build();
+        index.add(north);
+        index.add(south);
+        List<Airport> found = new ArrayList<>();
+        index.forEachNearest(new Coordinate(0, 0), 5, (airport, distance) -> found.add(airport));
+        assertEquals(2, found.size());
+        assertTrue(found.get(0) == north && found.get(1) == south);
+        index.forEachNearest(new Coordinate(0, 0), 0, (airport, distance) -> found.add(airport));
+        assertEquals(2, found.size());
+    }
+
+    private void assertNearestMatchesScan(final Coordinate centre, final int k) {
+        List<Double> expected = new ArrayList<>();
+        for (Airport airport : airports) {
+            expected.add(CoordinateHelper.calculateDistance(centre, airport.getCoordinate()));
+        }
+        Collections.sort(expected);
+        List<Double> found = new ArrayList<>();
+        index.forEachNearest(centre, k, (airport, distance) -> {
+            assertEquals(CoordinateHelper.calculateDistance(centre, airport.getCoordinate()), distance, 1e-6);
+            found.add(distance);
+        });
+        assertEquals("centre " + centre + " k " + k, k, found.size());
+        for (int i = 0; i < k; i++) {
+            assertEquals("centre " + centre + " k " + k, expected.get(i), found.get(i), 1e-6);
+        }
+    }
+
+    private void assertMatchesScan(final Coordinate centre, final double radiusKm) {
+        Set<Airport> expected = identitySet();
+        for (Airport airport : airports) {
+            if (CoordinateHelper.calculateDistance(centre, airport.getCoordinate()) <= radiusKm) {
+                expected.add(airport);
+            }
+        }
+        Set<Airport> found = identitySet();
+        index.forEachWithin(centre, radiusKm, found::add);
+        assertEquals("centre " + centre + " radius " + radiusKm, expected, found);
+    }
+
+    private static Set<Airport> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
@@ -0,0 +1,231 @@
+package com.crossover.trial.weather.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
+import com.crossover.trial.weather.repository.impl.Snapshotter;
+import com.crossover.trial.weather.repository.impl.WriteAheadLog;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+import com.crossover.trial.weather.utils.AirportCodes;
+
+/**
+ * Logs changes through the service and replays them into an empty
+ * repository.
+ *
+ * @author Joao Gatto
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DataRepository repository = DataRepositoryImpl.getInstance();
+
+    private final AirportService airportService = new AirportServiceImpl();
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        repository.clear();
+        directory = folder.getRoot().toPath().resolve("log");
+    }
+
+    @After
+    public void tearDown() {
+        repository.setChangeLog(null);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        WriteAheadLog log = start(WriteAheadLog.SYNC_EVERY_BATCH);
+        addAirports("BOS", "JFK", "LHR");
+        update("BOS", "WIND", 10);
+        update("BOS", "WIND", 12);
+        update("JFK", "HUMIDITY", 50);
+        update("LHR", "WIND", 5);
+        airportService.deleteAirport("LHR");
+        // the same code comes back, without its old readings
+        addAirports("LHR");
+        log.close();
+
+        repository.clear();
+        // replaying twice changes nothing
+        assertEquals(9, new WriteAheadLog(directory, 0).replay(repository));
+        assertEquals(9, new WriteAheadLog(directory, 0).replay(repository));
+
+        assertEquals(3, repository.getAirports().size());
+        assertEquals(12, mean("BOS", DataPointType.WIND), 0);
+        assertEquals(50, mean("JFK", DataPointType.HUMIDITY), 0);
+        assertNull(repository.getAtmosphericStore().get(AirportCodes.idOf("LHR")));
+        assertEquals(3, repository.getSpatialIndex().size());
+    }
+
+    @Test
+    public void testManyUpdatesWithTimedSync() throws Exception {
+        WriteAheadLog log = start(20);
+        addAirports("BOS");
+        List<Thread> threads = new ArrayList<>();
+        for (String type : new String[] { "WIND", "TEMPERATURE", "HUMIDITY", "CLOUDCOVER" }) {
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 2000; i++) {
+                    update("BOS", type, i % 50);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.close();
+
+        repository.clear();
+        assertEquals(1 + 4 * 2000, new WriteAheadLog(directory, 0).replay(repository));
+        assertEquals(0, mean("BOS", DataPointType.WIND), 0);
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        WriteAheadLog log = start(WriteAheadLog.SYNC_EVERY_BATCH);
+        addAirports("BOS");
+        update("BOS", "WIND", 10);
+        update("BOS", "WIND", 20);
+        log.close();
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        repository.clear();
+        assertEquals(2, new WriteAheadLog(directory, 0).replay(repository));
+        assertEquals(10, mean("BOS", DataPointType.WIND), 0);
+    }
+
+    @Test
+    public void testUnencodableChangeSkipped() throws Exception {
+        WriteAheadLog log = start(WriteAheadLog.SYNC_EVERY_BATCH);
+        char[] name = new char[Short.MAX_VALUE + 1];
+        Arrays.fill(name, 'x');
+        log.airportAdded(AirportCodes.idOf("XXX"),
+                new Airport.Builder().withIata("XXX").withCity(new String(name)).build());
+        // the changes behind it are still written
+        addAirports("BOS");
+        update("BOS", "WIND", 10);
+        log.close();
+
+        repository.clear();
+        assertEquals(2, new WriteAheadLog(directory, 0).replay(repository));
+        assertEquals(10, mean("BOS", DataPointType.WIND), 0);
+    }
+
+    @Test
+    public void testCompactedBySnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("weather.snapshot");
+        WriteAheadLog log = start(WriteAheadLog.SYNC_EVERY_BATCH);
+        Snapshotter snapshotter = new Snapshotter(repository, file, 60000, log);
+        addAirports("BOS", "JFK");
+        update("BOS", "WIND", 10);
+        snapshotter.snapshot();
+        assertEquals(1, segments().size());
+
+        update("JFK", "WIND", 30);
+        airportService.deleteAirport("BOS");
+        log.close();
+
+        repository.clear();
+        new Snapshotter(repository, file, 60000).restore();
+        assertEquals(2, repository.getAirports().size());
+        WriteAheadLog replayed = new WriteAheadLog(directory, 0);
+        // changes still queued when the log rolled were written after it, so
+        // the replay may repeat some the snapshot holds
+        assertTrue(replayed.replay(repository) >= 2);
+        assertEquals(1, repository.getAirports().size());
+        assertEquals(30, mean("JFK", DataPointType.WIND), 0);
+
+        // new changes go after the replayed ones
+        replayed.start();
+        replayed.close();
+        assertEquals(2, segments().size());
+    }
+
+    @Test
+    public void testCorruptSnapshotKept() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("weather.snapshot");
+        WriteAheadLog log = start(WriteAheadLog.SYNC_EVERY_BATCH);
+        addAirports("BOS", "JFK");
+        new Snapshotter(repository, file, 60000, log).snapshot();
+        update("JFK", "WIND", 30);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        // the bad file is kept aside, and the log whole while it is the only copy
+        repository.clear();
+        Snapshotter snapshotter = new Snapshotter(repository, file, 60000, log);
+        assertFalse(snapshotter.restore());
+        assertFalse(Files.exists(file));
+        assertArrayEquals(bytes, Files.readAllBytes(file.resolveSibling("weather.snapshot.corrupt")));
+        int segments = segments().size();
+        addAirports("LHR");
+        assertTrue(snapshotter.snapshot());
+        assertEquals(segments + 1, segments().size());
+        log.close();
+    }
+
+    private WriteAheadLog start(final long syncMillis) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, syncMillis);
+        log.replay(repository);
+        log.start();
+        repository.setChangeLog(log);
+        return log;
+    }
+
+    private void addAirports(final String... codes) {
+        for (String code : codes) {
+            airportService.addAirport(new Airport.Builder().withIata(code).withCity(code).withLatitude(40)
+                    .withLongitude(-70).build());
+        }
+    }
+
+    private void update(final String iata, final String type, final double mean) {
+        try {
+            airportService.updateAtmosphericInformation(iata, type,
+                    new DataPoint.Builder().withMean(mean).withFirst(0).withMedian(mean).withLast(99).withCount(1).build());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double mean(final String iata, final DataPointType type) {
+        return repository.getAtmosphericStore().get(AirportCodes.idOf(iata)).get(type).getMean();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -5,7 +5,16 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Resource;
 
@@ -15,11 +24,15 @@ import org.junit.Test;
 import com.crossover.trial.weather.exception.WeatherException;
 import com.crossover.trial.weather.model.Airport;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.Coordinate;
 import com.crossover.trial.weather.model.DataPoint;
 import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.WeatherUpdate;
 import com.crossover.trial.weather.repository.DataRepository;
+import com.crossover.trial.weather.repository.RequestCounts;
 import com.crossover.trial.weather.repository.impl.DataRepositoryImpl;
 import com.crossover.trial.weather.service.impl.AirportServiceImpl;
+import com.crossover.trial.weather.utils.AirportCodes;
 
 /**
  * Base class for service testing
@@ -35,10 +48,7 @@ public class AirportServiceTest {
 
     @Before
     public void setUp() throws Exception {
-        repository.getAirportData().clear();
-        repository.getAtmosphericInformation().clear();
-        repository.getRadiusFrequency().clear();
-        repository.getRequestFrequency().clear();
+        repository.clear();
     }
 
     @Test
@@ -79,6 +89,28 @@ public class AirportServiceTest {
         assertTrue(result.size() == 3);
     }
 
+    @Test
+    public void testFindAirportsWithin() {
+        airportService.addAirport(new Airport.Builder().withIata("JFK").withLatitude(40.639751).withLongitude(-73.778925).build());
+        airportService.addAirport(new Airport.Builder().withIata("LGA").withLatitude(40.777245).withLongitude(-73.872608).build());
+        airportService.addAirport(new Airport.Builder().withIata("BOS").withLatitude(42.364347).withLongitude(-71.005181).build());
+        Coordinate jfk = airportService.getAirport("JFK").getCoordinate();
+        assertEquals(2, airportService.findAirportsWithin(jfk, 200).size());
+        assertEquals(3, airportService.findAirportsWithin(jfk, 400).size());
+        assertEquals(1, airportService.findAirportsWithin(jfk, 0).size());
+    }
+
+    @Test
+    public void testFindAirportsWithinAfterMoveAndDelete() {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(50.0).withLongitude(50.0).build());
+        List<Airport> result = airportService.findAirportsWithin(new Coordinate(50.0, 50.0), 10);
+        assertEquals(1, result.size());
+        assertTrue(airportService.findAirportsWithin(new Coordinate(1.0, 1.0), 10).isEmpty());
+        airportService.deleteAirport("AAA");
+        assertTrue(airportService.findAirportsWithin(new Coordinate(50.0, 50.0), 10).isEmpty());
+    }
+
     @Test
     public void testFindAtmosphericInformationNull() {
         AtmosphericInformation result = airportService.getAtmosphericInformationByIataCode(null);
@@ -115,6 +147,74 @@ public class AirportServiceTest {
         assertTrue(ai.getWind().getCount() == 10);
     }
 
+    @Test
+    public void testUpdateAtmosphericInformationBatch() {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        airportService.addAirport(new Airport.Builder().withIata("BBB").withLatitude(2.0).withLongitude(2.0).build());
+        DataPoint wind = new DataPoint.Builder().withFirst(10).withMedian(20).withMean(30).withLast(40).withCount(50).build();
+        DataPoint cold = new DataPoint.Builder().withMean(-100).build();
+        List<WeatherUpdate> updates = Arrays.asList(new WeatherUpdate("AAA", "wind", wind),
+                new WeatherUpdate("CCC", "wind", wind), new WeatherUpdate("BBB", "temperature", cold),
+                new WeatherUpdate("BBB", "fog", wind), null, new WeatherUpdate("BBB", "HUMIDITY", wind));
+        BitSet rejected = airportService.updateAtmosphericInformation(updates);
+        assertEquals(BitSet.valueOf(new long[] { 0b11110 }), rejected);
+        assertEquals(wind, airportService.getAtmosphericInformationByIataCode("AAA").getWind());
+        AtmosphericInformation ai = airportService.getAtmosphericInformationByIataCode("BBB");
+        assertEquals(wind, ai.getHumidity());
+        assertNull(ai.getTemperature());
+        assertTrue(airportService.updateAtmosphericInformation(new ArrayList<WeatherUpdate>()).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        final int updates = 2000;
+        DataPointType[] types = DataPointType.values();
+        ExecutorService executor = Executors.newFixedThreadPool(types.length);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            // one writer per point type, all on the same airport
+            for (DataPointType type : types) {
+                Callable<Void> writer = () -> {
+                    start.await();
+                    double mean = Math.max(type.getMin(), 0) + 1;
+                    for (int i = 1; i <= updates; i++) {
+                        airportService.updateAtmosphericInformation("AAA", type.name(),
+                                new DataPoint.Builder().withMean(mean).withCount(i).build());
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(writer));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        AtmosphericInformation ai = airportService.getAtmosphericInformationByIataCode("AAA");
+        assertEquals(updates, ai.getWind().getCount());
+        assertEquals(updates, ai.getTemperature().getCount());
+        assertEquals(updates, ai.getHumidity().getCount());
+        assertEquals(updates, ai.getPressure().getCount());
+        assertEquals(updates, ai.getCloudCover().getCount());
+        assertEquals(updates, ai.getPrecipitation().getCount());
+    }
+
+    @Test
+    public void testUpdateAtmosphericInformationUnknownType() throws WeatherException {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        IllegalArgumentException exception = null;
+        try {
+            airportService.updateAtmosphericInformation("AAA", "snow", new DataPoint.Builder().withMean(1).build());
+        } catch (IllegalArgumentException e) {
+            exception = e;
+        }
+        assertNotNull(exception);
+    }
+
     @Test
     public void testUpdateAtmosphericInformationNull() throws WeatherException {
         Airport ad = new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build();
@@ -178,6 +278,86 @@ public class AirportServiceTest {
         assertNotNull(airportService.getAtmosphericInformationByIataCode("AAA"));
         airportService.deleteAirport("AAA");
         assertNull(airportService.getAirport("AAA"));
+        airportService.addAirport(ad);
+        assertNull(airportService.getAtmosphericInformationByIataCode("AAA").getWind());
+    }
+
+    @Test
+    public void testDeleteWhileUpdating() throws Exception {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        DataPoint dp = new DataPoint.Builder().withCount(50).withFirst(40).withLast(30).withMean(20).withMedian(10)
+                .build();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    airportService.updateAtmosphericInformation("AAA", DataPointType.WIND.name(), dp);
+                    started.countDown();
+                }
+            } catch (IllegalArgumentException | WeatherException e) {
+                // deleted
+            }
+        });
+        writer.start();
+        started.await();
+        airportService.deleteAirport("AAA");
+        writer.join();
+        assertNull(repository.getAtmosphericStore().get(AirportCodes.idOf("AAA")));
+        assertEquals(0, airportService.getHistory("AAA", "wind", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testRequestCount() {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        airportService.addAirport(new Airport.Builder().withIata("BBB").withLatitude(2.0).withLongitude(2.0).build());
+        airportService.updateRequestFrequency("AAA", 0d);
+        airportService.updateRequestFrequency("AAA", 10d);
+        airportService.updateRequestFrequency("BBB", 0d);
+        airportService.updateRequestFrequency("ZZZ", 0d);
+        assertEquals(2, airportService.getRequestCount("AAA"));
+        assertEquals(1, airportService.getRequestCount("BBB"));
+        assertEquals(0, airportService.getRequestCount("ZZZ"));
+        RequestCounts counts = airportService.getRequestCounts();
+        assertEquals(2, counts.getRequestedAirports());
+        assertEquals(2, counts.getRadiusHistogram()[0]);
+        assertEquals(1, counts.getRadiusHistogram()[1]);
+        assertEquals(2, airportService.getRadiusCounts()[0]);
+        airportService.deleteAirport("AAA");
+        assertEquals(0, airportService.getRequestCount("AAA"));
+    }
+
+    @Test
+    public void testConcurrentRequestCounts() throws Exception {
+        airportService.addAirport(new Airport.Builder().withIata("AAA").withLatitude(1.0).withLongitude(1.0).build());
+        int threads = 8;
+        int requests = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < requests; i++) {
+                    airportService.updateRequestFrequency("AAA", 2000d);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(threads * requests, airportService.getRequestCount("AAA"));
+        long[] radii = airportService.getRadiusCounts();
+        assertEquals(threads * requests, radii[radii.length - 1]);
+    }
+
+    @Test
+    public void testSaveAirportInvalidCode() {
+        airportService.addAirport(new Airport.Builder().withIata("A1A").withLatitude(1.0).withLongitude(1.0).build());
+        assertNull(airportService.getAirport("A1A"));
+        assertTrue(airportService.getAllAirports().isEmpty());
     }
 
     @Test
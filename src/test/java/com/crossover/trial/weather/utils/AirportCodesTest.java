@@ -0,0 +1,33 @@
+package com.crossover.trial.weather.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the id encoding of IATA codes.
+ *
+ * @author Joao Gatto
+ */
+public class AirportCodesTest {
+
+    @Test
+    public void testRoundTrip() {
+        for (int id = 0; id < AirportCodes.CAPACITY; id++) {
+            assertEquals(id, AirportCodes.idOf(AirportCodes.codeOf(id)));
+        }
+        assertEquals(0, AirportCodes.idOf("AAA"));
+        assertEquals(AirportCodes.CAPACITY - 1, AirportCodes.idOf("ZZZ"));
+    }
+
+    @Test
+    public void testInvalidCodes() {
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf(null));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("BO"));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("BOST"));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("B0S"));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("B S"));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("bos"));
+        assertEquals(AirportCodes.INVALID, AirportCodes.idOf("BoS"));
+    }
+}
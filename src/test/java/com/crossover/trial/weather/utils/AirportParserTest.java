@@ -0,0 +1,77 @@
+package com.crossover.trial.weather.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.Airport;
+import com.crossover.trial.weather.model.DST;
+
+/**
+ * Checks the CSV and JSON lines airport formats.
+ *
+ * @author Joao Gatto
+ */
+public class AirportParserTest {
+
+    @Test
+    public void testParseCsv() {
+        Airport airport = AirportParser.parseCsv(
+                "1,\"General Edward Lawrence Logan Intl\",\"Boston\",\"United States\",\"BOS\",\"KBOS\",42.364347,-71.005181,19,-5,\"A\"");
+        assertEquals("BOS", airport.getIata());
+        assertEquals("KBOS", airport.getIcao());
+        assertEquals("Boston", airport.getCity());
+        assertEquals("United States", airport.getCountry());
+        assertEquals(42.364347, airport.getCoordinate().getLatitude(), 0);
+        assertEquals(-71.005181, airport.getCoordinate().getLongitude(), 0);
+        assertEquals(19, airport.getAltitude(), 0);
+        assertEquals(-5, airport.getTimezone());
+        assertEquals(DST.A, airport.getDst());
+    }
+
+    @Test
+    public void testParseCsvQuotedFields() {
+        Airport airport = AirportParser
+                .parseCsv("2,\"Name, with \"\"quotes\"\"\",\"Washington, D.C.\",\"United States\",\"DCA\",\"KDCA\",38.85,-77.04,15,-5,\\N");
+        assertEquals("Washington, D.C.", airport.getCity());
+        assertEquals("DCA", airport.getIata());
+        assertEquals(DST.U, airport.getDst());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCsvMissingIata() {
+        AirportParser.parseCsv("3,\"Name\",\"City\",\"Country\",\"\",\"ABCD\",1,1,1,0,\"N\"");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCsvBadLatitude() {
+        AirportParser.parseCsv("4,\"Name\",\"City\",\"Country\",\"ABC\",\"ABCD\",95,1,1,0,\"N\"");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCsvTooShort() {
+        AirportParser.parseCsv("5,\"Name\",\"City\"");
+    }
+
+    @Test
+    public void testParseJson() {
+        Airport flat = AirportParser.parseJson("{\"iata\":\"JFK\",\"city\":\"New York\",\"latitude\":40.6,\"longitude\":-73.7}");
+        assertEquals("JFK", flat.getIata());
+        assertEquals("New York", flat.getCity());
+        assertEquals(40.6, flat.getCoordinate().getLatitude(), 0);
+        Airport nested = AirportParser
+                .parseJson("{\"iata\":\"JFK\",\"coordinate\":{\"latitude\":40.6,\"longitude\":-73.7},\"dst\":\"A\"}");
+        assertEquals(-73.7, nested.getCoordinate().getLongitude(), 0);
+        assertEquals(DST.A, nested.getDst());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseJsonMissingCoordinate() {
+        AirportParser.parseJson("{\"iata\":\"JFK\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseJsonMalformed() {
+        AirportParser.parseJson("[1, 2");
+    }
+}
@@ -0,0 +1,66 @@
+package com.crossover.trial.weather.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.Coordinate;
+
+/**
+ * Checks the batch distance kernel against the scalar haversine.
+ *
+ * @author Joao Gatto
+ */
+public class CoordinateArrayTest {
+
+    private Coordinate[] coordinates;
+
+    private CoordinateArray array;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        coordinates = new Coordinate[1000];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+        array = CoordinateArray.of(coordinates);
+    }
+
+    @Test
+    public void testDistancesFrom() {
+        Coordinate origin = new Coordinate(40.639751, -73.778925);
+        double[] distances = new double[array.size()];
+        array.distancesFrom(new SearchCircle(origin, 0), distances);
+        for (int i = 0; i < coordinates.length; i++) {
+            assertEquals(CoordinateHelper.calculateDistance(origin, coordinates[i]), distances[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void testIndicesWithin() {
+        Coordinate origin = new Coordinate(-30, 170);
+        int[] matches = new int[array.size()];
+        int found = array.indicesWithin(new SearchCircle(origin, 5000), matches);
+        int expected = 0;
+        for (int i = 0; i < coordinates.length; i++) {
+            if (CoordinateHelper.calculateDistance(origin, coordinates[i]) <= 5000) {
+                assertEquals(i, matches[expected++]);
+            }
+        }
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void testAppendAndRemove() {
+        CoordinateArray pair = CoordinateArray.EMPTY.append(new Coordinate(0, 0)).append(new Coordinate(0, 1));
+        assertEquals(2, pair.size());
+        CoordinateArray single = pair.remove(0);
+        double[] distances = new double[1];
+        single.distancesFrom(new SearchCircle(new Coordinate(0, 0), 0), distances);
+        assertEquals(CoordinateHelper.calculateDistance(new Coordinate(0, 0), new Coordinate(0, 1)), distances[0], 1e-9);
+    }
+}
@@ -0,0 +1,46 @@
+package com.crossover.trial.weather.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks bucket boundaries and clamping of the histogram.
+ *
+ * @author Joao Gatto
+ */
+public class FixedWidthHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        FixedWidthHistogram histogram = new FixedWidthHistogram(10, 1000);
+        assertEquals(101, histogram.getBucketCount());
+        assertEquals(0, histogram.bucketOf(0));
+        assertEquals(0, histogram.bucketOf(9.99));
+        assertEquals(1, histogram.bucketOf(10));
+        assertEquals(99, histogram.bucketOf(999.9));
+        assertEquals(100, histogram.bucketOf(1000));
+    }
+
+    @Test
+    public void testClamping() {
+        FixedWidthHistogram histogram = new FixedWidthHistogram(10, 1000);
+        assertEquals(0, histogram.bucketOf(-5));
+        assertEquals(0, histogram.bucketOf(Double.NaN));
+        assertEquals(100, histogram.bucketOf(1e12));
+        assertEquals(100, histogram.bucketOf(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testRecordAndReset() {
+        FixedWidthHistogram histogram = new FixedWidthHistogram(10, 30);
+        histogram.record(0);
+        histogram.record(15);
+        histogram.record(15.5);
+        histogram.record(5000);
+        assertArrayEquals(new long[] { 1, 2, 0, 1 }, histogram.snapshot());
+        histogram.reset();
+        assertArrayEquals(new long[4], histogram.snapshot());
+    }
+}
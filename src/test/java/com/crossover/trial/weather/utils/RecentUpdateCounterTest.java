@@ -0,0 +1,66 @@
+package com.crossover.trial.weather.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the sliding window count of recently updated ids.
+ *
+ * @author Joao Gatto
+ */
+public class RecentUpdateCounterTest {
+
+    private static final long MINUTE = 60_000;
+
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    /** an arbitrary point in time, well after the epoch */
+    private static final long NOW = 1000 * DAY + 30 * MINUTE;
+
+    private RecentUpdateCounter counter;
+
+    @Before
+    public void setUp() {
+        counter = new RecentUpdateCounter(100, DAY, MINUTE);
+    }
+
+    @Test
+    public void testCountsLatestUpdatePerId() {
+        counter.record(1, NOW - 10 * MINUTE);
+        counter.record(1, NOW - 5 * MINUTE);
+        counter.record(2, NOW);
+        assertEquals(2, counter.count(NOW));
+    }
+
+    @Test
+    public void testOldUpdatesExpire() {
+        counter.record(1, NOW - DAY - 2 * MINUTE);
+        counter.record(2, NOW - DAY + 2 * MINUTE);
+        assertEquals(1, counter.count(NOW));
+        assertEquals(0, counter.count(NOW + 3 * MINUTE));
+    }
+
+    @Test
+    public void testOutOfOrderUpdates() {
+        counter.record(1, NOW);
+        counter.record(1, NOW - 2 * DAY);
+        assertEquals(1, counter.count(NOW));
+        // the bucket of the older update is recycled by a newer one
+        counter.record(2, NOW - DAY - 10 * MINUTE);
+        counter.record(2, NOW - 10 * MINUTE);
+        assertEquals(2, counter.count(NOW));
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        counter.record(1, NOW);
+        counter.record(2, NOW);
+        counter.remove(1);
+        counter.remove(1);
+        assertEquals(1, counter.count(NOW));
+        counter.clear();
+        assertEquals(0, counter.count(NOW));
+    }
+}